@@ -24,6 +24,7 @@ import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.core.net.toUri
+import im.hoho.alipayInstallB.diagnostics.DiagnosticsActivity
 import im.hoho.alipayInstallB.guide.GuideActivity
 import im.hoho.alipayInstallB.skin.SkinActivity
 import im.hoho.alipayInstallB.theme.ThemeActivity
@@ -50,6 +51,9 @@ class HomeActivity : ComponentActivity() {
                     onGuideClick = {
                         startActivity(Intent(this, GuideActivity::class.java))
                     },
+                    onDiagnosticsClick = {
+                        startActivity(Intent(this, DiagnosticsActivity::class.java))
+                    },
                     onGithubClick = {
                         val intent = Intent(Intent.ACTION_VIEW).apply {
                             data = "https://github.com/LiYiCha/AlipayHighHeadsomeRichAndroid".toUri()
@@ -68,6 +72,7 @@ fun HomeScreen(
     onSkinClick: () -> Unit,
     onThemeClick: () -> Unit,
     onGuideClick: () -> Unit,
+    onDiagnosticsClick: () -> Unit,
     onGithubClick: () -> Unit
 ) {
     Scaffold(
@@ -114,6 +119,14 @@ fun HomeScreen(
                     onClick = onGuideClick
                 )
 
+                FeatureCard(
+                    title = "运行诊断",
+                    description = "实时查看 Hook 调用次数、耗时和缓存命中情况",
+                    icon = Icons.Default.Build,
+                    gradient = AppDiagnosticsCardGradient,
+                    onClick = onDiagnosticsClick
+                )
+
                 Spacer(modifier = Modifier.weight(1f))
 
                 // 底部信息
@@ -1,18 +1,11 @@
 package im.hoho.alipayInstallB;
 
 import android.content.Context;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.os.Environment;
-
-import com.alibaba.fastjson.JSON;
+import android.os.SystemClock;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -21,15 +14,38 @@ import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import de.robv.android.xposed.callbacks.XC_LoadPackage;
+import im.hoho.alipayInstallB.diagnostics.Diagnostics;
+import im.hoho.alipayInstallB.diagnostics.HookMetrics;
+import im.hoho.alipayInstallB.diagnostics.PerfTrace;
+import im.hoho.alipayInstallB.diagnostics.StartupProfiler;
+import im.hoho.alipayInstallB.hook.AlipayAccessors;
+import im.hoho.alipayInstallB.hook.CompatCache;
+import im.hoho.alipayInstallB.hook.CopyEngine;
+import im.hoho.alipayInstallB.hook.DeferredHooks;
+import im.hoho.alipayInstallB.hook.HookPlan;
+import im.hoho.alipayInstallB.hook.ModuleLog;
+import im.hoho.alipayInstallB.hook.OperationExecutor;
+import im.hoho.alipayInstallB.skin.MemberGradeDbSync;
+import im.hoho.alipayInstallB.skin.SkinConfigSnapshot;
+import im.hoho.alipayInstallB.skin.SkinConfigStore;
+import im.hoho.alipayInstallB.skin.SkinModelCache;
+import im.hoho.alipayInstallB.skin.SkinSync;
 
 /**
  * Created by qzj_ on 2016/5/9.
  */
 public class PluginMain implements IXposedHookLoadPackage {
-    private static final String EXTERNAL_STORAGE_PATH = Environment.getExternalStorageDirectory() + "/Android/media/com.eg.android.AlipayGphone/000_HOHO_ALIPAY_SKIN";
+    private static final String TAG = "PluginMain";
     private static final String packageName = "com.eg.android.AlipayGphone";
     public static volatile boolean isModuleLoaded = false;
 
+    /**
+     * 延迟初始化的路径常量：只有安装了皮肤 Hook 的进程才会访问 Environment
+     */
+    private static final class Paths {
+        static final String EXTERNAL_STORAGE_PATH = Environment.getExternalStorageDirectory() + "/Android/media/com.eg.android.AlipayGphone/000_HOHO_ALIPAY_SKIN";
+    }
+
     public PluginMain() {
         XposedBridge.log("Now Loading HOHO`` alipay plugin...");
     }
@@ -39,233 +55,254 @@ public class PluginMain implements IXposedHookLoadPackage {
     public void handleLoadPackage(final XC_LoadPackage.LoadPackageParam lpparam) throws Throwable {
 
         if (lpparam.packageName.equals(packageName)) {
-            XposedBridge.log("Loaded App: " + lpparam.packageName);
-            XposedBridge.log("Powered by HOHO`` 20230927 杭州亚运会版 sd source changed 20231129");
-            final boolean[] isDbUpdated = {false};
+            // 后台进程（push、tools、lite 等）不查找类、不安装 Hook
+            if (!HookPlan.select(lpparam.processName)) {
+                return;
+            }
 
-            // 添加对MergeMemberGrade的hook
+            // 冷启动耗时分解：Application.onCreate 结束后按支付宝版本写入诊断目录
+            long loadPackageStart = StartupProfiler.beginSpan();
             try {
-                Class<?> memberGradeEnumClass = XposedHelpers.findClass("com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum", lpparam.classLoader);
-                if (memberGradeEnumClass != null) {
-                    XposedHelpers.findAndHookMethod("com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum",
-                            lpparam.classLoader,
-                            "convertMemberGrade",
-                            String.class,
-                            new XC_MethodHook() {
-                                @Override
-                                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                XposedBridge.log("Loaded App: " + lpparam.packageName + " (" + lpparam.processName + ")");
+                XposedBridge.log("Powered by HOHO`` 20230927 杭州亚运会版 sd source changed 20231129");
+
+                // 按支付宝版本缓存的 Hook 目标探测结果，已知不存在的类和方法不再查找
+                CompatCache.load(lpparam.appInfo);
+
+                // 诊断数据导出（在后台线程中创建目录并监听 dump 请求）
+                Diagnostics.start();
+
+                // 默认立即安装；开启延迟安装后，目标类第一次被支付宝加载时才安装对应的 Hook
+                long start = SystemClock.elapsedRealtime();
+                boolean lazy = DeferredHooks.isLazyEnabled(lpparam.appInfo.dataDir);
+                DeferredHooks.syncLazyFlag(lpparam.appInfo.dataDir);
+                StartupProfiler.watchApplicationCreate(lpparam.processName, lazy);
+
+                installWhenLoaded(lpparam, lazy, "com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum",
+                        clazz -> hookConvertMemberGrade(lpparam, clazz));
+                installWhenLoaded(lpparam, lazy, "com.alipay.mobilegw.biz.shared.processer.login.UserLoginResult",
+                        this::hookLoginResult);
+                hookActivityOnCreate(lpparam);
+                installWhenLoaded(lpparam, lazy, "com.alipay.mobile.onsitepaystatic.ConfigUtilBiz",
+                        clazz -> hookSkin(lpparam, clazz));
+
+                XposedBridge.log("handleLoadPackage finished in " + (SystemClock.elapsedRealtime() - start)
+                        + "ms (" + (lazy ? "lazy" : "eager") + ", " + DeferredHooks.sinceProcessStart() + "ms since process start)");
+            } finally {
+                StartupProfiler.end(StartupProfiler.Category.LOAD_PACKAGE, "handleLoadPackage", loadPackageStart);
+            }
+        }
+
+    }
+
+    private static void installWhenLoaded(XC_LoadPackage.LoadPackageParam lpparam, boolean lazy, String className, DeferredHooks.Installer installer) {
+        if (lazy) {
+            DeferredHooks.whenLoaded(lpparam.classLoader, className, installer);
+        } else {
+            DeferredHooks.installEagerly(lpparam.classLoader, className, installer);
+        }
+    }
+
+    /**
+     * 会员等级 Hook：MergeMemberGradeEnum.convertMemberGrade
+     */
+    private void hookConvertMemberGrade(XC_LoadPackage.LoadPackageParam lpparam, Class<?> memberGradeEnumClass) {
+        // 添加对MergeMemberGrade的hook
+        try {
+            // 枚举常量只解析一次，回调中不再按名称查找
+            long lookupStart = StartupProfiler.now();
+            final AlipayAccessors.MergeMemberGradeEnum memberGradeEnum = AlipayAccessors.of(lpparam.classLoader).getMergeMemberGradeEnum();
+            StartupProfiler.end(StartupProfiler.Category.LOOKUP, "MergeMemberGradeEnum constants", lookupStart);
+            if (memberGradeEnum != null) {
+                long hookStart = StartupProfiler.now();
+                XC_MethodHook.Unhook unhook = CompatCache.findAndHookMethod(memberGradeEnumClass,
+                        "convertMemberGrade",
+                        String.class,
+                        new XC_MethodHook() {
+                            @Override
+                            protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                                long start = HookMetrics.now();
+                                try {
                                     String newGrade = getCurrentMemberGrade();
-                                    XposedBridge.log("Member grade changing to: " + newGrade);
+                                    ModuleLog.d(TAG, "Member grade changing to: " + newGrade);
                                     if (!newGrade.equals("原有")) {
-                                        switch(newGrade) {
-                                            case "primary":
-                                                param.setResult(XposedHelpers.getStaticObjectField(memberGradeEnumClass, "PRIMARY"));
-                                                break;
-                                            case "golden":
-                                                param.setResult(XposedHelpers.getStaticObjectField(memberGradeEnumClass, "GOLDEN"));
-                                                break;
-                                            case "platinum":
-                                                param.setResult(XposedHelpers.getStaticObjectField(memberGradeEnumClass, "PLATINUM"));
-                                                break;
-                                            case "diamond":
-                                                param.setResult(XposedHelpers.getStaticObjectField(memberGradeEnumClass, "DIAMOND"));
-                                                break;
-                                            default:
-                                                param.setResult(XposedHelpers.getStaticObjectField(memberGradeEnumClass, "NULL"));
-                                                break;
-                                        }
-                                        XposedBridge.log("Member grade changed to: " + newGrade);
+                                        Object gradeValue = memberGradeEnum.valueOf(newGrade);
+                                        param.setResult(gradeValue != null ? gradeValue : memberGradeEnum.getNullGrade());
+                                        ModuleLog.d(TAG, "Member grade changed to: " + newGrade);
                                     }
+                                } catch (Throwable t) {
+                                    HookMetrics.increment(HookMetrics.Counter.HOOK_FAILURES);
+                                    throw t;
+                                } finally {
+                                    HookMetrics.record(HookMetrics.HookId.CONVERT_MEMBER_GRADE, start);
                                 }
-                            });
-                    XposedBridge.log("convertMemberGrade hooked.");
-                } else {
-                    XposedBridge.log("MergeMemberGradeEnum class not found.");
-                }
-            } catch (XposedHelpers.ClassNotFoundError e) {
-                XposedBridge.log("MergeMemberGradeEnum class not found: " + e.getMessage());
-            } catch (NoSuchMethodError e) {
-                XposedBridge.log("convertMemberGrade method not found: " + e.getMessage());
-            } catch (Exception e) {
-                XposedBridge.log("Error while hooking convertMemberGrade: " + e.getMessage());
+                            }
+                        });
+                StartupProfiler.end(StartupProfiler.Category.HOOK, "convertMemberGrade", hookStart);
+                XposedBridge.log(unhook != null ? "convertMemberGrade hooked." : "convertMemberGrade method not found.");
+            } else {
+                XposedBridge.log("MergeMemberGradeEnum class not found.");
             }
+        } catch (XposedHelpers.ClassNotFoundError e) {
+            XposedBridge.log("MergeMemberGradeEnum class not found: " + e.getMessage());
+        } catch (NoSuchMethodError e) {
+            XposedBridge.log("convertMemberGrade method not found: " + e.getMessage());
+        } catch (Exception e) {
+            XposedBridge.log("Error while hooking convertMemberGrade: " + e.getMessage());
+        }
+    }
 
-            try {
-                Class<?> UserLoginResultClass = XposedHelpers.findClass("com.alipay.mobilegw.biz.shared.processer.login.UserLoginResult", lpparam.classLoader);
-                if (UserLoginResultClass != null) {
-                    XposedHelpers.findAndHookMethod("com.alipay.mobilegw.biz.shared.processer.login.UserLoginResult", lpparam.classLoader, "getExtResAttrs", new XC_MethodHook() {
-                        protected void afterHookedMethod(MethodHookParam param1MethodHookParam) throws Throwable {
-                            XposedBridge.log("Now, let's install B...");
+    /**
+     * 会员等级 Hook：UserLoginResult.getExtResAttrs
+     */
+    private void hookLoginResult(Class<?> UserLoginResultClass) {
+        try {
+            if (UserLoginResultClass != null) {
+                long hookStart = StartupProfiler.now();
+                XC_MethodHook.Unhook unhook = CompatCache.findAndHookMethod(UserLoginResultClass, "getExtResAttrs", new XC_MethodHook() {
+                    protected void afterHookedMethod(MethodHookParam param1MethodHookParam) throws Throwable {
+                        long start = HookMetrics.now();
+                        try {
+                            ModuleLog.d(TAG, "Now, let's install B...");
                             Map<String, String> map = (Map) param1MethodHookParam.getResult();
                             if (map.containsKey("memberGrade")) {
-                                XposedBridge.log("Original member grade: " + map.get("memberGrade"));
+                                ModuleLog.d(TAG, "Original member grade: " + map.get("memberGrade"));
 
                                 String newGrade = getCurrentMemberGrade();
                                 if (!newGrade.equals("原有")) {
-                                    XposedBridge.log("Putting " + newGrade + " into dict...");
+                                    ModuleLog.d(TAG, "Putting " + newGrade + " into dict...");
                                     map.put("memberGrade", newGrade);
-                                    XposedBridge.log("Member grade changed to: " + map.get("memberGrade"));
+                                    ModuleLog.i(TAG, "Member grade changed to: " + map.get("memberGrade"));
                                 } else {
-                                    XposedBridge.log("Member grade not modified.");
+                                    ModuleLog.d(TAG, "Member grade not modified.");
                                 }
                             } else {
-                                XposedBridge.log("Can not get the member grade in return value...WTF?");
+                                ModuleLog.w(TAG, "Can not get the member grade in return value...WTF?");
                             }
+                        } catch (Throwable t) {
+                            HookMetrics.increment(HookMetrics.Counter.HOOK_FAILURES);
+                            throw t;
+                        } finally {
+                            HookMetrics.record(HookMetrics.HookId.GET_EXT_RES_ATTRS, start);
                         }
-                    });
-                } else {
-                    XposedBridge.log("UserLoginResult class not found.");
+                    }
+                });
+                StartupProfiler.end(StartupProfiler.Category.HOOK, "getExtResAttrs", hookStart);
+                if (unhook == null) {
+                    XposedBridge.log("getExtResAttrs method not found.");
                 }
-            } catch (Exception e) {
+            } else {
                 XposedBridge.log("UserLoginResult class not found.");
             }
+        } catch (Exception e) {
+            XposedBridge.log("UserLoginResult class not found.");
+        }
+    }
 
-            XposedHelpers.findAndHookMethod("android.app.Activity", lpparam.classLoader, "onCreate", Bundle.class, new XC_MethodHook() {
-                @Override
-                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
-                    String newGrade = getCurrentMemberGrade();
-
-                    if (isDbUpdated[0] || newGrade.equals("原有")) {
-                        return;
-                    }
-                    Context context = (Context) param.thisObject; // 获取到Activity作为Context
-                    XposedBridge.log("--------------DATABASE_UPDATER--------------");
-                    File dbFile = context.getDatabasePath("alipayclient.db");
-                    if (dbFile.exists()) {
-                        XposedBridge.log("GET DATABASE: " + context.getDatabasePath("alipayclient.db").getParentFile());
-                        try (SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
-                            // 将本来的普通会员直接替换
-                            db.execSQL("UPDATE 'main'.'userinfo' SET 'memberGrade' = '" + newGrade + "'");
-                            XposedBridge.log("Database update successful!");
-                        } catch (Exception e) {
-                            XposedBridge.log("Database update error: " + e);
-                        }
-                    } else {
-                        XposedBridge.log("CAN NOT GET DATABASE: " + context.getDatabasePath("alipayclient.db").getParentFile() + ", Ignore!");
-                    }
-                    XposedBridge.log("--------------DATABASE_UPDATER--------------");
-                    isDbUpdated[0] = true;
+    /**
+     * 会员等级 Hook：Activity.onCreate（android.app.Activity 启动时已经加载，直接安装）
+     */
+    private void hookActivityOnCreate(XC_LoadPackage.LoadPackageParam lpparam) {
+        // 只需要一个 Context：交给 MemberGradeDbSync 在后台更新数据库，同步成功后卸载；
+        // 数据库尚未创建时在之后的 Activity 中重试，之后的会员等级变化由 MemberGradeDbSync 增量写入
+        final XC_MethodHook.Unhook[] onCreateHook = new XC_MethodHook.Unhook[1];
+        long hookStart = StartupProfiler.now();
+        onCreateHook[0] = XposedHelpers.findAndHookMethod("android.app.Activity", lpparam.classLoader, "onCreate", Bundle.class, new XC_MethodHook() {
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                XC_MethodHook.Unhook self = onCreateHook[0];
+                if (self == null) {
+                    return;
                 }
-            });
 
+                Context context = (Context) param.thisObject; // 获取到Activity作为Context
+                if (MemberGradeDbSync.attach(context)) {
+                    XposedBridge.log("DATABASE_UPDATER attached.");
+                }
+                if (MemberGradeDbSync.isSynced()) {
+                    onCreateHook[0] = null;
+                    self.unhook();
+                    XposedBridge.log("DATABASE_UPDATER synced, Activity.onCreate unhooked.");
+                }
+            }
+        });
+        StartupProfiler.end(StartupProfiler.Category.HOOK, "Activity.onCreate", hookStart);
+    }
 
-            //region modify skin
-//            final Class<?> ConfigUtilBiz = lpparam.classLoader.loadClass("com.alipay.mobile.onsitepaystatic.ConfigUtilBiz");
-            final Class<?> OspSkinModel = lpparam.classLoader.loadClass("com.alipay.mobile.onsitepaystatic.skin.OspSkinModel");
-
-            XposedHelpers.findAndHookMethod("com.alipay.mobile.onsitepaystatic.ConfigUtilBiz", lpparam.classLoader, "getFacePaySkinModel", new XC_MethodHook() {
+    /**
+     * 付款码皮肤 Hook：getFacePaySkinModel
+     */
+    private void hookSkin(XC_LoadPackage.LoadPackageParam lpparam, Class<?> ConfigUtilBiz) {
+        //region modify skin
+        // OspSkinModel is only needed once the payment code asks for its skin
+        long lookupStart = StartupProfiler.now();
+        final Class<?> OspSkinModel = CompatCache.findClass("com.alipay.mobile.onsitepaystatic.skin.OspSkinModel", lpparam.classLoader);
+        if (OspSkinModel == null) {
+            StartupProfiler.end(StartupProfiler.Category.LOOKUP, "findClass OspSkinModel", lookupStart);
+            XposedBridge.log("OspSkinModel class not found.");
+            return;
+        }
+        // skin models are built once per sub folder and reused until the HOHO dir changes
+        final SkinModelCache skinModelCache = new SkinModelCache(OspSkinModel, "2022 New Year Happy!");
+        StartupProfiler.end(StartupProfiler.Category.LOOKUP, "findClass OspSkinModel", lookupStart);
 
+        long hookStart = StartupProfiler.now();
+        XC_MethodHook.Unhook unhook = CompatCache.findAndHookMethod(ConfigUtilBiz, "getFacePaySkinModel", new XC_MethodHook() {
 
-                @SuppressWarnings("ResultOfMethodCallIgnored")
-                public void deleteFile(File file) {
-                    if (file.isDirectory()) {
-                        File[] files = file.listFiles();
-                        for (File f : files) {
-                            deleteFile(f);
-                        }
-                        file.delete();
-                    } else if (file.exists()) {
-                        file.delete();
-                    }
-                }
 
-                @SuppressWarnings("ResultOfMethodCallIgnored")
-                public void copy(String fromFile, String toFile) {
+            public void copy(String fromFile, String toFile) {
 //                            XposedBridge.log("DEBUG: copy: " + fromFile + " to " + toFile);
-                    File[] currentFiles;
-                    File root = new File(fromFile);
-                    if (!root.exists()) {
-                        return;
-                    }
-                    currentFiles = root.listFiles();
-                    File targetDir = new File(toFile);
-                    if (!targetDir.exists()) {
-                        targetDir.mkdirs();
-                    }
-                    for (File currentFile : currentFiles) {
-                        if (currentFile.isDirectory())//如果当前项为子目录 进行递归
-                        {
-                            copy(currentFile.getPath(), toFile + "/" + currentFile.getName());
-
-                        } else//如果当前项为文件则进行文件拷贝
-                        {
-                            CopySdcardFile(currentFile.getPath(), toFile + "/" + currentFile.getName());
-                        }
-                    }
+                CopyEngine.Result result = CopyEngine.copy(new File(fromFile), new File(toFile));
+                if (!result.isSuccess()) {
+                    CopyEngine.Failure first = result.getFailures().get(0);
+                    XposedBridge.log("ERROR: copy: " + result + ", " + first.getSource() + ": " + first.getError().getMessage());
                 }
+            }
 
-                public void CopySdcardFile(String fromFile, String toFile) {
-                    try {
-                        InputStream fosfrom = new FileInputStream(fromFile);
-                        OutputStream fosto = new FileOutputStream(toFile);
-                        byte[] bt = new byte[1024];
-                        int c;
-                        while ((c = fosfrom.read(bt)) > 0) {
-                            fosto.write(bt, 0, c);
-                        }
-                        fosfrom.close();
-                        fosto.close();
-                    } catch (Exception ex) {
-                        XposedBridge.log("ERROR: CopySdcardFile: " + ex.getMessage());
-                    }
+            /**
+             * Runs the export / delete / update requests on the background operation executor.
+             */
+            public void handleSkinOperations() {
+                PerfTrace.begin("legacySkinOperations");
+                try {
+                    handleSkinOperationsTraced();
+                } finally {
+                    PerfTrace.end();
                 }
+            }
 
-                public List<String> searchSkins(String Path) {
-                    List<String> resultList = new ArrayList<>();
-                    File[] files = new File(Path).listFiles();
-
-                    for (int i = 0; i < files.length; i++) {
-                        File f = files[i];
-                        if (f.isDirectory()) {
-                            if (f.getName().equals("update") || f.getName().equals("actived") || f.getName().equals("delete") || f.getName().startsWith("level_")) {
-                                continue;
-                            }
-                            String filename = f.getName();
-                            resultList.add(f.getName());
-                        }
-                    }
-                    return resultList;
-                }
-
-                @SuppressWarnings("ResultOfMethodCallIgnored")
-                @Override
-                protected void afterHookedMethod(MethodHookParam param) throws Throwable {
-
-                    String fixedPathInAliData = "/data/data/" + packageName + "/files/onsitepay_skin_dir/HOHO";
-                    String alipaySkinsRoot = "/data/data/" + packageName + "/files/onsitepay_skin_dir";
+            @SuppressWarnings("ResultOfMethodCallIgnored")
+            private void handleSkinOperationsTraced() {
+                String fixedPathInAliData = "/data/data/" + packageName + "/files/onsitepay_skin_dir/HOHO";
+                String alipaySkinsRoot = "/data/data/" + packageName + "/files/onsitepay_skin_dir";
 //                    XposedBridge.log("DEBUG: fixedPathInAliData: " + fixedPathInAliData);
-                    File hohoSkinFileInAliData = new File(fixedPathInAliData);
+                File hohoSkinFileInAliData = new File(fixedPathInAliData);
 
-                    String basePathUpdates = Environment.getExternalStorageDirectory() + "/Android/media/" + packageName;
-                    if (!new File(basePathUpdates).exists()) {
-                        XposedBridge.log("DEBUG: creating skin SD card path: " + basePathUpdates);
-                        // create dir
-                        new File(basePathUpdates).mkdirs();
-                    }
-                    String fixedPathUpdates = basePathUpdates + "/000_HOHO_ALIPAY_SKIN";
+                String fixedPathUpdates = Paths.EXTERNAL_STORAGE_PATH;
 
-                    File skinActived = new File(fixedPathUpdates + "/actived");
-                    File skinUpdateRequired = new File(fixedPathUpdates + "/update");
-                    File skinDeleteRequired = new File(fixedPathUpdates + "/delete");
-                    File exportSkinSign = new File(fixedPathUpdates + "/export");
+                File skinUpdateRequired = new File(fixedPathUpdates + "/update");
+                File skinDeleteRequired = new File(fixedPathUpdates + "/delete");
+                File exportSkinSign = new File(fixedPathUpdates + "/export");
 
-                    if (exportSkinSign.exists()) {
-                        try {
-                            //export skin
-                            XposedBridge.log("exporting skin...");
-                            //checks alipaySkinsRoot
-                            File alipaySkinsRootFile = new File(alipaySkinsRoot);
-                            if (!alipaySkinsRootFile.exists()) {
-                                //ignore export as no skins found
-                                XposedBridge.log("no skins found, ignore export");
-                            } else {
-                                //checks fixedPathUpdates is exists
-                                File fixedPathUpdatesFile = new File(fixedPathUpdates);
-                                if (!fixedPathUpdatesFile.exists()) {
-                                    //create fixedPathUpdates
-                                    fixedPathUpdatesFile.mkdirs();
-                                }
-                                //copies all skins to fixedPathUpdates except HOHO dir
+                if (exportSkinSign.exists()) {
+                    try {
+                        //export skin
+                        XposedBridge.log("exporting skin...");
+                        //checks alipaySkinsRoot
+                        File alipaySkinsRootFile = new File(alipaySkinsRoot);
+                        if (!alipaySkinsRootFile.exists()) {
+                            //ignore export as no skins found
+                            XposedBridge.log("no skins found, ignore export");
+                        } else {
+                            //checks fixedPathUpdates is exists
+                            File fixedPathUpdatesFile = new File(fixedPathUpdates);
+                            if (!fixedPathUpdatesFile.exists()) {
+                                //create fixedPathUpdates
+                                fixedPathUpdatesFile.mkdirs();
+                            }
+                            //copies all skins to fixedPathUpdates except HOHO dir
+                            PerfTrace.begin("export");
+                            try {
                                 File[] alipaySkinsRootFileList = alipaySkinsRootFile.listFiles();
                                 for (File alipaySkinsRootFileListItem : alipaySkinsRootFileList) {
                                     if (alipaySkinsRootFileListItem.isDirectory()) {
@@ -276,63 +313,114 @@ public class PluginMain implements IXposedHookLoadPackage {
                                         copy(alipaySkinsRootFileListItem.getPath(), fixedPathUpdates + "/" + alipaySkinsRootFileListItem.getName());
                                     }
                                 }
-                                //removes the export sign
-                                exportSkinSign.delete();
+                            } finally {
+                                PerfTrace.end();
                             }
-                        } catch (Exception e) {
-                            XposedBridge.log("ERROR: export skin: " + e.getMessage());
+                            //removes the export sign
+                            exportSkinSign.delete();
                         }
+                    } catch (Exception e) {
+                        XposedBridge.log("ERROR: export skin: " + e.getMessage());
                     }
+                }
 
-                    if (skinDeleteRequired.exists()) {
-                        XposedBridge.log("deleting skin...");
-                        skinDeleteRequired.delete();
-                        deleteFile(hohoSkinFileInAliData);
-                        XposedBridge.log("skin is deleted");
+                if (skinDeleteRequired.exists()) {
+                    XposedBridge.log("deleting skin...");
+                    skinDeleteRequired.delete();
+                    // the HOHO link is removed first, then every staged generation behind it
+                    PerfTrace.begin("delete");
+                    try {
+                        SkinSync.remove(hohoSkinFileInAliData);
+                    } finally {
+                        PerfTrace.end();
                     }
+                    XposedBridge.log("skin is deleted");
+                }
 
-                    if (skinUpdateRequired.exists()) {
-                        XposedBridge.log("copying skin...");
-                        skinUpdateRequired.delete();
-                        if (!hohoSkinFileInAliData.exists()) hohoSkinFileInAliData.mkdirs();
-                        copy(fixedPathUpdates, fixedPathInAliData);
-                        XposedBridge.log("copied files..");
+                if (skinUpdateRequired.exists()) {
+                    XposedBridge.log("copying skin...");
+                    skinUpdateRequired.delete();
+                    // only changed files are copied into a staged generation, which then replaces HOHO atomically
+                    PerfTrace.begin("install");
+                    try {
+                        SkinSync.Result result = SkinSync.install(new File(fixedPathUpdates), hohoSkinFileInAliData);
+                        if (result.isSuccess()) {
+                            XposedBridge.log("copied files.. (" + result + ")");
+                        } else {
+                            XposedBridge.log("ERROR: install skin: " + result);
+                        }
+                    } catch (Exception e) {
+                        XposedBridge.log("ERROR: install skin: " + e.getMessage());
+                    } finally {
+                        PerfTrace.end();
                     }
+                }
+
+                PerfTrace.begin("cache reload");
+                try {
+                    SkinConfigStore.refresh();
+                    SkinModelCache.invalidate();
+                } finally {
+                    PerfTrace.end();
+                }
+            }
 
-                    if (hohoSkinFileInAliData.exists() && skinActived.exists()) {
-                        XposedBridge.log("updating skins..");
-                        List<String> randomConf = searchSkins(fixedPathInAliData);
-                        String subFolder = "";
-                        if (randomConf.size() > 0) {
-                            //random config
-//                                    XposedBridge.log("DEBUG: randomConf size: " + randomConf.size());
-                            int pos = (int) (Math.random() * 100) % randomConf.size();
-//                                    CopySdcardFile(randomConf.get(pos), fixedPathInAliData + "/meta.json");
-                            subFolder = randomConf.get(pos);
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                long start = HookMetrics.now();
+                try {
+                    // SD card path is created once by SkinConfigStore, the snapshot is read without any I/O
+                    SkinConfigSnapshot config = SkinConfigStore.current();
+
+                    // export / delete / update never block the payment code, the last known skin is served meanwhile
+                    if (config.getHasPendingOperations()) {
+                        OperationExecutor.submitOnce(OperationExecutor.KEY_LEGACY_SKIN_OPERATIONS, this::handleSkinOperations);
+                    }
+
+                    if (config.isActivated()) {
+                        ModuleLog.d(TAG, "updating skins..");
+                        Object skinModel = null;
+                        String selectedSkin = config.getSelectedSkin();
+                        if (selectedSkin != null) {
+                            // a selected skin may be served straight from the external skin library
+                            skinModel = skinModelCache.get(selectedSkin);
+                        } else if (skinModelCache.isInstalled()) {
+                            List<String> randomConf = skinModelCache.installedSkins();
+                            String subFolder = "";
+                            if (randomConf.size() > 0) {
+                                //random config
+                                int pos = (int) (Math.random() * 100) % randomConf.size();
+                                subFolder = randomConf.get(pos);
 //                                    XposedBridge.log("DEBUG: random, " + subFolder + " as current folder.");
+                            }
+                            skinModel = skinModelCache.modelFor(subFolder);
+                        }
+                        if (skinModel != null) {
+                            param.setResult(skinModel);
+                            ModuleLog.d(TAG, "skin updated..");
+                        } else {
+                            ModuleLog.d(TAG, "no skin installed.");
                         }
-                        String hohoSkinModel_Xiaomi12Pro = "{\"md5\":\"HOHO_MD5\",\"minWalletVersion\":\"10.2.23.0000\",\"outDirName\":\"HOHO/" + subFolder + "\",\"skinId\":\"HOHO_CUSTOMIZED\",\"skinStyleId\":\"2022 New Year Happy!\",\"userId\":\"HOHO\"}";
-                        Object skinModel = JSON.parseObject(hohoSkinModel_Xiaomi12Pro, OspSkinModel);
-                        param.setResult(skinModel);
-                        XposedBridge.log("skin updated..");
                     } else {
-                        XposedBridge.log("skin is not active.");
+                        ModuleLog.d(TAG, "skin is not active.");
                     }
+                } catch (Throwable t) {
+                    HookMetrics.increment(HookMetrics.Counter.HOOK_FAILURES);
+                    throw t;
+                } finally {
+                    HookMetrics.record(HookMetrics.HookId.GET_FACE_PAY_SKIN_MODEL, start);
                 }
-            });
-            //endregion
+            }
+        });
+        StartupProfiler.end(StartupProfiler.Category.HOOK, "getFacePaySkinModel", hookStart);
+        if (unhook == null) {
+            XposedBridge.log("getFacePaySkinModel method not found.");
         }
-
+        //endregion
     }
 
     private String getCurrentMemberGrade() {
-        String[] grades = {"primary", "golden", "platinum", "diamond", "unknown"};
-        for (String grade : grades) {
-            File folder = new File(EXTERNAL_STORAGE_PATH, "level_" + grade);
-            if (folder.exists()) {
-                return grade;
-            }
-        }
-        return "原有";
+        String grade = SkinConfigStore.current().getMemberGrade();
+        return grade != null ? grade : "原有";
     }
 }
@@ -0,0 +1,128 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Environment
+import android.os.FileObserver
+import android.os.Process
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.hook.OperationExecutor
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * 诊断数据导出（Hook层使用）
+ *
+ * 在 000_HOHO_DIAGNOSTICS 目录中创建名为 dump 的文件夹即可请求导出，
+ * 支付宝进程把当前统计写入 hook_metrics_<pid>_<时间>.txt 后删除 dump 文件夹
+ * 创建 io_trace 文件夹开启 I/O 追踪（[IoTrace]），导出时额外写入 io_trace_<pid>_<时间>.txt
+ * 创建 metrics 文件夹后，实时统计通过 [MetricsRegion] 发布到同一目录的 metrics.mmap，删除后停止
+ * 创建 perf_trace 文件夹后，长操作的分段耗时（[PerfTrace]）追加到 perf_trace.json
+ * 导出时同时写入模块的类加载占用 footprint_<pid>_<时间>.txt（[ModuleFootprint]），
+ * 存在 heap_dump 文件夹时再写出 heap_<pid>_<时间>.hprof
+ * 目录创建、监听和写文件都在 OperationExecutor 的后台线程中执行
+ */
+object Diagnostics {
+    // 静态初始化的开始时间，第一次使用本类时触发，初始化结束时记录耗时
+    private val clinitStart = StartupProfiler.now()
+
+    private const val TAG = "Diagnostics"
+
+    /** 诊断目录 */
+    @JvmField
+    val DIAGNOSTICS_PATH =
+        "${Environment.getExternalStorageDirectory()}/Android/media/com.eg.android.AlipayGphone/000_HOHO_DIAGNOSTICS"
+
+    /** 导出请求文件夹 */
+    const val DUMP_REQUEST = "dump"
+
+    @Volatile
+    private var started = false
+
+    // 保持强引用，避免 FileObserver 被回收
+    private var observer: FileObserver? = null
+
+    /**
+     * 开始监听导出请求
+     *
+     * 只在安装了 Hook 的进程中调用一次
+     */
+    @JvmStatic
+    fun start() {
+        if (started) {
+            return
+        }
+        started = true
+
+        OperationExecutor.submit(OperationExecutor.KEY_DIAGNOSTICS) {
+            val dir = File(DIAGNOSTICS_PATH)
+            if (!dir.exists()) {
+                dir.mkdirs()
+            }
+            watch(dir)
+            if (File(dir, MetricsRegion.FLAG).exists()) {
+                MetricsRegion.startPublishing(dir)
+            }
+            IoTrace.enabled = File(dir, IoTrace.FLAG).exists()
+
+            // 进程启动前就已经存在的请求
+            if (File(dir, DUMP_REQUEST).exists()) {
+                dump()
+            }
+        }
+    }
+
+    /**
+     * 请求导出
+     */
+    @JvmStatic
+    fun requestDump() {
+        OperationExecutor.submit(OperationExecutor.KEY_DIAGNOSTICS_DUMP) { dump() }
+    }
+
+    private fun watch(dir: File) {
+        observer = object : FileObserver(dir.absolutePath, CREATE or MOVED_TO or DELETE or MOVED_FROM) {
+            override fun onEvent(event: Int, path: String?) {
+                val created = event and (CREATE or MOVED_TO) != 0
+                when (path) {
+                    DUMP_REQUEST -> if (created) requestDump()
+                    IoTrace.FLAG -> IoTrace.enabled = created
+                    MetricsRegion.FLAG -> if (created) MetricsRegion.startPublishing(dir) else MetricsRegion.stopPublishing()
+                }
+            }
+        }.apply { startWatching() }
+    }
+
+    /**
+     * 写出当前统计并删除请求文件夹
+     */
+    private fun dump() {
+        val dir = File(DIAGNOSTICS_PATH)
+        try {
+            val stamp = "${Process.myPid()}_${SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(Date())}"
+            val suffix = "$stamp.txt"
+            val file = File(dir, "hook_metrics_$suffix")
+            file.writeText(HookMetrics.report())
+            XposedBridge.log("[$TAG]✓ 诊断数据已导出: ${file.name}")
+
+            if (IoTrace.enabled) {
+                File(dir, "io_trace_$suffix").writeText(IoTrace.report())
+            }
+
+            File(dir, "footprint_$suffix").writeText(ModuleFootprint.report())
+            if (File(dir, ModuleFootprint.HEAP_DUMP_FLAG).exists()) {
+                val heap = ModuleFootprint.dumpHeap(dir, "heap_$stamp.hprof")
+                XposedBridge.log("[$TAG]✓ 堆转储已写出: ${heap.name}")
+            }
+        } catch (e: Exception) {
+            XposedBridge.log("[$TAG]✗ 诊断数据导出失败: ${e.message}")
+        } finally {
+            File(dir, DUMP_REQUEST).deleteRecursively()
+        }
+    }
+
+    init {
+        // 放在最后，覆盖上面全部属性的初始化
+        StartupProfiler.end(StartupProfiler.Category.CLINIT, "Diagnostics", clinitStart)
+    }
+}
@@ -0,0 +1,39 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Bundle
+import androidx.activity.ComponentActivity
+import androidx.activity.compose.setContent
+import im.hoho.alipayInstallB.ui.AppTheme
+
+/**
+ * 运行诊断 Activity
+ *
+ * 实时显示支付宝进程中 Hook 的调用次数、耗时和缓存命中等统计
+ */
+class DiagnosticsActivity : ComponentActivity() {
+
+    private val viewModel = DiagnosticsViewModel()
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+
+        setContent {
+            AppTheme {
+                DiagnosticsScreen(
+                    viewModel = viewModel,
+                    onBack = { finish() }
+                )
+            }
+        }
+    }
+
+    override fun onStart() {
+        super.onStart()
+        viewModel.startPolling()
+    }
+
+    override fun onStop() {
+        viewModel.stopPolling()
+        super.onStop()
+    }
+}
@@ -0,0 +1,263 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import androidx.compose.foundation.background
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.rememberScrollState
+import androidx.compose.foundation.verticalScroll
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.automirrored.filled.ArrowBack
+import androidx.compose.material.icons.filled.*
+import androidx.compose.material3.*
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.collectAsState
+import androidx.compose.runtime.getValue
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.graphics.vector.ImageVector
+import androidx.compose.ui.text.font.FontFamily
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.unit.dp
+import androidx.compose.ui.unit.sp
+import im.hoho.alipayInstallB.ui.*
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * 运行诊断页面
+ *
+ * 显示 [MetricsRegion] 中的实时统计：进程状态、计数器、每个 Hook 和耗时阶段
+ */
+@OptIn(ExperimentalMaterial3Api::class)
+@Composable
+fun DiagnosticsScreen(
+    viewModel: DiagnosticsViewModel,
+    onBack: () -> Unit
+) {
+    val state by viewModel.state.collectAsState()
+
+    Scaffold(
+        topBar = {
+            TopAppBar(
+                title = { Text("运行诊断") },
+                navigationIcon = {
+                    IconButton(onClick = onBack) {
+                        Icon(
+                            imageVector = Icons.AutoMirrored.Filled.ArrowBack,
+                            contentDescription = "返回"
+                        )
+                    }
+                },
+                colors = TopAppBarDefaults.topAppBarColors(
+                    containerColor = Color.Transparent,
+                    titleContentColor = AppTextPrimary,
+                    navigationIconContentColor = AppTextPrimary
+                )
+            )
+        },
+        containerColor = Color.Transparent
+    ) { paddingValues ->
+        Box(
+            modifier = Modifier
+                .fillMaxSize()
+                .background(AppBackgroundGradient)
+        ) {
+            Column(
+                modifier = Modifier
+                    .fillMaxSize()
+                    .padding(paddingValues)
+                    .verticalScroll(rememberScrollState())
+                    .padding(horizontal = 20.dp, vertical = 8.dp),
+                verticalArrangement = Arrangement.spacedBy(16.dp)
+            ) {
+                StatusCard(state)
+
+                state.snapshot?.let { snapshot ->
+                    CountersCard(snapshot)
+                    HooksCard(snapshot)
+                    PhasesCard(snapshot)
+                }
+
+                Spacer(modifier = Modifier.height(16.dp))
+            }
+        }
+    }
+}
+
+/**
+ * 进程状态卡片
+ */
+@Composable
+private fun StatusCard(state: DiagnosticsState) {
+    val snapshot = state.snapshot
+    DiagnosticsSection(title = "支付宝进程", icon = Icons.Default.Info) {
+        if (snapshot == null) {
+            Text(
+                text = state.errorMessage ?: "正在读取...",
+                fontSize = 14.sp,
+                color = AppTextSecondary
+            )
+            return@DiagnosticsSection
+        }
+
+        val ageSeconds = (System.currentTimeMillis() - snapshot.publishedAt) / 1000
+        MetricRow("PID", snapshot.pid.toString())
+        MetricRow("启动时间", formatTime(snapshot.startedAt))
+        MetricRow("最近更新", if (ageSeconds <= 1) "刚刚" else "$ageSeconds 秒前")
+        state.errorMessage?.let {
+            Text(text = it, fontSize = 12.sp, color = AppWarning)
+        }
+    }
+}
+
+/**
+ * 计数器卡片
+ */
+@Composable
+private fun CountersCard(snapshot: MetricsRegion.Snapshot) {
+    DiagnosticsSection(title = "计数器", icon = Icons.Default.Star) {
+        MetricRow("皮肤模型缓存", hitRate(snapshot, HookMetrics.Counter.SKIN_MODEL_HITS, HookMetrics.Counter.SKIN_MODEL_MISSES))
+        MetricRow("主题信息缓存", hitRate(snapshot, HookMetrics.Counter.THEME_INFO_HITS, HookMetrics.Counter.THEME_INFO_MISSES))
+        MetricRow("用户ID缓存", hitRate(snapshot, HookMetrics.Counter.USER_ID_HITS, HookMetrics.Counter.USER_ID_MISSES))
+        MetricRow(
+            "复制文件",
+            "${snapshot.value(HookMetrics.Counter.FILES_COPIED)} 个 / ${formatBytes(snapshot.value(HookMetrics.Counter.BYTES_COPIED))}" +
+                    "，失败 ${snapshot.value(HookMetrics.Counter.COPY_FAILURES)} 个",
+            highlight = snapshot.value(HookMetrics.Counter.COPY_FAILURES) > 0
+        )
+
+        val operations = snapshot.value(HookMetrics.Counter.OPERATIONS)
+        val operationNanos = snapshot.value(HookMetrics.Counter.OPERATION_NANOS)
+        MetricRow(
+            "后台操作",
+            "$operations 次，平均 ${formatMillis(if (operations == 0L) 0 else operationNanos / operations)}"
+        )
+        MetricRow(
+            "失败",
+            "Hook ${snapshot.value(HookMetrics.Counter.HOOK_FAILURES)} / 操作 ${snapshot.value(HookMetrics.Counter.OPERATION_FAILURES)}",
+            highlight = snapshot.value(HookMetrics.Counter.HOOK_FAILURES) > 0 ||
+                    snapshot.value(HookMetrics.Counter.OPERATION_FAILURES) > 0
+        )
+        MetricRow(
+            "熔断",
+            "${snapshot.value(HookMetrics.Counter.BREAKER_TRIPS)} 次，跳过 ${snapshot.value(HookMetrics.Counter.BREAKER_SKIPS)} 次回调",
+            highlight = snapshot.value(HookMetrics.Counter.BREAKER_TRIPS) > 0
+        )
+    }
+}
+
+/**
+ * Hook 卡片：次数、平均耗时、最大耗时
+ */
+@Composable
+private fun HooksCard(snapshot: MetricsRegion.Snapshot) {
+    DiagnosticsSection(title = "Hook 调用", icon = Icons.Default.Build) {
+        for (hook in HookMetrics.HookId.values()) {
+            val count = snapshot.count(hook)
+            if (count == 0L) {
+                continue
+            }
+            MetricRow(
+                hook.label,
+                "$count 次  平均 ${formatMicros(snapshot.totalNanos(hook) / count)}  最大 ${formatMicros(snapshot.maxNanos(hook))}"
+            )
+        }
+    }
+}
+
+/**
+ * 耗时阶段卡片
+ */
+@Composable
+private fun PhasesCard(snapshot: MetricsRegion.Snapshot) {
+    DiagnosticsSection(title = "耗时阶段", icon = Icons.Default.Refresh) {
+        for (phase in HookMetrics.Phase.values()) {
+            val count = snapshot.count(phase)
+            MetricRow(
+                phase.name,
+                "$count 次  合计 ${formatMillis(snapshot.totalNanos(phase))}  最大 ${formatMicros(snapshot.maxNanos(phase))}"
+            )
+        }
+    }
+}
+
+@Composable
+private fun DiagnosticsSection(
+    title: String,
+    icon: ImageVector,
+    content: @Composable ColumnScope.() -> Unit
+) {
+    Card(
+        modifier = Modifier.fillMaxWidth(),
+        shape = AppShapeLarge,
+        colors = CardDefaults.cardColors(containerColor = AppCardBackground),
+        elevation = CardDefaults.cardElevation(defaultElevation = 1.dp)
+    ) {
+        Column(
+            modifier = Modifier
+                .fillMaxWidth()
+                .padding(20.dp),
+            verticalArrangement = Arrangement.spacedBy(10.dp)
+        ) {
+            Row(verticalAlignment = Alignment.CenterVertically) {
+                Icon(
+                    imageVector = icon,
+                    contentDescription = null,
+                    tint = AppPrimary,
+                    modifier = Modifier.size(22.dp)
+                )
+                Spacer(modifier = Modifier.width(10.dp))
+                Text(
+                    text = title,
+                    fontSize = 17.sp,
+                    fontWeight = FontWeight.SemiBold,
+                    color = AppTextPrimary
+                )
+            }
+
+            content()
+        }
+    }
+}
+
+@Composable
+private fun MetricRow(label: String, value: String, highlight: Boolean = false) {
+    Column(modifier = Modifier.fillMaxWidth()) {
+        Text(
+            text = label,
+            fontSize = 13.sp,
+            color = AppTextHint
+        )
+        Text(
+            text = value,
+            fontSize = 14.sp,
+            fontFamily = FontFamily.Monospace,
+            color = if (highlight) AppError else AppTextPrimary
+        )
+    }
+}
+
+private fun hitRate(snapshot: MetricsRegion.Snapshot, hits: HookMetrics.Counter, misses: HookMetrics.Counter): String {
+    val hit = snapshot.value(hits)
+    val total = hit + snapshot.value(misses)
+    if (total == 0L) {
+        return "0 次"
+    }
+    return String.format(Locale.US, "%d / %d 命中 (%.1f%%)", hit, total, hit * 100.0 / total)
+}
+
+private fun formatTime(millis: Long): String =
+    SimpleDateFormat("MM-dd HH:mm:ss", Locale.US).format(Date(millis))
+
+private fun formatMicros(nanos: Long): String = String.format(Locale.US, "%.1fµs", nanos / 1000.0)
+
+private fun formatMillis(nanos: Long): String = String.format(Locale.US, "%.1fms", nanos / 1_000_000.0)
+
+private fun formatBytes(bytes: Long): String {
+    return when {
+        bytes >= 1024 * 1024 -> String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0))
+        bytes >= 1024 -> String.format(Locale.US, "%.1f KB", bytes / 1024.0)
+        else -> "$bytes B"
+    }
+}
@@ -0,0 +1,81 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.viewModelScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+
+/**
+ * 诊断页面状态
+ *
+ * @param snapshot 最近一次读取到的统计，读取失败时保留上一次的值
+ * @param errorMessage 最近一次读取失败的原因
+ */
+data class DiagnosticsState(
+    val snapshot: MetricsRegion.Snapshot? = null,
+    val errorMessage: String? = null
+)
+
+/**
+ * 诊断页面 ViewModel
+ *
+ * 页面可见时每秒映射一次 [MetricsRegion] 文件并读取当前值
+ */
+class DiagnosticsViewModel : ViewModel() {
+
+    private val _state = MutableStateFlow(DiagnosticsState())
+    val state: StateFlow<DiagnosticsState> = _state.asStateFlow()
+
+    private val dir = File(Diagnostics.DIAGNOSTICS_PATH)
+
+    private var pollJob: Job? = null
+
+    /**
+     * 开始轮询（onStart）
+     */
+    fun startPolling() {
+        if (pollJob?.isActive == true) {
+            return
+        }
+        pollJob = viewModelScope.launch {
+            while (isActive) {
+                refresh()
+                delay(POLL_INTERVAL_MS)
+            }
+        }
+    }
+
+    /**
+     * 停止轮询（onStop）
+     */
+    fun stopPolling() {
+        pollJob?.cancel()
+        pollJob = null
+    }
+
+    private suspend fun refresh() {
+        val result = withContext(Dispatchers.IO) {
+            try {
+                Result.success(MetricsRegion.read(dir))
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+        _state.value = result.fold(
+            onSuccess = { DiagnosticsState(snapshot = it) },
+            onFailure = { _state.value.copy(errorMessage = it.message ?: "读取失败") }
+        )
+    }
+
+    companion object {
+        private const val POLL_INTERVAL_MS = 1000L
+    }
+}
@@ -0,0 +1,283 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Hook 耗时统计
+ *
+ * 按 Hook 和耗时阶段（文件 I/O、反射、JSON）记录调用次数和耗时分布
+ * 1. 所有计数器在类加载时一次性分配（AtomicLongArray），记录时不分配对象、不加锁
+ * 2. 耗时按 2 的幂分桶：第 i 个桶记录 [2^i, 2^(i+1)) 纳秒，最后一个桶不设上限
+ * 3. 只统计模块自身的代码，不包括被 Hook 的原方法
+ * 4. [Counter] 记录缓存命中、复制字节数、后台操作等累计值
+ *
+ * 当前值由 [MetricsRegion] 定期发布到共享内存文件，模块 App 的诊断页面直接读取
+ */
+object HookMetrics {
+
+    /**
+     * 被统计的 Hook
+     */
+    enum class HookId(val label: String) {
+        CONVERT_MEMBER_GRADE("MergeMemberGradeEnum.convertMemberGrade"),
+        GET_EXT_RES_ATTRS("UserLoginResult.getExtResAttrs"),
+        GET_FACE_PAY_SKIN_MODEL("ConfigUtilBiz.getFacePaySkinModel"),
+        SC_INNER_MANAGER_K("SCInnerManager.K"),
+        SC_INNER_MANAGER_Q("SCInnerManager.q"),
+        SC_INNER_MANAGER_Y("SCInnerManager.y"),
+        SC_META_MODEL_LOAD_RES_SYNC("SCMetaModel.loadResSync"),
+        SC_CONFIG_UTIL_M("SCConfigUtil.m"),
+        SC_CONFIG_UTIL_L("SCConfigUtil.l")
+    }
+
+    /**
+     * Hook 内部的耗时阶段
+     */
+    enum class Phase {
+        IO,
+        REFLECTION,
+        JSON
+    }
+
+    /**
+     * 累计计数器
+     */
+    enum class Counter(val label: String) {
+        HOOK_FAILURES("hook callback failures"),
+        SKIN_MODEL_HITS("skin model cache hits"),
+        SKIN_MODEL_MISSES("skin model cache misses"),
+        THEME_INFO_HITS("theme info cache hits"),
+        THEME_INFO_MISSES("theme info cache misses"),
+        USER_ID_HITS("user id cache hits"),
+        USER_ID_MISSES("user id cache misses"),
+        FILES_COPIED("files copied"),
+        BYTES_COPIED("bytes copied"),
+        OPERATIONS("background operations"),
+        OPERATION_FAILURES("background operation failures"),
+        OPERATION_NANOS("background operation time (ns)"),
+        BREAKER_TRIPS("circuit breaker trips"),
+        BREAKER_SKIPS("calls skipped by open circuit breakers"),
+        COPY_FAILURES("files failed to copy")
+    }
+
+    /** 每个分布的桶数量 */
+    const val BUCKETS = 32
+
+    private val hookIds = HookId.values()
+    private val phases = Phase.values()
+
+    private val hooks = Distributions(hookIds.size)
+    private val phaseDistributions = Distributions(phases.size)
+    private val counters = AtomicLongArray(Counter.values().size)
+
+    /**
+     * 一组预分配的耗时分布
+     */
+    private class Distributions(size: Int) {
+        val counts = AtomicLongArray(size)
+        val totals = AtomicLongArray(size)
+        val maxima = AtomicLongArray(size)
+        val buckets = AtomicLongArray(size * BUCKETS)
+
+        fun record(index: Int, nanos: Long) {
+            counts.incrementAndGet(index)
+            totals.addAndGet(index, nanos)
+            buckets.incrementAndGet(index * BUCKETS + bucketOf(nanos))
+
+            var max = maxima.get(index)
+            while (nanos > max && !maxima.compareAndSet(index, max, nanos)) {
+                max = maxima.get(index)
+            }
+        }
+
+        fun reset() {
+            for (i in 0 until counts.length()) {
+                counts.set(i, 0)
+                totals.set(i, 0)
+                maxima.set(i, 0)
+            }
+            for (i in 0 until buckets.length()) {
+                buckets.set(i, 0)
+            }
+        }
+
+        /**
+         * 估算分位数（返回所在桶的上界）
+         */
+        fun percentile(index: Int, fraction: Double): Long {
+            val count = counts.get(index)
+            if (count == 0L) {
+                return 0
+            }
+            val target = Math.ceil(count * fraction).toLong()
+            var seen = 0L
+            for (bucket in 0 until BUCKETS) {
+                seen += buckets.get(index * BUCKETS + bucket)
+                if (seen >= target) {
+                    return if (bucket == BUCKETS - 1) maxima.get(index) else (1L shl (bucket + 1))
+                }
+            }
+            return maxima.get(index)
+        }
+    }
+
+    /**
+     * 当前时间戳（纳秒），作为 [record] / [recordPhase] 的起点
+     */
+    @JvmStatic
+    fun now(): Long = System.nanoTime()
+
+    /**
+     * 记录一次 Hook 回调的耗时
+     *
+     * @param startNanos [now] 返回的起点
+     */
+    @JvmStatic
+    fun record(hook: HookId, startNanos: Long) {
+        hooks.record(hook.ordinal, System.nanoTime() - startNanos)
+    }
+
+    /**
+     * 记录一次阶段耗时
+     *
+     * @param startNanos [now] 返回的起点
+     */
+    @JvmStatic
+    fun recordPhase(phase: Phase, startNanos: Long) {
+        phaseDistributions.record(phase.ordinal, System.nanoTime() - startNanos)
+    }
+
+    /**
+     * 统计代码块在指定阶段的耗时
+     */
+    inline fun <T> measure(phase: Phase, block: () -> T): T {
+        val start = now()
+        try {
+            return block()
+        } finally {
+            recordPhase(phase, start)
+        }
+    }
+
+    /**
+     * 计数器加一
+     */
+    @JvmStatic
+    fun increment(counter: Counter) {
+        counters.incrementAndGet(counter.ordinal)
+    }
+
+    /**
+     * 计数器增加指定值
+     */
+    @JvmStatic
+    fun add(counter: Counter, delta: Long) {
+        counters.addAndGet(counter.ordinal, delta)
+    }
+
+    /** 计数器当前值 */
+    @JvmStatic
+    fun count(counter: Counter): Long = counters.get(counter.ordinal)
+
+    /** Hook 的调用次数 / 总耗时 / 最大耗时（纳秒） */
+    @JvmStatic
+    fun count(hook: HookId): Long = hooks.counts.get(hook.ordinal)
+
+    @JvmStatic
+    fun totalNanos(hook: HookId): Long = hooks.totals.get(hook.ordinal)
+
+    @JvmStatic
+    fun maxNanos(hook: HookId): Long = hooks.maxima.get(hook.ordinal)
+
+    /** 阶段的次数 / 总耗时 / 最大耗时（纳秒） */
+    @JvmStatic
+    fun count(phase: Phase): Long = phaseDistributions.counts.get(phase.ordinal)
+
+    @JvmStatic
+    fun totalNanos(phase: Phase): Long = phaseDistributions.totals.get(phase.ordinal)
+
+    @JvmStatic
+    fun maxNanos(phase: Phase): Long = phaseDistributions.maxima.get(phase.ordinal)
+
+    /**
+     * 清空所有统计
+     */
+    @JvmStatic
+    fun reset() {
+        hooks.reset()
+        phaseDistributions.reset()
+        for (i in 0 until counters.length()) {
+            counters.set(i, 0)
+        }
+    }
+
+    /**
+     * 生成文本报告
+     *
+     * 每行：名称、次数、平均、p50、p90、p99、最大值（单位微秒），以及非空的分桶
+     */
+    @JvmStatic
+    fun report(): String {
+        val builder = StringBuilder()
+        builder.append("# hooks\n")
+        appendHeader(builder)
+        for (hook in hookIds) {
+            appendRow(builder, hook.label, hooks, hook.ordinal)
+        }
+
+        builder.append("\n# phases\n")
+        appendHeader(builder)
+        for (phase in phases) {
+            appendRow(builder, phase.name, phaseDistributions, phase.ordinal)
+        }
+
+        builder.append("\n# counters\n")
+        for (counter in Counter.values()) {
+            builder.append(counter.label).append('\t').append(count(counter)).append('\n')
+        }
+        return builder.toString()
+    }
+
+    private fun appendHeader(builder: StringBuilder) {
+        builder.append("name\tcount\tmean_us\tp50_us\tp90_us\tp99_us\tmax_us\tbuckets(log2 ns:count)\n")
+    }
+
+    private fun appendRow(builder: StringBuilder, name: String, distributions: Distributions, index: Int) {
+        val count = distributions.counts.get(index)
+        val mean = if (count == 0L) 0L else distributions.totals.get(index) / count
+
+        builder.append(name).append('\t')
+            .append(count).append('\t')
+            .append(micros(mean)).append('\t')
+            .append(micros(distributions.percentile(index, 0.50))).append('\t')
+            .append(micros(distributions.percentile(index, 0.90))).append('\t')
+            .append(micros(distributions.percentile(index, 0.99))).append('\t')
+            .append(micros(distributions.maxima.get(index))).append('\t')
+
+        var first = true
+        for (bucket in 0 until BUCKETS) {
+            val value = distributions.buckets.get(index * BUCKETS + bucket)
+            if (value == 0L) {
+                continue
+            }
+            if (!first) {
+                builder.append(',')
+            }
+            builder.append(bucket).append(':').append(value)
+            first = false
+        }
+        builder.append('\n')
+    }
+
+    private fun micros(nanos: Long): String = String.format(java.util.Locale.US, "%.1f", nanos / 1000.0)
+
+    /**
+     * 耗时所在的桶：floor(log2(nanos))，0 和 1 纳秒都在第 0 个桶
+     */
+    private fun bucketOf(nanos: Long): Int {
+        if (nanos <= 1) {
+            return 0
+        }
+        return minOf(63 - java.lang.Long.numberOfLeadingZeros(nanos), BUCKETS - 1)
+    }
+}
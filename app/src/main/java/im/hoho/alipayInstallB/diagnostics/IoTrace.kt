@@ -0,0 +1,181 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Looper
+import android.os.SystemClock
+import im.hoho.alipayInstallB.hook.ModuleLog
+import java.util.Locale
+
+/**
+ * 模块 I/O 追踪
+ *
+ * 模块代码中的文件和数据库操作都通过 [trace] / [begin] + [end] 包裹：
+ * 1. 始终把耗时计入 [HookMetrics] 的 IO 阶段
+ * 2. 开启追踪（000_HOHO_DIAGNOSTICS 中存在 io_trace 文件夹）后，额外记录线程、调用位置和耗时，
+ *    主线程（main looper）上的操作会立即输出警告
+ * 3. 记录保存在内存中（最多 [MAX_RECORDS] 条），随 dump 请求导出为本次进程的报告
+ */
+object IoTrace {
+    private const val TAG = "IoTrace"
+
+    /** 开启追踪的文件夹 */
+    const val FLAG = "io_trace"
+
+    private const val MAX_RECORDS = 4096
+
+    /**
+     * 一次 I/O 操作
+     */
+    private class Record(
+        val operation: String,
+        val target: String,
+        val thread: String,
+        val callSite: String,
+        val uptimeMs: Long,
+        val durationNanos: Long,
+        val onMainThread: Boolean
+    )
+
+    /** 是否记录调用细节（由 Diagnostics 根据 io_trace 文件夹设置） */
+    @Volatile
+    @JvmStatic
+    var enabled = false
+
+    private val records = ArrayList<Record>()
+    private var droppedRecords = 0
+
+    /**
+     * 追踪一次 I/O 操作（Kotlin）
+     *
+     * @param operation 操作类型，例如 list、read、write、copy、sqlite
+     * @param target 操作对象（路径等），只在开启追踪时转为字符串
+     */
+    inline fun <T> trace(operation: String, target: Any?, block: () -> T): T {
+        val start = begin()
+        try {
+            return block()
+        } finally {
+            end(operation, target, start)
+        }
+    }
+
+    /**
+     * 开始一次 I/O 操作（Java）
+     *
+     * @return 传给 [end] 的起点
+     */
+    @JvmStatic
+    fun begin(): Long = HookMetrics.now()
+
+    /**
+     * 结束一次 I/O 操作（Java）
+     */
+    @JvmStatic
+    fun end(operation: String, target: Any?, startNanos: Long) {
+        HookMetrics.recordPhase(HookMetrics.Phase.IO, startNanos)
+        if (enabled) {
+            record(operation, target, System.nanoTime() - startNanos)
+        }
+    }
+
+    private fun record(operation: String, target: Any?, durationNanos: Long) {
+        val onMainThread = Looper.getMainLooper().isCurrentThread
+        val record = Record(
+            operation = operation,
+            target = target?.toString() ?: "",
+            thread = Thread.currentThread().name,
+            callSite = callSite(),
+            uptimeMs = SystemClock.uptimeMillis(),
+            durationNanos = durationNanos,
+            onMainThread = onMainThread
+        )
+
+        synchronized(records) {
+            if (records.size < MAX_RECORDS) {
+                records.add(record)
+            } else {
+                droppedRecords++
+            }
+        }
+
+        if (onMainThread) {
+            ModuleLog.w(
+                TAG,
+                "主线程 I/O: ${record.operation} ${record.target} " +
+                        "(${formatMillis(durationNanos)}ms) at ${record.callSite}"
+            )
+        }
+    }
+
+    /**
+     * 调用位置：第一个不属于 IoTrace 的栈帧
+     */
+    private fun callSite(): String {
+        val ownClass = IoTrace::class.java.name
+        for (frame in Throwable().stackTrace) {
+            if (frame.className != ownClass) {
+                return "${frame.className.substringAfterLast('.')}.${frame.methodName}:${frame.lineNumber}"
+            }
+        }
+        return "?"
+    }
+
+    /**
+     * 清空已记录的操作
+     */
+    @JvmStatic
+    fun clear() {
+        synchronized(records) {
+            records.clear()
+            droppedRecords = 0
+        }
+    }
+
+    /**
+     * 本次进程的 I/O 报告
+     *
+     * 先按调用位置汇总（主线程次数、总耗时、最大耗时），再列出所有记录
+     */
+    @JvmStatic
+    fun report(): String {
+        val snapshot: List<Record>
+        val dropped: Int
+        synchronized(records) {
+            snapshot = ArrayList(records)
+            dropped = droppedRecords
+        }
+
+        val builder = StringBuilder()
+        builder.append("# io trace (enabled=").append(enabled)
+            .append(", records=").append(snapshot.size)
+            .append(", dropped=").append(dropped).append(")\n\n")
+
+        builder.append("# by call site\n")
+        builder.append("call_site\toperation\tcount\tmain_thread\ttotal_ms\tmax_ms\n")
+        snapshot.groupBy { it.callSite to it.operation }
+            .entries
+            .sortedByDescending { entry -> entry.value.sumOf { it.durationNanos } }
+            .forEach { (key, group) ->
+                builder.append(key.first).append('\t')
+                    .append(key.second).append('\t')
+                    .append(group.size).append('\t')
+                    .append(group.count { it.onMainThread }).append('\t')
+                    .append(formatMillis(group.sumOf { it.durationNanos })).append('\t')
+                    .append(formatMillis(group.maxOf { it.durationNanos })).append('\n')
+            }
+
+        builder.append("\n# records\n")
+        builder.append("uptime_ms\tthread\tmain\toperation\tduration_ms\tcall_site\ttarget\n")
+        for (record in snapshot) {
+            builder.append(record.uptimeMs).append('\t')
+                .append(record.thread).append('\t')
+                .append(if (record.onMainThread) "MAIN" else "-").append('\t')
+                .append(record.operation).append('\t')
+                .append(formatMillis(record.durationNanos)).append('\t')
+                .append(record.callSite).append('\t')
+                .append(record.target).append('\n')
+        }
+        return builder.toString()
+    }
+
+    private fun formatMillis(nanos: Long): String = String.format(Locale.US, "%.3f", nanos / 1_000_000.0)
+}
@@ -0,0 +1,306 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Process
+import im.hoho.alipayInstallB.hook.ModuleLog
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * 共享内存统计区
+ *
+ * 000_HOHO_DIAGNOSTICS 中存在 metrics 文件夹时，支付宝进程把 [HookMetrics] 的当前值定期写入
+ * 同一目录的 metrics.mmap（内存映射），模块 App 映射同一个文件直接读取，不需要 IPC 或解析日志
+ * 1. 默认不发布，创建 metrics 文件夹后开始、删除后停止，不为每次启动常驻一个发布线程
+ * 2. 只有一个写线程：写之前序号加一（奇数），写数据和校验和，写完再加一（偶数）
+ * 3. 两个进程之间没有内存序保证，序号只用于跳过明显正在写入的数据；
+ *    读者重新计算校验和，与序号一起确认读到的是同一次发布，否则重读
+ * 4. 计数器之间不是同一时刻的快照（发布线程逐个读取原子计数器），值只用于观察趋势
+ * 5. Hook 线程只更新 HookMetrics 中的原子计数器，不接触映射文件
+ * 6. 文件布局（大端）：64 字节文件头 + [slotNames] 顺序的 long 值
+ *
+ * 文件头：magic(int) layout(int) pid(int) slotCount(int) sequence(long) publishedAt(long) startedAt(long) checksum(long)
+ */
+object MetricsRegion {
+    private const val TAG = "MetricsRegion"
+
+    /** 映射文件名 */
+    const val FILE_NAME = "metrics.mmap"
+
+    /** 开启发布的文件夹 */
+    const val FLAG = "metrics"
+
+    // "HOHO"
+    private const val MAGIC = 0x484F484F
+
+    // 布局变化时递增
+    private const val LAYOUT_VERSION = 4
+
+    private const val OFFSET_MAGIC = 0
+    private const val OFFSET_LAYOUT = 4
+    private const val OFFSET_PID = 8
+    private const val OFFSET_SLOT_COUNT = 12
+    private const val OFFSET_SEQUENCE = 16
+    private const val OFFSET_PUBLISHED_AT = 24
+    private const val OFFSET_STARTED_AT = 32
+    private const val OFFSET_CHECKSUM = 40
+    private const val HEADER_SIZE = 64
+
+    // 发布间隔
+    private const val PUBLISH_INTERVAL_MS = 500L
+
+    // 读取时的最大重试次数
+    private const val READ_ATTEMPTS = 16
+
+    private const val FNV_OFFSET = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    /**
+     * 每个槽位的名称，写入和读取都按此顺序
+     *
+     * 计数器、每个 Hook 的次数/总耗时/最大耗时、每个阶段的次数/总耗时/最大耗时
+     */
+    @JvmStatic
+    val slotNames: List<String> by lazy {
+        val names = ArrayList<String>()
+        HookMetrics.Counter.values().forEach { names.add(it.label) }
+        HookMetrics.HookId.values().forEach {
+            names.add("${it.label} count")
+            names.add("${it.label} total_ns")
+            names.add("${it.label} max_ns")
+        }
+        HookMetrics.Phase.values().forEach {
+            names.add("${it.name} count")
+            names.add("${it.name} total_ns")
+            names.add("${it.name} max_ns")
+        }
+        names
+    }
+
+    /**
+     * 一次一致的读取结果
+     *
+     * @param values 与 [slotNames] 一一对应
+     */
+    class Snapshot(
+        val pid: Int,
+        val sequence: Long,
+        val publishedAt: Long,
+        val startedAt: Long,
+        val values: LongArray
+    ) {
+        fun value(counter: HookMetrics.Counter): Long = values[counter.ordinal]
+
+        fun count(hook: HookMetrics.HookId): Long = values[hookSlot(hook)]
+
+        fun totalNanos(hook: HookMetrics.HookId): Long = values[hookSlot(hook) + 1]
+
+        fun maxNanos(hook: HookMetrics.HookId): Long = values[hookSlot(hook) + 2]
+
+        fun count(phase: HookMetrics.Phase): Long = values[phaseSlot(phase)]
+
+        fun totalNanos(phase: HookMetrics.Phase): Long = values[phaseSlot(phase) + 1]
+
+        fun maxNanos(phase: HookMetrics.Phase): Long = values[phaseSlot(phase) + 2]
+    }
+
+    /**
+     * 读取失败的原因
+     */
+    class ReadException(message: String) : Exception(message)
+
+    // 写端映射（保持引用）和当前序号
+    private var buffer: MappedByteBuffer? = null
+    private var sequence = 0L
+
+    // 发布线程，停止时中断
+    private var publisher: Thread? = null
+
+    @Volatile
+    private var publishing = false
+
+    private fun hookSlot(hook: HookMetrics.HookId): Int =
+        HookMetrics.Counter.values().size + hook.ordinal * 3
+
+    private fun phaseSlot(phase: HookMetrics.Phase): Int =
+        HookMetrics.Counter.values().size + HookMetrics.HookId.values().size * 3 + phase.ordinal * 3
+
+    private fun regionSize(): Int = HEADER_SIZE + slotNames.size * 8
+
+    /**
+     * 开始发布（支付宝进程）
+     *
+     * 映射文件并启动后台发布线程；已经在发布时忽略
+     *
+     * @param dir 诊断目录
+     */
+    @JvmStatic
+    @Synchronized
+    fun startPublishing(dir: File) {
+        if (publishing) {
+            return
+        }
+
+        val mapped = try {
+            RandomAccessFile(File(dir, FILE_NAME), "rw").use { file ->
+                file.setLength(regionSize().toLong())
+                file.channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize().toLong())
+            }
+        } catch (e: Exception) {
+            ModuleLog.e(TAG, "✗ 无法映射统计文件: ${e.message}")
+            return
+        }
+
+        // 先把序号置为奇数，读者在文件头写完之前不会接受数据
+        sequence = mapped.getLong(OFFSET_SEQUENCE) or 1L
+        mapped.putLong(OFFSET_SEQUENCE, sequence)
+        mapped.putInt(OFFSET_MAGIC, MAGIC)
+        mapped.putInt(OFFSET_LAYOUT, LAYOUT_VERSION)
+        mapped.putInt(OFFSET_PID, Process.myPid())
+        mapped.putInt(OFFSET_SLOT_COUNT, slotNames.size)
+        mapped.putLong(OFFSET_STARTED_AT, System.currentTimeMillis())
+        buffer = mapped
+        publishing = true
+
+        publisher = Thread({
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+            val values = LongArray(slotNames.size)
+            val previous = LongArray(slotNames.size)
+            var first = true
+            while (true) {
+                collect(values)
+                if (first || !values.contentEquals(previous)) {
+                    publish(mapped, values)
+                    values.copyInto(previous)
+                    first = false
+                }
+                try {
+                    Thread.sleep(PUBLISH_INTERVAL_MS)
+                } catch (e: InterruptedException) {
+                    return@Thread
+                }
+            }
+        }, "HohoMetricsRegion").apply {
+            isDaemon = true
+            start()
+        }
+        ModuleLog.i(TAG, "✓ 开始发布实时统计")
+    }
+
+    /**
+     * 停止发布（删除 metrics 文件夹时调用）
+     */
+    @JvmStatic
+    @Synchronized
+    fun stopPublishing() {
+        if (!publishing) {
+            return
+        }
+        publisher?.interrupt()
+        publisher = null
+        buffer = null
+        publishing = false
+        ModuleLog.i(TAG, "已停止发布实时统计")
+    }
+
+    private fun collect(values: LongArray) {
+        var index = 0
+        for (counter in HookMetrics.Counter.values()) {
+            values[index++] = HookMetrics.count(counter)
+        }
+        for (hook in HookMetrics.HookId.values()) {
+            values[index++] = HookMetrics.count(hook)
+            values[index++] = HookMetrics.totalNanos(hook)
+            values[index++] = HookMetrics.maxNanos(hook)
+        }
+        for (phase in HookMetrics.Phase.values()) {
+            values[index++] = HookMetrics.count(phase)
+            values[index++] = HookMetrics.totalNanos(phase)
+            values[index++] = HookMetrics.maxNanos(phase)
+        }
+    }
+
+    /**
+     * 写入：奇数序号 -> 数据和校验和 -> 偶数序号
+     */
+    private fun publish(mapped: MappedByteBuffer, values: LongArray) {
+        // 启动时序号已经是奇数，首次发布直接写数据
+        if (sequence and 1L == 0L) {
+            sequence++
+            mapped.putLong(OFFSET_SEQUENCE, sequence)
+        }
+
+        val publishedAt = System.currentTimeMillis()
+        for (i in values.indices) {
+            mapped.putLong(HEADER_SIZE + i * 8, values[i])
+        }
+        mapped.putLong(OFFSET_PUBLISHED_AT, publishedAt)
+        mapped.putLong(OFFSET_CHECKSUM, checksum(values, values.size, sequence + 1, publishedAt))
+
+        sequence++
+        mapped.putLong(OFFSET_SEQUENCE, sequence)
+    }
+
+    /**
+     * 校验和（FNV-1a，按 long 计算），包含发布后的序号，旧数据配新序号不会通过校验
+     */
+    private fun checksum(values: LongArray, count: Int, sequence: Long, publishedAt: Long): Long {
+        var hash = FNV_OFFSET xor sequence
+        hash = (hash xor publishedAt) * FNV_PRIME
+        for (i in 0 until count) {
+            hash = (hash xor values[i]) * FNV_PRIME
+        }
+        return hash
+    }
+
+    /**
+     * 读取当前值（模块 App）
+     *
+     * @param dir 诊断目录
+     * @throws ReadException 文件不存在、布局不匹配或一直在写入中
+     */
+    @JvmStatic
+    fun read(dir: File): Snapshot {
+        val file = File(dir, FILE_NAME)
+        if (!file.exists()) {
+            throw ReadException("统计文件不存在，请在诊断目录中创建 $FLAG 文件夹后启动支付宝")
+        }
+
+        val mapped = RandomAccessFile(file, "r").use { raf ->
+            if (raf.length() < HEADER_SIZE) {
+                throw ReadException("统计文件尚未初始化")
+            }
+            raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+        }
+
+        if (mapped.getInt(OFFSET_MAGIC) != MAGIC || mapped.getInt(OFFSET_LAYOUT) != LAYOUT_VERSION) {
+            throw ReadException("统计文件格式不匹配，请重启支付宝")
+        }
+        val slotCount = mapped.getInt(OFFSET_SLOT_COUNT)
+        if (slotCount != slotNames.size || mapped.capacity() < regionSize()) {
+            throw ReadException("统计文件格式不匹配，请重启支付宝")
+        }
+
+        val values = LongArray(slotCount)
+        repeat(READ_ATTEMPTS) {
+            val before = mapped.getLong(OFFSET_SEQUENCE)
+            if (before and 1L == 0L) {
+                for (i in 0 until slotCount) {
+                    values[i] = mapped.getLong(HEADER_SIZE + i * 8)
+                }
+                val publishedAt = mapped.getLong(OFFSET_PUBLISHED_AT)
+                val startedAt = mapped.getLong(OFFSET_STARTED_AT)
+                val pid = mapped.getInt(OFFSET_PID)
+                val stored = mapped.getLong(OFFSET_CHECKSUM)
+                if (mapped.getLong(OFFSET_SEQUENCE) == before &&
+                    checksum(values, slotCount, before, publishedAt) == stored
+                ) {
+                    return Snapshot(pid, before, publishedAt, startedAt, values)
+                }
+            }
+            Thread.yield()
+        }
+        throw ReadException("统计数据正在写入，请稍后重试")
+    }
+}
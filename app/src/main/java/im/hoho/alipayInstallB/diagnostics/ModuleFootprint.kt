@@ -0,0 +1,152 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Debug
+import dalvik.system.DexFile
+import java.io.File
+import java.lang.reflect.Field
+import java.util.Locale
+import java.util.TreeMap
+
+/**
+ * 模块在支付宝进程中的加载占用（Hook层使用）
+ *
+ * 诊断导出时生成 footprint_<pid>_<时间>.txt：
+ * 1. 枚举模块 dex 中的全部类，按包统计已被加载的数量（com.alibaba.fastjson、kotlin.text 等依赖
+ *    是否被加载一目了然），并列出已加载的模块类
+ * 2. 当前进程的 Java 堆和 native 堆用量
+ * 3. 000_HOHO_DIAGNOSTICS 中存在 heap_dump 文件夹时额外写出 hprof，
+ *    用 Android Studio / MAT 按 im.hoho.alipayInstallB 过滤即可查看模块对象的 retained size
+ */
+object ModuleFootprint {
+
+    /** 写出 hprof 的文件夹 */
+    const val HEAP_DUMP_FLAG = "heap_dump"
+
+    private const val MODULE_PACKAGE = "im.hoho.alipayInstallB."
+
+    /**
+     * 生成加载占用报告
+     */
+    fun report(): String {
+        val loader = ModuleFootprint::class.java.classLoader
+        val builder = StringBuilder()
+
+        val names = try {
+            dexClassNames(loader)
+        } catch (t: Throwable) {
+            builder.append("# 无法枚举模块 dex: ").append(t).append('\n')
+            emptyList()
+        }
+
+        val findLoadedClass = ClassLoader::class.java
+            .getDeclaredMethod("findLoadedClass", String::class.java)
+            .apply { isAccessible = true }
+
+        // 包 -> [已加载, 总数]
+        val groups = TreeMap<String, IntArray>()
+        val loadedModuleClasses = ArrayList<String>()
+        var loadedTotal = 0
+        for (name in names) {
+            val loaded = try {
+                findLoadedClass.invoke(loader, name) != null
+            } catch (e: Exception) {
+                false
+            }
+            val counts = groups.getOrPut(groupOf(name)) { IntArray(2) }
+            counts[1]++
+            if (loaded) {
+                counts[0]++
+                loadedTotal++
+                if (name.startsWith(MODULE_PACKAGE)) {
+                    loadedModuleClasses.add(name)
+                }
+            }
+        }
+
+        val runtime = Runtime.getRuntime()
+        builder.append("# module classes loaded: ").append(loadedTotal).append(" / ").append(names.size).append('\n')
+        builder.append("# java heap used: ").append(kib(runtime.totalMemory() - runtime.freeMemory())).append(" KiB\n")
+        builder.append("# native heap allocated: ").append(kib(Debug.getNativeHeapAllocatedSize())).append(" KiB\n")
+
+        builder.append("\n# packages\n")
+        builder.append("package\tloaded\ttotal\n")
+        for ((group, counts) in groups) {
+            if (counts[0] > 0) {
+                builder.append(group).append('\t').append(counts[0]).append('\t').append(counts[1]).append('\n')
+            }
+        }
+        val unloaded = groups.count { it.value[0] == 0 }
+        builder.append("(").append(unloaded).append(" packages without loaded classes omitted)\n")
+
+        builder.append("\n# loaded module classes\n")
+        loadedModuleClasses.sort()
+        for (name in loadedModuleClasses) {
+            builder.append(name).append('\n')
+        }
+        return builder.toString()
+    }
+
+    /**
+     * 写出 hprof
+     *
+     * @return 写出的文件
+     */
+    fun dumpHeap(dir: File, name: String): File {
+        val file = File(dir, name)
+        Debug.dumpHprofData(file.absolutePath)
+        return file
+    }
+
+    /**
+     * 模块类按包分组：模块自身按子包，其他依赖取前两级
+     */
+    private fun groupOf(className: String): String {
+        val depth = if (className.startsWith(MODULE_PACKAGE)) 4 else 2
+        var end = -1
+        for (i in 0 until depth) {
+            val next = className.indexOf('.', end + 1)
+            if (next < 0) {
+                return if (end < 0) "(default)" else className.substring(0, end)
+            }
+            end = next
+        }
+        return className.substring(0, end)
+    }
+
+    /**
+     * 通过 BaseDexClassLoader.pathList.dexElements 枚举模块 dex 中的类名
+     */
+    @Suppress("DEPRECATION")
+    private fun dexClassNames(loader: ClassLoader): List<String> {
+        val pathList = field(loader.javaClass, "pathList").get(loader)
+            ?: throw IllegalStateException("pathList 为空")
+        val elements = field(pathList.javaClass, "dexElements").get(pathList) as Array<*>
+
+        val names = ArrayList<String>()
+        for (element in elements) {
+            if (element == null) {
+                continue
+            }
+            val dexFile = field(element.javaClass, "dexFile").get(element) as? DexFile ?: continue
+            val entries = dexFile.entries()
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement())
+            }
+        }
+        return names
+    }
+
+    private fun field(clazz: Class<*>, name: String): Field {
+        var current: Class<*>? = clazz
+        while (current != null) {
+            try {
+                return current.getDeclaredField(name).apply { isAccessible = true }
+            } catch (e: NoSuchFieldException) {
+                current = current.superclass
+            }
+        }
+        throw NoSuchFieldException("${clazz.name}#$name")
+    }
+
+    private fun kib(bytes: Long): String = String.format(Locale.US, "%.1f", bytes / 1024.0)
+}
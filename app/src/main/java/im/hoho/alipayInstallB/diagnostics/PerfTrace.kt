@@ -0,0 +1,188 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.os.Process
+import android.os.SystemClock
+import android.os.Trace
+import java.io.File
+import java.io.FileOutputStream
+import java.util.Collections
+
+/**
+ * 长操作分段追踪
+ *
+ * 导入、导出、复制、校验等耗时操作按阶段划分为命名区间：
+ * 1. 每个区间同时写入系统 trace（android.os.Trace），可以用 Perfetto / systrace 查看
+ * 2. 000_HOHO_DIAGNOSTICS 中存在 perf_trace 文件夹时，最外层区间结束后把本线程的所有区间
+ *    追加到 perf_trace.json（Chrome trace-event 格式），模块 App 和支付宝进程写入同一个文件，
+ *    用 chrome://tracing 或 ui.perfetto.dev 打开即可看到一次主题切换的完整时间线
+ * 3. 时间戳使用 elapsedRealtime，两个进程的事件可以直接对齐
+ *
+ * 区间可以嵌套；Kotlin 使用 [section]，Java 使用 [begin] / [end]（必须在 finally 中结束）
+ */
+object PerfTrace {
+
+    /** 开启 JSON 输出的文件夹 */
+    const val FLAG = "perf_trace"
+
+    private const val FILE_NAME = "perf_trace.json"
+
+    // 超过此大小时把旧文件改名为 perf_trace.old.json 重新开始
+    private const val MAX_FILE_BYTES = 16L * 1024 * 1024
+
+    // 单个线程最多缓存的区间数，超过后丢弃
+    private const val MAX_PENDING_EVENTS = 4096
+
+    // android.os.Trace 的区间名称长度上限
+    private const val MAX_SECTION_NAME = 127
+
+    /**
+     * 未结束的区间
+     */
+    private class Open(val name: String, val startMicros: Long)
+
+    /**
+     * 每个线程的区间栈和已结束、等待写出的事件
+     */
+    private class ThreadState {
+        val stack = ArrayList<Open>()
+        val events = StringBuilder()
+        var eventCount = 0
+    }
+
+    private val state = object : ThreadLocal<ThreadState>() {
+        override fun initialValue() = ThreadState()
+    }
+
+    private val fileLock = Any()
+
+    // 已经写出名称元数据的线程
+    private val namedThreads: MutableSet<Int> = Collections.synchronizedSet(HashSet())
+
+    @Volatile
+    private var processNamed = false
+
+    /**
+     * 追踪一个区间（Kotlin）
+     */
+    inline fun <T> section(name: String, block: () -> T): T {
+        begin(name)
+        try {
+            return block()
+        } finally {
+            end()
+        }
+    }
+
+    /**
+     * 开始一个区间（Java）
+     */
+    @JvmStatic
+    fun begin(name: String) {
+        Trace.beginSection(if (name.length > MAX_SECTION_NAME) name.substring(0, MAX_SECTION_NAME) else name)
+        state.get()!!.stack.add(Open(name, nowMicros()))
+    }
+
+    /**
+     * 结束最近开始的区间（Java）
+     *
+     * 最外层区间结束时写出本线程缓存的事件
+     */
+    @JvmStatic
+    fun end() {
+        Trace.endSection()
+        val thread = state.get()!!
+        if (thread.stack.isEmpty()) {
+            return
+        }
+        val open = thread.stack.removeAt(thread.stack.size - 1)
+
+        if (thread.eventCount < MAX_PENDING_EVENTS) {
+            appendEvent(thread.events, open.name, open.startMicros, nowMicros() - open.startMicros)
+            thread.eventCount++
+        }
+
+        if (thread.stack.isEmpty()) {
+            val events = thread.events.toString()
+            thread.events.setLength(0)
+            thread.eventCount = 0
+            flush(events)
+        }
+    }
+
+    private fun nowMicros(): Long = SystemClock.elapsedRealtimeNanos() / 1000
+
+    private fun appendEvent(builder: StringBuilder, name: String, startMicros: Long, durationMicros: Long) {
+        builder.append("{\"name\":\"").append(escape(name))
+            .append("\",\"cat\":\"hoho\",\"ph\":\"X\",\"ts\":").append(startMicros)
+            .append(",\"dur\":").append(durationMicros)
+            .append(",\"pid\":").append(Process.myPid())
+            .append(",\"tid\":").append(Process.myTid())
+            .append("},\n")
+    }
+
+    /**
+     * 把事件追加到 JSON 文件
+     *
+     * 使用 JSON Array 格式且不写结尾的 "]"（trace viewer 允许），两个进程都只做追加
+     */
+    private fun flush(events: String) {
+        val dir = File(Diagnostics.DIAGNOSTICS_PATH)
+        if (events.isEmpty() || !File(dir, FLAG).exists()) {
+            return
+        }
+
+        val builder = StringBuilder()
+        if (!processNamed) {
+            processNamed = true
+            appendMetadata(builder, "process_name", 0, processName())
+        }
+        val tid = Process.myTid()
+        if (namedThreads.add(tid)) {
+            appendMetadata(builder, "thread_name", tid, Thread.currentThread().name)
+        }
+        builder.append(events)
+
+        synchronized(fileLock) {
+            try {
+                val file = File(dir, FILE_NAME)
+                if (file.length() > MAX_FILE_BYTES) {
+                    file.renameTo(File(dir, "perf_trace.old.json"))
+                }
+                if (file.createNewFile()) {
+                    builder.insert(0, "[\n")
+                }
+                FileOutputStream(file, true).use { it.write(builder.toString().toByteArray()) }
+            } catch (e: Exception) {
+                // 诊断输出失败不影响业务操作
+            }
+        }
+    }
+
+    private fun appendMetadata(builder: StringBuilder, type: String, tid: Int, name: String) {
+        builder.append("{\"name\":\"").append(type)
+            .append("\",\"ph\":\"M\",\"pid\":").append(Process.myPid())
+            .append(",\"tid\":").append(tid)
+            .append(",\"args\":{\"name\":\"").append(escape(name)).append("\"}},\n")
+    }
+
+    private fun processName(): String {
+        return try {
+            File("/proc/self/cmdline").readText().trim { it <= ' ' }
+        } catch (e: Exception) {
+            "pid ${Process.myPid()}"
+        }
+    }
+
+    private fun escape(value: String): String {
+        val builder = StringBuilder(value.length)
+        for (c in value) {
+            when {
+                c == '"' -> builder.append("\\\"")
+                c == '\\' -> builder.append("\\\\")
+                c < ' ' -> builder.append(String.format("\\u%04x", c.code))
+                else -> builder.append(c)
+            }
+        }
+        return builder.toString()
+    }
+}
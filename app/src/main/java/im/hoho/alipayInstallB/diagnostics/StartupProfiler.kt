@@ -0,0 +1,316 @@
+package im.hoho.alipayInstallB.diagnostics
+
+import android.app.Application
+import android.app.Instrumentation
+import android.os.Build
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XposedBridge
+import de.robv.android.xposed.XposedHelpers
+import im.hoho.alipayInstallB.BuildConfig
+import im.hoho.alipayInstallB.hook.DeferredHooks
+import im.hoho.alipayInstallB.hook.OperationExecutor
+import java.io.File
+import java.io.FileWriter
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 冷启动耗时分解
+ *
+ * 记录 handleLoadPackage 及延迟安装的各个步骤（类查找、静态初始化、Hook 安装）的耗时，
+ * 并统计支付宝 Application.onCreate 之前模块一共占用了多少时间
+ * 1. 只在 Application.onCreate 之前（含 onCreate 本身）记录，之后不再有任何开销
+ * 2. 000_HOHO_DIAGNOSTICS 中存在 startup 文件夹时，onCreate 结束后在后台线程中按支付宝版本
+ *    追加到 startup/startup_<版本>.tsv，每次启动一行，便于对比不同模块版本之间的变化；
+ *    文件超过 [TRIM_BYTES] 时才重写，只保留最近 [MAX_LAUNCHES] 次启动
+ * 3. 嵌套的步骤（handleLoadPackage 内部的查找、Hook）只展示，不重复计入总耗时
+ */
+object StartupProfiler {
+    private const val TAG = "StartupProfiler"
+
+    private const val STARTUP_DIR = "startup"
+
+    // 每个版本文件最多保留的启动记录数
+    private const val MAX_LAUNCHES = 200
+
+    // 记录文件超过此大小时裁剪到 MAX_LAUNCHES 行，其余启动只追加一行
+    private const val TRIM_BYTES = 512L * 1024
+
+    // 单次启动最多记录的步骤数
+    private const val MAX_STEPS = 64
+
+    // 记录文件的表头
+    private const val HEADER =
+        "time\tmodule_version\tpid\tprocess\tmode\tmodule_ms\tload_package_ms\tapp_create_at_ms\tapp_create_ms" +
+                "\twatcher_calls\twatcher_ms\tsteps(category:name=us, * = after Application.onCreate)"
+
+    /**
+     * 步骤类型
+     *
+     * @param span 是否为顶层区间（计入模块总耗时）；其他类型都是区间内部的细节
+     */
+    enum class Category(val span: Boolean) {
+        LOAD_PACKAGE(true),
+        INSTALL(true),
+        CLINIT(false),
+        LOOKUP(false),
+        HOOK(false)
+    }
+
+    private class Step(
+        val category: Category,
+        val name: String,
+        val nanos: Long,
+        val beforeAppCreate: Boolean
+    )
+
+    private val steps = ArrayList<Step>()
+
+    // 每个线程当前所在的区间层数
+    private val depth = object : ThreadLocal<IntArray>() {
+        override fun initialValue() = IntArray(1)
+    }
+
+    // Application.onCreate 之前，顶层区间的总耗时
+    private val moduleNanos = AtomicLong()
+
+    // ClassLoader.loadClass 监听（DeferredHooks）的调用次数和耗时
+    private val watcherCalls = AtomicLong()
+    private val watcherNanos = AtomicLong()
+
+    @Volatile
+    private var appCreateStarted = false
+
+    @Volatile
+    private var finished = false
+
+    private var processName = ""
+    private var mode = ""
+    private var appCreateAtMs = -1L
+    private var appCreateNanos = 0L
+    private var appCreateHook: XC_MethodHook.Unhook? = null
+
+    /**
+     * 当前时间戳（纳秒）
+     */
+    @JvmStatic
+    fun now(): Long = System.nanoTime()
+
+    /**
+     * 开始一个顶层区间（[Category.span] 为 true 的类型），必须在 finally 中调用 [end]
+     */
+    @JvmStatic
+    fun beginSpan(): Long {
+        depth.get()!![0]++
+        return System.nanoTime()
+    }
+
+    /**
+     * 结束一个步骤
+     *
+     * 区间类型与 [beginSpan] 配对；细节类型以 [now] 为起点，抛出异常时可以不调用
+     */
+    @JvmStatic
+    fun end(category: Category, name: String, startNanos: Long) {
+        val nanos = System.nanoTime() - startNanos
+        var topLevel = false
+        if (category.span) {
+            val counter = depth.get()!!
+            counter[0]--
+            topLevel = counter[0] == 0
+        }
+        if (finished) {
+            return
+        }
+
+        val beforeAppCreate = !appCreateStarted
+        if (topLevel && beforeAppCreate) {
+            moduleNanos.addAndGet(nanos)
+        }
+        synchronized(steps) {
+            if (steps.size < MAX_STEPS) {
+                steps.add(Step(category, name, nanos, beforeAppCreate))
+            }
+        }
+    }
+
+    /**
+     * 记录一个细节步骤（Kotlin）
+     */
+    inline fun <T> measure(category: Category, name: String, block: () -> T): T {
+        val start = now()
+        val result = block()
+        end(category, name, start)
+        return result
+    }
+
+    /**
+     * 记录一次 loadClass 监听回调（未执行安装动作的部分）
+     */
+    @JvmStatic
+    fun recordWatcher(startNanos: Long) {
+        if (finished) {
+            return
+        }
+        val nanos = System.nanoTime() - startNanos
+        watcherCalls.incrementAndGet()
+        watcherNanos.addAndGet(nanos)
+        if (!appCreateStarted) {
+            moduleNanos.addAndGet(nanos)
+        }
+    }
+
+    /**
+     * 监听支付宝 Application.onCreate
+     *
+     * Hook Instrumentation.callApplicationOnCreate：开始时截止模块耗时统计，结束后写入记录并卸载
+     *
+     * @param processName 当前进程名
+     * @param lazy 是否使用延迟安装
+     */
+    @JvmStatic
+    fun watchApplicationCreate(processName: String?, lazy: Boolean) {
+        this.processName = processName ?: ""
+        this.mode = if (lazy) "lazy" else "eager"
+
+        val start = now()
+        try {
+            appCreateHook = XposedHelpers.findAndHookMethod(
+                Instrumentation::class.java,
+                "callApplicationOnCreate",
+                Application::class.java,
+                object : XC_MethodHook() {
+                    private var startNanos = 0L
+
+                    override fun beforeHookedMethod(param: MethodHookParam) {
+                        if (appCreateStarted) {
+                            return
+                        }
+                        appCreateStarted = true
+                        appCreateAtMs = DeferredHooks.sinceProcessStart()
+                        startNanos = System.nanoTime()
+                    }
+
+                    override fun afterHookedMethod(param: MethodHookParam) {
+                        if (finished || startNanos == 0L) {
+                            return
+                        }
+                        appCreateNanos = System.nanoTime() - startNanos
+                        finished = true
+                        appCreateHook?.unhook()
+                        appCreateHook = null
+
+                        val application = param.args[0] as? Application ?: return
+                        OperationExecutor.submit(OperationExecutor.KEY_STARTUP_PROFILE) { persist(application) }
+                    }
+                }
+            )
+        } catch (t: Throwable) {
+            XposedBridge.log("[$TAG]✗ 无法监听 Application.onCreate: ${t.message}")
+            return
+        }
+        end(Category.HOOK, "Instrumentation.callApplicationOnCreate", start)
+    }
+
+    /**
+     * 把本次启动追加到对应支付宝版本的记录文件
+     *
+     * 没有 startup 文件夹时不记录
+     */
+    private fun persist(application: Application) {
+        try {
+            val dir = File(Diagnostics.DIAGNOSTICS_PATH, STARTUP_DIR)
+            if (!dir.isDirectory) {
+                return
+            }
+
+            val version = alipayVersion(application)
+            val line = formatLaunch()
+            val file = File(dir, "startup_${fileSafe(version)}.tsv")
+
+            IoTrace.trace("write", file) {
+                if (file.length() > TRIM_BYTES) {
+                    val launches = file.readLines().filter { it.isNotEmpty() }.drop(1).takeLast(MAX_LAUNCHES - 1) + line
+                    file.writeText((listOf(HEADER) + launches).joinToString("\n", postfix = "\n"))
+                } else {
+                    FileWriter(file, true).use { writer ->
+                        if (file.length() == 0L) {
+                            writer.write(HEADER)
+                            writer.write("\n")
+                        }
+                        writer.write(line)
+                        writer.write("\n")
+                    }
+                }
+            }
+
+            XposedBridge.log(
+                "[$TAG]✓ 支付宝 $version 冷启动: 模块 ${millis(moduleNanos.get())}ms，" +
+                        "进程启动到 Application.onCreate ${appCreateAtMs}ms"
+            )
+        } catch (e: Exception) {
+            XposedBridge.log("[$TAG]✗ 冷启动记录写入失败: ${e.message}")
+        }
+    }
+
+    private fun formatLaunch(): String {
+        val snapshot = synchronized(steps) { ArrayList(steps) }
+        val loadPackageNanos = snapshot.filter { it.category == Category.LOAD_PACKAGE }.sumOf { it.nanos }
+
+        val builder = StringBuilder()
+        builder.append(SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(Date())).append('\t')
+            .append(BuildConfig.VERSION_NAME).append('\t')
+            .append(android.os.Process.myPid()).append('\t')
+            .append(processName).append('\t')
+            .append(mode).append('\t')
+            .append(millis(moduleNanos.get())).append('\t')
+            .append(millis(loadPackageNanos)).append('\t')
+            .append(appCreateAtMs).append('\t')
+            .append(millis(appCreateNanos)).append('\t')
+            .append(watcherCalls.get()).append('\t')
+            .append(millis(watcherNanos.get())).append('\t')
+
+        snapshot.forEachIndexed { index, step ->
+            if (index > 0) {
+                builder.append(", ")
+            }
+            builder.append(step.category.name.lowercase(Locale.US)).append(':').append(step.name)
+                .append('=').append(step.nanos / 1000)
+            if (!step.beforeAppCreate) {
+                builder.append('*')
+            }
+        }
+        return builder.toString()
+    }
+
+    private fun alipayVersion(application: Application): String {
+        return try {
+            val info = application.packageManager.getPackageInfo(application.packageName, 0)
+            val code = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                info.longVersionCode
+            } else {
+                @Suppress("DEPRECATION")
+                info.versionCode.toLong()
+            }
+            "${info.versionName}_$code"
+        } catch (e: Exception) {
+            "unknown"
+        }
+    }
+
+    /**
+     * 把版本号中不能用于文件名的字符替换为 "_"（不使用 Regex，避免在支付宝进程中加载正则引擎）
+     */
+    private fun fileSafe(value: String): String {
+        val builder = StringBuilder(value.length)
+        for (c in value) {
+            val safe = c in '0'..'9' || c in 'A'..'Z' || c in 'a'..'z' || c == '.' || c == '_' || c == '-'
+            builder.append(if (safe) c else '_')
+        }
+        return builder.toString()
+    }
+
+    private fun millis(nanos: Long): String = String.format(Locale.US, "%.2f", nanos / 1_000_000.0)
+}
@@ -0,0 +1,200 @@
+package im.hoho.alipayInstallB.hook
+
+import de.robv.android.xposed.XposedBridge
+import java.lang.reflect.Constructor
+import java.lang.reflect.Field
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 支付宝模型类的反射访问器
+ *
+ * 每个 ClassLoader 只解析一次 Field / Method / Constructor，
+ * Hook 回调直接使用缓存的句柄，预热之后不再按名称查找成员
+ * 某个类解析失败只会让对应的访问器为 null，不影响其他访问器
+ */
+class AlipayAccessors private constructor(private val classLoader: ClassLoader) {
+
+    /**
+     * com.alipay.mobile.skincenter.manage.SCInnerManager
+     */
+    class SCInnerManager internal constructor(clazz: Class<*>) {
+        /** 内存缓存 Map<String, SCCacheInfoModel>（字段 g，按特征解析） */
+        private val cacheMapField: Field = resolved(clazz, MemberResolver.SC_INNER_MANAGER_CACHE_MAP)
+
+        /** 单例访问方法（方法名是 m()，不是 getInstance()，按特征解析） */
+        private val getInstanceMethod: Method = resolved(clazz, MemberResolver.SC_INNER_MANAGER_INSTANCE)
+
+        /** readSkinInfoFromLocalCache（方法名 K，按特征解析） */
+        private val readCacheMethod: Method = resolved(clazz, MemberResolver.SC_INNER_MANAGER_READ_CACHE)
+
+        fun instance(): Any? = getInstanceMethod.invoke(null)
+
+        @Suppress("UNCHECKED_CAST")
+        fun cacheMap(manager: Any): MutableMap<String, Any>? =
+            cacheMapField.get(manager) as? MutableMap<String, Any>
+
+        fun readCache(manager: Any) {
+            readCacheMethod.invoke(manager)
+        }
+    }
+
+    /**
+     * com.alipay.mobile.skincenter.model.SCCacheInfoModel
+     */
+    class SCCacheInfoModel internal constructor(clazz: Class<*>) {
+        private val constructor: Constructor<*> = clazz.getDeclaredConstructor().apply { isAccessible = true }
+
+        val usageScene: Field = field(clazz, "usageScene")
+        val skinId: Field = field(clazz, "skinId")
+        val userSkinId: Field = field(clazz, "userSkinId")
+        val userId: Field = field(clazz, "userId")
+        val md5: Field = field(clazz, "md5")
+        val appSquareMd5: Field = field(clazz, "appSquareMd5")
+        val cacheTime: Field = field(clazz, "cacheTime")
+        val versionLimit: Field = field(clazz, "versionLimit")
+        val isDiySkin: Field = field(clazz, "isDiySkin")
+        val name: Field = field(clazz, "name")
+        val expireDate: Field = field(clazz, "expireDate")
+        val skinType: Field = field(clazz, "skinType")
+        val materialId: Field = field(clazz, "materialId")
+        val diyExpiredTime: Field = field(clazz, "diyExpiredTime")
+
+        fun newInstance(): Any = constructor.newInstance()
+    }
+
+    /**
+     * com.alipay.mobile.skincenter.model.SCMetaModel
+     */
+    class SCMetaModel internal constructor(clazz: Class<*>) {
+        val scene: Field = field(clazz, "scene")
+        val skinId: Field = field(clazz, "skinId")
+        val userSkinId: Field = field(clazz, "userSkinId")
+    }
+
+    /**
+     * com.alipay.mobile.skincenter.manage.AntSkinRenderManager
+     */
+    class AntSkinRenderManager internal constructor(clazz: Class<*>) {
+        private val notifySkinChangedMethod: Method = method(clazz, "notifySkinChanged")
+
+        fun notifySkinChanged() {
+            notifySkinChangedMethod.invoke(null)
+        }
+    }
+
+    /**
+     * com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum
+     *
+     * 枚举常量在解析时一次性读取
+     */
+    class MergeMemberGradeEnum internal constructor(clazz: Class<*>) {
+        private val grades: Map<String, Any?> = mapOf(
+            "primary" to staticField(clazz, "PRIMARY"),
+            "golden" to staticField(clazz, "GOLDEN"),
+            "platinum" to staticField(clazz, "PLATINUM"),
+            "diamond" to staticField(clazz, "DIAMOND")
+        )
+
+        /** 未知等级对应的 NULL 常量 */
+        val nullGrade: Any? = staticField(clazz, "NULL")
+
+        /**
+         * 获取会员等级对应的枚举常量
+         *
+         * @param grade primary/golden/platinum/diamond
+         * @return 枚举常量，未知等级返回 null
+         */
+        fun valueOf(grade: String): Any? = grades[grade]
+    }
+
+    val scInnerManager: SCInnerManager? by lazy {
+        resolve("com.alipay.mobile.skincenter.manage.SCInnerManager") { SCInnerManager(it) }
+    }
+
+    val scCacheInfoModel: SCCacheInfoModel? by lazy {
+        resolve("com.alipay.mobile.skincenter.model.SCCacheInfoModel") { SCCacheInfoModel(it) }
+    }
+
+    val scMetaModel: SCMetaModel? by lazy {
+        resolve("com.alipay.mobile.skincenter.model.SCMetaModel") { SCMetaModel(it) }
+    }
+
+    val antSkinRenderManager: AntSkinRenderManager? by lazy {
+        resolve("com.alipay.mobile.skincenter.manage.AntSkinRenderManager") { AntSkinRenderManager(it) }
+    }
+
+    val mergeMemberGradeEnum: MergeMemberGradeEnum? by lazy {
+        resolve("com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum") { MergeMemberGradeEnum(it) }
+    }
+
+    private fun <T> resolve(className: String, factory: (Class<*>) -> T): T? {
+        // 当前支付宝版本中已知不存在的类不再查找
+        if (CompatCache.classState(className) == CompatCache.State.MISSING) {
+            return null
+        }
+        val clazz = try {
+            classLoader.loadClass(className)
+        } catch (e: ClassNotFoundException) {
+            CompatCache.record(className, false)
+            XposedBridge.log("[$TAG] 解析 $className 失败: ${e.message}")
+            return null
+        }
+        CompatCache.record(className, true)
+
+        return try {
+            factory(clazz)
+        } catch (t: Throwable) {
+            XposedBridge.log("[$TAG] 解析 $className 失败: ${t.message}")
+            null
+        }
+    }
+
+    companion object {
+        private const val TAG = "AlipayAccessors"
+
+        // 支付宝进程中通常只有一个目标 ClassLoader，先检查最近一次使用的实例
+        @Volatile
+        private var last: AlipayAccessors? = null
+
+        private val byClassLoader = ConcurrentHashMap<ClassLoader, AlipayAccessors>()
+
+        /**
+         * 获取指定 ClassLoader 的访问器
+         */
+        @JvmStatic
+        fun of(classLoader: ClassLoader): AlipayAccessors {
+            last?.let { if (it.classLoader === classLoader) return it }
+
+            val accessors = byClassLoader[classLoader]
+                ?: AlipayAccessors(classLoader).let { byClassLoader.putIfAbsent(classLoader, it) ?: it }
+            last = accessors
+            return accessors
+        }
+
+        private fun field(clazz: Class<*>, name: String): Field {
+            var current: Class<*>? = clazz
+            while (current != null) {
+                try {
+                    return current.getDeclaredField(name).apply { isAccessible = true }
+                } catch (e: NoSuchFieldException) {
+                    current = current.superclass
+                }
+            }
+            throw NoSuchFieldException("${clazz.name}#$name")
+        }
+
+        private fun staticField(clazz: Class<*>, name: String): Any? = field(clazz, name).get(null)
+
+        private fun method(clazz: Class<*>, name: String): Method =
+            clazz.getDeclaredMethod(name).apply { isAccessible = true }
+
+        private fun resolved(clazz: Class<*>, signature: MemberResolver.MethodSignature): Method =
+            MemberResolver.method(clazz, signature)
+                ?: throw NoSuchMethodException("${clazz.name}#${signature.key}")
+
+        private fun resolved(clazz: Class<*>, signature: MemberResolver.FieldSignature): Field =
+            MemberResolver.field(clazz, signature)
+                ?: throw NoSuchFieldException("${clazz.name}#${signature.key}")
+    }
+}
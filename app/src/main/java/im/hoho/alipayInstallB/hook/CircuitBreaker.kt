@@ -0,0 +1,176 @@
+package im.hoho.alipayInstallB.hook
+
+import android.os.SystemClock
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Hook 熔断器
+ *
+ * 回调连续抛出异常 [threshold] 次后进入直通模式：回调直接返回，原方法照常执行，
+ * 不再重复失败的查找，也不再为每次调用构造异常和堆栈
+ * 1. 变更令牌（[token]）变化时立即恢复，例如主题被更新、账号切换
+ * 2. 冷却 [cooldownMs] 后在 OperationExecutor 的后台线程中执行 [probe]，
+ *    成功后放行一次真实调用试探；试探失败则重新进入冷却
+ * 3. 没有 [probe] 时冷却结束直接放行一次试探调用
+ *
+ * 由 [HookRegistry.FeatureHook] 在回调前后调用，业务代码不需要自己捕获异常
+ *
+ * @param name 名称，用于日志和后台任务 key
+ * @param token 变更令牌，返回值变化表示失败原因可能已经消失
+ * @param probe 后台探测，返回 true 表示可以再次尝试
+ */
+class CircuitBreaker @JvmOverloads constructor(
+    val name: String,
+    private val token: (() -> Int)? = null,
+    private val probe: (() -> Boolean)? = null,
+    private val threshold: Int = DEFAULT_THRESHOLD,
+    private val cooldownMs: Long = DEFAULT_COOLDOWN_MS
+) {
+    private val failures = AtomicInteger()
+
+    // 熔断时刻，0 表示闭合
+    @Volatile
+    private var openedAt = 0L
+
+    // 熔断时的变更令牌
+    @Volatile
+    private var openToken = 0
+
+    // 已放行试探调用（半开）
+    private val trial = AtomicBoolean()
+
+    // 后台探测进行中
+    private val probing = AtomicBoolean()
+
+    // 后台探测已通过，等待放行试探调用
+    private val probePassed = AtomicBoolean()
+
+    /** 是否处于熔断状态 */
+    val isOpen: Boolean
+        get() = openedAt != 0L
+
+    /**
+     * 本次调用是否执行回调
+     *
+     * @return false=熔断中，回调应直接返回
+     */
+    fun allow(): Boolean {
+        val opened = openedAt
+        if (opened == 0L) {
+            return true
+        }
+
+        if (token != null && token.invoke() != openToken) {
+            close("变更令牌已变化")
+            return true
+        }
+
+        if (SystemClock.elapsedRealtime() - opened >= cooldownMs) {
+            if (probe == null) {
+                if (trial.compareAndSet(false, true)) {
+                    return true
+                }
+            } else if (probePassed.compareAndSet(true, false)) {
+                // 只有一个调用拿到试探机会，结果由 onSuccess / onFailure 决定闭合或重新冷却
+                trial.set(true)
+                return true
+            } else {
+                startProbe()
+            }
+        }
+
+        HookMetrics.increment(HookMetrics.Counter.BREAKER_SKIPS)
+        return false
+    }
+
+    /**
+     * 回调成功
+     */
+    fun onSuccess() {
+        if (failures.get() != 0) {
+            failures.set(0)
+        }
+        if (openedAt != 0L) {
+            close("试探调用成功")
+        }
+    }
+
+    /**
+     * 回调抛出异常
+     */
+    fun onFailure(throwable: Throwable) {
+        if (openedAt != 0L) {
+            // 半开状态的试探调用失败，重新冷却
+            openedAt = SystemClock.elapsedRealtime()
+            trial.set(false)
+            probePassed.set(false)
+            return
+        }
+
+        val count = failures.incrementAndGet()
+        if (count < threshold) {
+            if (ModuleLog.sampled("$TAG.$name", LOG_INTERVAL_MS)) {
+                ModuleLog.w(TAG, "$name 回调失败（$count/$threshold）: $throwable")
+            }
+            return
+        }
+
+        openToken = token?.invoke() ?: 0
+        trial.set(false)
+        openedAt = SystemClock.elapsedRealtime()
+        HookMetrics.increment(HookMetrics.Counter.BREAKER_TRIPS)
+        ModuleLog.w(TAG, "✗ $name 连续失败 $count 次，暂停 ${cooldownMs / 1000}s: $throwable")
+    }
+
+    /**
+     * 恢复闭合状态（卸载 Hook 时调用）
+     */
+    fun reset() {
+        failures.set(0)
+        trial.set(false)
+        probePassed.set(false)
+        openedAt = 0L
+    }
+
+    private fun startProbe() {
+        val check = probe ?: return
+        if (trial.get() || probePassed.get() || !probing.compareAndSet(false, true)) {
+            return
+        }
+
+        OperationExecutor.submit("breaker_probe_$name") {
+            try {
+                if (check()) {
+                    // 放行下一次真实调用
+                    probePassed.set(true)
+                    openedAt = 1L
+                } else {
+                    openedAt = SystemClock.elapsedRealtime()
+                }
+            } catch (t: Throwable) {
+                openedAt = SystemClock.elapsedRealtime()
+            } finally {
+                probing.set(false)
+            }
+        }
+    }
+
+    private fun close(reason: String) {
+        reset()
+        ModuleLog.i(TAG, "✓ $name 已恢复（$reason）")
+    }
+
+    companion object {
+        private const val TAG = "CircuitBreaker"
+
+        /** 连续失败多少次后熔断 */
+        const val DEFAULT_THRESHOLD = 3
+
+        /** 熔断后的冷却时间 */
+        const val DEFAULT_COOLDOWN_MS = 30_000L
+
+        private const val LOG_INTERVAL_MS = 10_000L
+    }
+}
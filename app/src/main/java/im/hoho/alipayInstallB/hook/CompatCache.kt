@@ -0,0 +1,317 @@
+package im.hoho.alipayInstallB.hook
+
+import android.content.pm.ApplicationInfo
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XposedHelpers
+import im.hoho.alipayInstallB.BuildConfig
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.diagnostics.StartupProfiler
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.util.Properties
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 按支付宝版本缓存的兼容性探测结果
+ *
+ * 记录每个 Hook 目标类和方法在当前支付宝版本中是否存在：
+ * 1. 已知不存在的类和方法直接跳过，冷启动时不再抛出 ClassNotFoundError / NoSuchMethodError
+ * 2. 缓存与支付宝 APK（路径、大小、修改时间）和模块版本绑定，任意一方更新后自动失效
+ * 3. 只有查找失败（类或方法不存在）才计为一次未找到，Hook 回调或安装中的其他异常不影响缓存；
+ *    连续 [MISS_THRESHOLD] 次启动都未找到才记为缺失，一次偶然的查找失败（例如插件尚未加载）不会永久跳过该目标
+ * 4. 同时保存 [MemberResolver] 按结构特征解析出的混淆成员名，以及同特征方法的数量；
+ *    后者在支付宝或模块更新后保留，用于判断已知名称是否仍然可信
+ * 5. 文件保存在支付宝的 files/hoho_module 中，由 OperationExecutor 在后台写入
+ *
+ * 未调用 [load] 时（例如由其他入口加载）所有目标都按未知处理，也不写文件
+ */
+object CompatCache {
+    private const val TAG = "CompatCache"
+
+    private const val FILE_NAME = "compat_cache.properties"
+
+    // 文件格式变化时递增
+    private const val FORMAT_VERSION = 1
+
+    private const val KEY_FINGERPRINT = "fingerprint"
+
+    // 成员映射（MemberResolver）的 key 前缀，值为解析出的混淆名，空字符串表示解析失败
+    private const val MEMBER_PREFIX = "member:"
+
+    // 同特征方法数量（MemberResolver）的 key 前缀，版本指纹变化时保留
+    private const val SHAPE_PREFIX = "shape:"
+
+    private const val PRESENT = "1"
+    private const val MISSING = "0"
+
+    // 尚未确认缺失的未找到记录，值为 "?<次数>"
+    private const val MISS_PREFIX = "?"
+
+    /** 连续多少次启动未找到后记为缺失 */
+    const val MISS_THRESHOLD = 3
+
+    /**
+     * 探测结果
+     */
+    enum class State {
+        /** 本版本尚未探测过，或未找到的次数还不足以确认缺失 */
+        UNKNOWN,
+
+        /** 存在 */
+        PRESENT,
+
+        /** 不存在 */
+        MISSING
+    }
+
+    // 目标 key -> PRESENT / MISSING / 未找到次数
+    private val entries = ConcurrentHashMap<String, String>()
+
+    // 本次启动已经计过未找到的目标，同一次启动重复查找只计一次
+    private val missedThisLaunch: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+    @Volatile
+    private var file: File? = null
+
+    @Volatile
+    private var fingerprint: String? = null
+
+    /**
+     * 读取当前支付宝版本的缓存
+     *
+     * 版本指纹不一致时丢弃旧结果，重新探测
+     *
+     * @param appInfo lpparam.appInfo
+     */
+    @JvmStatic
+    @Synchronized
+    fun load(appInfo: ApplicationInfo) {
+        if (fingerprint != null) {
+            return
+        }
+
+        StartupProfiler.measure(StartupProfiler.Category.LOOKUP, "compat cache") {
+            val apk = File(appInfo.sourceDir ?: "")
+            val current = "v$FORMAT_VERSION|${BuildConfig.VERSION_CODE}|${BuildConfig.VERSION_NAME}|" +
+                    "${apk.absolutePath}|${apk.length()}|${apk.lastModified()}"
+            val cacheFile = File(appInfo.dataDir, "files/hoho_module/$FILE_NAME")
+
+            val stored = Properties()
+            try {
+                if (cacheFile.exists()) {
+                    IoTrace.trace("read", cacheFile) {
+                        FileInputStream(cacheFile).use { stored.load(it) }
+                    }
+                }
+            } catch (e: Exception) {
+                ModuleLog.w(TAG, "读取兼容性缓存失败: ${e.message}")
+                stored.clear()
+            }
+
+            if (stored.getProperty(KEY_FINGERPRINT) == current) {
+                for (name in stored.stringPropertyNames()) {
+                    if (name != KEY_FINGERPRINT) {
+                        entries[name] = stored.getProperty(name)
+                    }
+                }
+                ModuleLog.i(TAG, "✓ 已加载 ${entries.size} 条兼容性记录")
+            } else if (stored.isNotEmpty()) {
+                for (name in stored.stringPropertyNames()) {
+                    if (name.startsWith(SHAPE_PREFIX)) {
+                        entries[name] = stored.getProperty(name)
+                    }
+                }
+                ModuleLog.i(TAG, "支付宝或模块已更新，重新探测 Hook 目标")
+            }
+
+            file = cacheFile
+            fingerprint = current
+        }
+    }
+
+    /**
+     * 类的探测结果
+     */
+    @JvmStatic
+    fun classState(className: String): State = stateOf(className)
+
+    /**
+     * 方法的探测结果
+     *
+     * @param parameterTypes 参数类型（Class 或类名字符串）
+     */
+    @JvmStatic
+    fun methodState(clazz: Class<*>, methodName: String, vararg parameterTypes: Any): State {
+        return stateOf(methodKey(clazz, methodName, parameterTypes, parameterTypes.size))
+    }
+
+    /**
+     * 查找类，已知不存在时直接返回 null
+     *
+     * @return 类，不存在时返回 null
+     */
+    @JvmStatic
+    fun findClass(className: String, classLoader: ClassLoader): Class<*>? {
+        if (stateOf(className) == State.MISSING) {
+            return null
+        }
+        return try {
+            XposedHelpers.findClass(className, classLoader).also { record(className, true) }
+        } catch (e: XposedHelpers.ClassNotFoundError) {
+            record(className, false)
+            ModuleLog.w(TAG, "✗ 类不存在: $className")
+            null
+        }
+    }
+
+    /**
+     * 查找方法并安装 Hook，已知不存在时直接返回 null
+     *
+     * @param parameterTypesAndCallback 与 XposedHelpers.findAndHookMethod 相同，最后一个参数为回调
+     * @return Unhook 句柄，方法不存在时返回 null
+     */
+    @JvmStatic
+    fun findAndHookMethod(
+        clazz: Class<*>,
+        methodName: String,
+        vararg parameterTypesAndCallback: Any
+    ): XC_MethodHook.Unhook? {
+        val key = methodKey(clazz, methodName, parameterTypesAndCallback, parameterTypesAndCallback.size - 1)
+        if (stateOf(key) == State.MISSING) {
+            return null
+        }
+        return try {
+            XposedHelpers.findAndHookMethod(clazz, methodName, *parameterTypesAndCallback)
+                .also { record(key, true) }
+        } catch (e: NoSuchMethodError) {
+            record(key, false)
+            ModuleLog.w(TAG, "✗ 方法不存在: $key")
+            null
+        } catch (e: XposedHelpers.ClassNotFoundError) {
+            // 参数类型不存在，方法同样无法匹配
+            record(key, false)
+            ModuleLog.w(TAG, "✗ 方法参数类型不存在: $key")
+            null
+        }
+    }
+
+    /**
+     * 记录探测结果
+     *
+     * 未找到时累加次数，达到 [MISS_THRESHOLD] 后才记为缺失；结果变化时在后台写入文件
+     *
+     * @param key 类名，或 [methodKey] 生成的方法 key
+     */
+    @JvmStatic
+    fun record(key: String, present: Boolean) {
+        if (present) {
+            put(key, PRESENT)
+            return
+        }
+        if (!missedThisLaunch.add(key)) {
+            return
+        }
+        val previous = entries[key]
+        val misses = if (previous != null && previous.startsWith(MISS_PREFIX)) {
+            previous.substring(MISS_PREFIX.length).toIntOrNull() ?: 0
+        } else {
+            0
+        }
+        val count = misses + 1
+        put(key, if (count >= MISS_THRESHOLD) MISSING else MISS_PREFIX + count)
+    }
+
+    /**
+     * 已缓存的混淆成员名
+     *
+     * @return 成员名；空字符串表示本版本解析失败；null 表示尚未解析
+     */
+    @JvmStatic
+    fun memberName(key: String): String? = entries[MEMBER_PREFIX + key]
+
+    /**
+     * 记录混淆成员的解析结果
+     *
+     * @param name 成员名，解析失败时为空字符串
+     */
+    @JvmStatic
+    fun recordMemberName(key: String, name: String) {
+        put(MEMBER_PREFIX + key, name)
+    }
+
+    /**
+     * 首次按已知名称确认混淆成员时，同特征方法的数量
+     *
+     * @return 数量，从未记录时返回 null
+     */
+    @JvmStatic
+    fun shapeCount(key: String): Int? = entries[SHAPE_PREFIX + key]?.toIntOrNull()
+
+    /**
+     * 记录同特征方法的数量（跨版本保留）
+     */
+    @JvmStatic
+    fun recordShapeCount(key: String, count: Int) {
+        put(SHAPE_PREFIX + key, count.toString())
+    }
+
+    private fun put(key: String, value: String) {
+        if (fingerprint == null) {
+            return
+        }
+        if (entries.put(key, value) != value) {
+            OperationExecutor.submit(OperationExecutor.KEY_COMPAT_CACHE) { save() }
+        }
+    }
+
+    /**
+     * 生成方法 key：类名#方法名(参数类型)
+     *
+     * 参数类型可以是 Class 或类名字符串，只取前 [typeCount] 个（回调不参与 key）
+     */
+    @JvmStatic
+    fun methodKey(clazz: Class<*>, methodName: String, parameterTypes: Array<out Any>, typeCount: Int): String {
+        val builder = StringBuilder()
+            .append(clazz.name).append('#')
+            .append(methodName).append('(')
+        for (i in 0 until typeCount) {
+            if (i > 0) {
+                builder.append(',')
+            }
+            val type = parameterTypes[i]
+            builder.append(if (type is Class<*>) type.name else type.toString())
+        }
+        return builder.append(')').toString()
+    }
+
+    private fun stateOf(key: String): State {
+        return when (entries[key]) {
+            PRESENT -> State.PRESENT
+            MISSING -> State.MISSING
+            else -> State.UNKNOWN
+        }
+    }
+
+    private fun save() {
+        val target = file ?: return
+        val properties = Properties()
+        properties.setProperty(KEY_FINGERPRINT, fingerprint ?: return)
+        for ((key, value) in entries) {
+            properties.setProperty(key, value)
+        }
+
+        try {
+            target.parentFile?.mkdirs()
+            val temp = File(target.parentFile, "$FILE_NAME.tmp")
+            IoTrace.trace("write", temp) {
+                FileOutputStream(temp).use { properties.store(it, "HOHO hook compatibility cache") }
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete()
+            }
+        } catch (e: Exception) {
+            ModuleLog.w(TAG, "写入兼容性缓存失败: ${e.message}")
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package im.hoho.alipayInstallB.hook
+
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 共享的文件复制引擎
+ *
+ * 皮肤、主题在外部存储（FUSE）和支付宝数据目录之间的复制都通过这里：
+ * 1. 先串行遍历源目录、创建全部目标目录，再复制文件
+ * 2. 文件之间互不依赖，按大小从大到小分给最多 [PARALLELISM] 个线程（调用线程也参与），
+ *    单个大文件不会拖到最后才开始
+ * 3. 单个文件用 FileChannel.transferTo 复制，不经过 Java 堆上的缓冲区
+ * 4. 保留源文件的修改时间
+ * 5. 单个文件失败不会中断其他文件，失败的目标文件会被删除，结果汇总在 [Result] 中
+ *
+ * 模块 App 的仓库类也会调用，这里不输出日志，由调用方按各自的方式记录 [Result]
+ */
+object CopyEngine {
+
+    /** 最大并行复制数（包括调用线程） */
+    @JvmField
+    val PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+
+    // 文件数少于此值时不使用工作线程
+    private const val PARALLEL_MIN_FILES = 4
+
+    // transferTo 单次最多传输的字节数，部分内核对单次 sendfile 有上限
+    private const val TRANSFER_CHUNK = 8L * 1024 * 1024
+
+    private val workers: ExecutorService by lazy {
+        val index = AtomicInteger()
+        Executors.newFixedThreadPool(PARALLELISM - 1) { runnable ->
+            Thread({
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND)
+                runnable.run()
+            }, "HohoCopy-${index.incrementAndGet()}").apply {
+                isDaemon = true
+            }
+        }
+    }
+
+    /**
+     * 复制结果
+     *
+     * @param files 成功复制的文件数
+     * @param bytes 成功复制的字节数
+     * @param failures 失败的源文件及原因
+     */
+    class Result(
+        val files: Int,
+        val bytes: Long,
+        val failures: List<Failure>
+    ) {
+        val isSuccess: Boolean
+            get() = failures.isEmpty()
+
+        /**
+         * 有文件复制失败时抛出第一个失败原因
+         */
+        @Throws(IOException::class)
+        fun throwIfFailed() {
+            val first = failures.firstOrNull() ?: return
+            throw IOException("${failures.size} 个文件复制失败，首个: ${first.source.path}: ${first.error.message}", first.error)
+        }
+
+        override fun toString(): String = "$files 个文件 / $bytes 字节，失败 ${failures.size} 个"
+    }
+
+    /**
+     * 单个文件的失败
+     */
+    class Failure(val source: File, val error: Exception)
+
+    /**
+     * 待复制的文件，长度在遍历时读取一次，排序时不再重复 stat
+     */
+    private class Task(val source: File, val destination: File, val length: Long)
+
+    /**
+     * 复制文件或目录
+     *
+     * 源为目录时把其中的全部内容（递归）复制到 [destination] 中，已存在的同名文件会被覆盖；
+     * 源为文件时复制到 [destination]
+     *
+     * @param source 源文件或目录，不存在时返回空结果
+     * @param destination 目标文件或目录
+     */
+    @JvmStatic
+    fun copy(source: File, destination: File): Result {
+        if (!source.exists()) {
+            return Result(0, 0, emptyList())
+        }
+
+        val tasks = ArrayList<Task>()
+        val failures = Collections.synchronizedList(ArrayList<Failure>())
+        collect(source, destination, tasks, failures)
+        return run(tasks, failures)
+    }
+
+    /**
+     * 复制一组互不相关的文件
+     *
+     * 用于增量同步等已经确定了变化文件的场景，目标文件的父目录不存在时会被创建
+     *
+     * @param files 源文件 -> 目标文件
+     */
+    @JvmStatic
+    fun copyFiles(files: Map<File, File>): Result {
+        val tasks = ArrayList<Task>(files.size)
+        val failures = Collections.synchronizedList(ArrayList<Failure>())
+        for ((source, destination) in files) {
+            collect(source, destination, tasks, failures)
+        }
+        return run(tasks, failures)
+    }
+
+    /**
+     * 按大小从大到小并行复制
+     */
+    private fun run(tasks: MutableList<Task>, failures: MutableList<Failure>): Result {
+        // 大文件优先开始，避免最后只剩一个线程在复制
+        tasks.sortByDescending { it.length }
+
+        val files = AtomicInteger()
+        val bytes = AtomicLong()
+        val next = AtomicInteger()
+        val drain = Runnable {
+            while (true) {
+                val index = next.getAndIncrement()
+                if (index >= tasks.size) {
+                    return@Runnable
+                }
+                val task = tasks[index]
+                try {
+                    bytes.addAndGet(copyFile(task.source, task.destination))
+                    files.incrementAndGet()
+                } catch (e: Exception) {
+                    task.destination.delete()
+                    failures.add(Failure(task.source, e))
+                }
+            }
+        }
+
+        val helpers = if (tasks.size < PARALLEL_MIN_FILES) 0 else minOf(PARALLELISM - 1, tasks.size - 1)
+        if (helpers == 0) {
+            drain.run()
+        } else {
+            val done = CountDownLatch(helpers)
+            repeat(helpers) {
+                workers.execute {
+                    try {
+                        drain.run()
+                    } finally {
+                        done.countDown()
+                    }
+                }
+            }
+            drain.run()
+            done.await()
+        }
+
+        if (failures.isNotEmpty()) {
+            HookMetrics.add(HookMetrics.Counter.COPY_FAILURES, failures.size.toLong())
+        }
+        return Result(files.get(), bytes.get(), ArrayList(failures))
+    }
+
+    /**
+     * 遍历源目录，创建目标目录并收集待复制的文件
+     */
+    private fun collect(
+        source: File,
+        destination: File,
+        tasks: MutableList<Task>,
+        failures: MutableList<Failure>
+    ) {
+        if (!source.isDirectory) {
+            destination.parentFile?.let { if (!it.exists()) it.mkdirs() }
+            tasks.add(Task(source, destination, source.length()))
+            return
+        }
+
+        if (!destination.exists() && !destination.mkdirs()) {
+            failures.add(Failure(source, IOException("无法创建目录 ${destination.path}")))
+            return
+        }
+        val children = IoTrace.trace("list", source) { source.listFiles() }
+        if (children == null) {
+            failures.add(Failure(source, IOException("无法读取目录")))
+            return
+        }
+        for (child in children) {
+            collect(child, File(destination, child.name), tasks, failures)
+        }
+    }
+
+    /**
+     * 复制单个文件
+     *
+     * @return 复制的字节数
+     */
+    private fun copyFile(source: File, destination: File): Long = IoTrace.trace("copy", source) {
+        val copied = FileInputStream(source).use { input ->
+            FileOutputStream(destination).use { output ->
+                val from = input.channel
+                val to = output.channel
+                val size = from.size()
+                var position = 0L
+                while (position < size) {
+                    val transferred = from.transferTo(position, minOf(TRANSFER_CHUNK, size - position), to)
+                    if (transferred <= 0) {
+                        // 文件在复制过程中被截断
+                        break
+                    }
+                    position += transferred
+                }
+                position
+            }
+        }
+        destination.setLastModified(source.lastModified())
+        HookMetrics.increment(HookMetrics.Counter.FILES_COPIED)
+        HookMetrics.add(HookMetrics.Counter.BYTES_COPIED, copied)
+        copied
+    }
+}
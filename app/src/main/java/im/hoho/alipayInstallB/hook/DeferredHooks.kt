@@ -0,0 +1,309 @@
+package im.hoho.alipayInstallB.hook
+
+import android.os.Build
+import android.os.Environment
+import android.os.Handler
+import android.os.Looper
+import android.os.Process
+import android.os.SystemClock
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XposedBridge
+import de.robv.android.xposed.XposedHelpers
+import im.hoho.alipayInstallB.diagnostics.StartupProfiler
+import java.io.File
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 延迟安装的 Hook
+ *
+ * 默认在启动时立即加载 MergeMemberGradeEnum、UserLoginResult、ConfigUtilBiz 等类并安装 Hook；
+ * 开启延迟安装后改为监听 ClassLoader.loadClass，目标类第一次被支付宝加载时才安装对应的 Hook
+ * 1. 注册时目标类已经加载的，立即安装
+ * 2. 所有等待中的类都安装完成后，卸载 loadClass 监听，之后类加载不再有额外开销
+ * 3. ART 解析同一 dex 中的类时可能不经过 Java 层 loadClass，监听 [WATCH_DEADLINE_MS] 后
+ *    仍未安装的类在主线程中立即安装，并卸载 loadClass 监听
+ * 4. 延迟安装需要在 SD 卡皮肤目录中创建 lazy_hooks 文件夹开启；该文件夹在后台线程中检查，
+ *    并同步到支付宝内部目录中的标记文件，下次启动生效，启动路径上不访问外部存储
+ * 5. 无法安装 loadClass 监听时退回立即安装
+ * 6. [CompatCache] 记录为不存在的类不再等待或查找，避免 loadClass 监听一直无法卸载
+ * 7. 只接受支付宝 ClassLoader 返回的类，其他 ClassLoader 加载的同名类不会触发安装
+ */
+object DeferredHooks {
+    // 静态初始化的开始时间，第一次使用本类时触发，初始化结束时记录耗时
+    private val clinitStart = StartupProfiler.now()
+
+    private const val TAG = "DeferredHooks"
+
+    // SD 卡皮肤目录中存在此文件夹时开启延迟安装（用于对比冷启动耗时）
+    private const val LAZY_FLAG = "lazy_hooks"
+
+    // 支付宝内部目录中的标记文件，由 [syncLazyFlag] 维护
+    private const val LAZY_MARKER = "files/hoho_module/lazy_hooks"
+
+    /** 监听 loadClass 的最长时间，超时后立即安装剩余的 Hook */
+    const val WATCH_DEADLINE_MS = 10_000L
+
+    /**
+     * 目标类加载后执行的安装动作
+     */
+    fun interface Installer {
+        fun install(clazz: Class<*>)
+    }
+
+    // 类名 -> 等待执行的安装动作
+    private val pending = ConcurrentHashMap<String, Installer>()
+
+    // loadClass 监听的 Unhook 句柄
+    private val loadClassHooks = mutableListOf<XC_MethodHook.Unhook>()
+
+    @Volatile
+    private var watching = false
+
+    // 监听超时后立即安装时使用
+    @Volatile
+    private var watchedClassLoader: ClassLoader? = null
+
+    private val findLoadedClassMethod: Method? by lazy {
+        try {
+            ClassLoader::class.java.getDeclaredMethod("findLoadedClass", String::class.java)
+                .apply { isAccessible = true }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /**
+     * 是否使用延迟安装
+     *
+     * 只检查支付宝内部目录中的标记文件，不访问外部存储
+     *
+     * @param dataDir lpparam.appInfo.dataDir
+     */
+    @JvmStatic
+    fun isLazyEnabled(dataDir: String): Boolean {
+        return File(dataDir, LAZY_MARKER).exists()
+    }
+
+    /**
+     * 在后台线程中把 SD 卡上的 lazy_hooks 文件夹同步到内部标记文件，下次启动生效
+     *
+     * @param dataDir lpparam.appInfo.dataDir
+     */
+    @JvmStatic
+    fun syncLazyFlag(dataDir: String) {
+        OperationExecutor.submit(OperationExecutor.KEY_DEFERRED_HOOKS) {
+            val requested = File(
+                "${Environment.getExternalStorageDirectory()}/Android/media/com.eg.android.AlipayGphone/000_HOHO_ALIPAY_SKIN",
+                LAZY_FLAG
+            ).exists()
+            val marker = File(dataDir, LAZY_MARKER)
+            if (requested == marker.exists()) {
+                return@submit
+            }
+            if (requested) {
+                marker.parentFile?.mkdirs()
+                marker.createNewFile()
+            } else {
+                marker.delete()
+            }
+            XposedBridge.log("[$TAG] 延迟安装已${if (requested) "开启" else "关闭"}，下次启动生效")
+        }
+    }
+
+    /**
+     * 目标类加载时安装 Hook
+     *
+     * @param classLoader 支付宝的 ClassLoader，用于检查类是否已经加载以及回退时立即加载
+     * @param className 目标类名
+     * @param installer 安装动作，参数是已经加载的目标类
+     */
+    @JvmStatic
+    fun whenLoaded(classLoader: ClassLoader, className: String, installer: Installer) {
+        if (skipMissing(className)) {
+            return
+        }
+        val loaded = findLoadedClass(classLoader, className)
+        if (loaded != null) {
+            runInstaller(className, loaded, installer)
+            return
+        }
+
+        pending[className] = installer
+        if (!startWatching(classLoader)) {
+            // 无法监听类加载，退回立即安装
+            pending.remove(className)
+            installEagerly(classLoader, className, installer)
+        }
+    }
+
+    /**
+     * 启动时立即加载目标类并安装 Hook（旧行为）
+     */
+    @JvmStatic
+    fun installEagerly(classLoader: ClassLoader, className: String, installer: Installer) {
+        if (skipMissing(className)) {
+            return
+        }
+        val lookupStart = StartupProfiler.now()
+        val clazz = CompatCache.findClass(className, classLoader)
+        if (clazz == null) {
+            XposedBridge.log("[$TAG] $className class not found")
+            return
+        }
+        StartupProfiler.end(StartupProfiler.Category.LOOKUP, "findClass ${simpleName(className)}", lookupStart)
+        runInstaller(className, clazz, installer)
+    }
+
+    /**
+     * 监听类加载
+     *
+     * Hook 基类的 loadClass(String, boolean)；如果支付宝的 ClassLoader 自己重写了该方法，一并 Hook
+     *
+     * @return 监听是否可用
+     */
+    @Synchronized
+    private fun startWatching(classLoader: ClassLoader): Boolean {
+        if (watching) {
+            return true
+        }
+
+        val hookStart = StartupProfiler.now()
+        return try {
+            val callback = object : XC_MethodHook() {
+                override fun afterHookedMethod(param: MethodHookParam) {
+                    if (pending.isEmpty()) {
+                        return
+                    }
+                    val start = StartupProfiler.now()
+                    // 基类的 loadClass 对进程中所有 ClassLoader 生效，插件、bundle 的 ClassLoader
+                    // 可能加载同名类；只接受支付宝 ClassLoader 自己返回的类，与立即安装时查找到的类一致
+                    val clazz = if (param.thisObject === watchedClassLoader) param.result as? Class<*> else null
+                    val installer = if (clazz != null) pending.remove(clazz.name) else null
+                    StartupProfiler.recordWatcher(start)
+                    if (clazz == null || installer == null) {
+                        return
+                    }
+                    runInstaller(clazz.name, clazz, installer)
+                    if (pending.isEmpty()) {
+                        stopWatching()
+                    }
+                }
+            }
+
+            loadClassHooks.add(
+                XposedHelpers.findAndHookMethod(
+                    ClassLoader::class.java,
+                    "loadClass",
+                    String::class.java,
+                    Boolean::class.javaPrimitiveType,
+                    callback
+                )
+            )
+
+            var current: Class<*>? = classLoader.javaClass
+            while (current != null && current != ClassLoader::class.java) {
+                val override = try {
+                    current.getDeclaredMethod("loadClass", String::class.java, Boolean::class.javaPrimitiveType)
+                } catch (e: NoSuchMethodException) {
+                    null
+                }
+                if (override != null) {
+                    loadClassHooks.add(XposedBridge.hookMethod(override, callback))
+                    break
+                }
+                current = current.superclass
+            }
+
+            watching = true
+            watchedClassLoader = classLoader
+            Handler(Looper.getMainLooper()).postDelayed({ installPending() }, WATCH_DEADLINE_MS)
+            StartupProfiler.end(StartupProfiler.Category.HOOK, "ClassLoader.loadClass", hookStart)
+            true
+        } catch (t: Throwable) {
+            XposedBridge.log("[$TAG]✗ 无法监听类加载，改为立即安装: ${t.message}")
+            stopWatching()
+            false
+        }
+    }
+
+    /**
+     * 监听超时：立即安装仍在等待的 Hook，并卸载 loadClass 监听
+     */
+    private fun installPending() {
+        val classLoader = watchedClassLoader ?: return
+        if (pending.isNotEmpty()) {
+            XposedBridge.log("[$TAG] ${WATCH_DEADLINE_MS}ms 内未观察到 ${pending.keys} 加载，改为立即安装")
+        }
+        for (className in pending.keys.toList()) {
+            val installer = pending.remove(className) ?: continue
+            installEagerly(classLoader, className, installer)
+        }
+        stopWatching()
+    }
+
+    @Synchronized
+    private fun stopWatching() {
+        for (hook in loadClassHooks) {
+            hook.unhook()
+        }
+        loadClassHooks.clear()
+        watching = false
+        watchedClassLoader = null
+    }
+
+    private fun findLoadedClass(classLoader: ClassLoader, className: String): Class<*>? {
+        val method = findLoadedClassMethod ?: return null
+        return StartupProfiler.measure(StartupProfiler.Category.LOOKUP, "findLoadedClass ${simpleName(className)}") {
+            try {
+                method.invoke(classLoader, className) as? Class<*>
+            } catch (e: Exception) {
+                null
+            }
+        }
+    }
+
+    private fun skipMissing(className: String): Boolean {
+        if (CompatCache.classState(className) != CompatCache.State.MISSING) {
+            return false
+        }
+        XposedBridge.log("[$TAG] $className 在当前支付宝版本中不存在，跳过")
+        return true
+    }
+
+    private fun runInstaller(className: String, clazz: Class<*>, installer: Installer) {
+        CompatCache.record(className, true)
+        val start = SystemClock.elapsedRealtime()
+        val spanStart = StartupProfiler.beginSpan()
+        try {
+            installer.install(clazz)
+        } catch (t: Throwable) {
+            XposedBridge.log("[$TAG]✗ $className Hook安装失败: ${t.message}")
+            return
+        } finally {
+            StartupProfiler.end(StartupProfiler.Category.INSTALL, simpleName(className), spanStart)
+        }
+        XposedBridge.log(
+            "[$TAG]✓ $className Hook已安装，耗时 ${SystemClock.elapsedRealtime() - start}ms，" +
+                    "进程启动后 ${sinceProcessStart()}ms"
+        )
+    }
+
+    private fun simpleName(className: String): String = className.substringAfterLast('.')
+
+    /**
+     * 距离进程启动的时间（API 24 以下返回 -1）
+     */
+    @JvmStatic
+    fun sinceProcessStart(): Long {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return -1
+        }
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()
+    }
+
+    init {
+        // 放在最后，覆盖上面全部属性的初始化
+        StartupProfiler.end(StartupProfiler.Category.CLINIT, "DeferredHooks", clinitStart)
+    }
+}
@@ -0,0 +1,40 @@
+package im.hoho.alipayInstallB.hook
+
+/**
+ * 按进程决定是否安装 Hook
+ *
+ * 支付宝会启动多个进程（push、tools、lite 等），付款码、会员等级和皮肤中心只在主进程中出现：
+ * 1. 主进程安装全部 Hook
+ * 2. 其他进程不查找任何类、不安装任何 Hook，也不触发模块的静态初始化
+ *
+ * 目前没有子进程只需要部分 Hook，所以这里只区分主进程和其他进程
+ */
+object HookPlan {
+    const val ALIPAY_PACKAGE = "com.eg.android.AlipayGphone"
+
+    @Volatile
+    private var mainProcess = true
+
+    /**
+     * 根据进程名判断是否安装 Hook，并记录为当前进程的结果
+     *
+     * 主进程名与包名相同；带 ":" 后缀的都是子进程
+     *
+     * @param processName lpparam.processName，为空时按主进程处理
+     * @return 是否安装 Hook
+     */
+    @JvmStatic
+    fun select(processName: String?): Boolean {
+        val main = processName.isNullOrEmpty() || processName == ALIPAY_PACKAGE
+        mainProcess = main
+        return main
+    }
+
+    /**
+     * 当前进程是否安装 Hook
+     *
+     * 尚未调用 [select] 时（例如由其他入口加载）按主进程处理
+     */
+    @JvmStatic
+    fun installsHooks(): Boolean = mainProcess
+}
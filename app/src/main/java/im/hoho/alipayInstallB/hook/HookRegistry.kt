@@ -0,0 +1,247 @@
+package im.hoho.alipayInstallB.hook
+
+import de.robv.android.xposed.XC_MethodHook
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Hook 注册表
+ *
+ * 1. 保存每个 Hook 的 [XC_MethodHook.Unhook] 句柄，卸载时真正移除回调
+ * 2. 同一功能对同一方法最多安装一次，重复注册直接跳过
+ * 3. 功能开关只修改 [Feature.enabled]，回调（[FeatureHook]）在执行时检查，
+ *    开关切换不会再次进入 Xposed 的 Hook 安装流程
+ * 4. 类和方法的查找经过 [CompatCache]，当前支付宝版本中已知不存在的目标直接跳过
+ */
+object HookRegistry {
+    private const val TAG = "HookRegistry"
+
+    /**
+     * 功能开关
+     *
+     * @param name 功能名称，作为注册表 key 的前缀
+     */
+    class Feature(val name: String) {
+        @Volatile
+        var enabled = false
+    }
+
+    /** 皮肤模块（SkinHook） */
+    @JvmField
+    val SKIN = Feature("skin")
+
+    /** 主题模块（ThemeHookV2） */
+    @JvmField
+    val THEME = Feature("theme")
+
+    /**
+     * 受功能开关控制的 Hook 回调
+     *
+     * 功能关闭时回调直接返回，原方法照常执行
+     * 子类重写 [before] / [after] 而不是 beforeHookedMethod / afterHookedMethod
+     *
+     * @param metric 不为 null 时把子类重写的回调耗时记录到 [HookMetrics]
+     * @param breaker 不为 null 时回调抛出的异常交给熔断器处理而不再抛给 Xposed，
+     *                熔断期间回调直接返回
+     */
+    abstract class FeatureHook(
+        private val feature: Feature,
+        private val metric: HookMetrics.HookId? = null,
+        private val breaker: CircuitBreaker? = null
+    ) : XC_MethodHook() {
+        // 只执行和统计子类实际重写的回调，避免空回调稀释耗时分布
+        private val hasBefore = overrides("before")
+        private val hasAfter = overrides("after")
+
+        final override fun beforeHookedMethod(param: MethodHookParam) {
+            if (hasBefore) {
+                dispatch(param, true)
+            }
+        }
+
+        final override fun afterHookedMethod(param: MethodHookParam) {
+            if (hasAfter) {
+                dispatch(param, false)
+            }
+        }
+
+        private fun dispatch(param: MethodHookParam, isBefore: Boolean) {
+            if (!feature.enabled) {
+                return
+            }
+            if (breaker != null && !breaker.allow()) {
+                return
+            }
+            val start = if (metric != null) HookMetrics.now() else 0L
+            try {
+                if (isBefore) before(param) else after(param)
+                breaker?.onSuccess()
+            } catch (t: Throwable) {
+                HookMetrics.increment(HookMetrics.Counter.HOOK_FAILURES)
+                if (breaker == null) {
+                    throw t
+                }
+                breaker.onFailure(t)
+            } finally {
+                if (metric != null) {
+                    HookMetrics.record(metric, start)
+                }
+            }
+        }
+
+        private fun overrides(name: String): Boolean {
+            return try {
+                javaClass.getDeclaredMethod(name, MethodHookParam::class.java)
+                true
+            } catch (e: NoSuchMethodException) {
+                false
+            }
+        }
+
+        protected open fun before(param: MethodHookParam) {}
+
+        protected open fun after(param: MethodHookParam) {}
+    }
+
+    // 功能名/类名#方法名(参数类型) -> Unhook 句柄
+    private val hooks = ConcurrentHashMap<String, XC_MethodHook.Unhook>()
+
+    /**
+     * 注册方法 Hook（按类名）
+     *
+     * @param parameterTypesAndCallback 与 XposedHelpers.findAndHookMethod 相同，最后一个参数为回调
+     * @return true=本次新安装，false=该方法已经安装过，或类、方法在当前支付宝版本中不存在
+     */
+    @JvmStatic
+    fun hookMethod(
+        feature: Feature,
+        className: String,
+        classLoader: ClassLoader,
+        methodName: String,
+        vararg parameterTypesAndCallback: Any
+    ): Boolean {
+        val clazz = CompatCache.findClass(className, classLoader) ?: return false
+        return hookMethod(feature, clazz, methodName, *parameterTypesAndCallback)
+    }
+
+    /**
+     * 注册方法 Hook（按 Class）
+     *
+     * 方法不存在时记录到 [CompatCache] 并返回 false，之后的冷启动不再查找
+     *
+     * @return true=本次新安装，false=该方法已经安装过，或在当前支付宝版本中不存在
+     */
+    @JvmStatic
+    @Synchronized
+    fun hookMethod(
+        feature: Feature,
+        clazz: Class<*>,
+        methodName: String,
+        vararg parameterTypesAndCallback: Any
+    ): Boolean {
+        val key = keyOf(feature, clazz, methodName, parameterTypesAndCallback, parameterTypesAndCallback.size - 1)
+        if (hooks.containsKey(key)) {
+            return false
+        }
+
+        val unhook = CompatCache.findAndHookMethod(clazz, methodName, *parameterTypesAndCallback) ?: return false
+        hooks[key] = unhook
+        return true
+    }
+
+    /**
+     * 注册方法 Hook（已解析的 Method）
+     *
+     * 用于由 [MemberResolver] 按特征解析出的混淆方法
+     *
+     * @return true=本次新安装，false=该方法已经安装过
+     */
+    @JvmStatic
+    @Synchronized
+    fun hookMethod(feature: Feature, method: Method, callback: XC_MethodHook): Boolean {
+        val parameterTypes = method.parameterTypes
+        val key = keyOf(feature, method.declaringClass, method.name, parameterTypes, parameterTypes.size)
+        if (hooks.containsKey(key)) {
+            return false
+        }
+
+        hooks[key] = XposedBridge.hookMethod(method, callback)
+        return true
+    }
+
+    /**
+     * 卸载单个方法 Hook
+     *
+     * 用于只需要执行一次的 Hook（例如拿到 Context 后不再需要的 Activity.onCreate）
+     *
+     * @param parameterTypes 与注册时相同的参数类型（不含回调）
+     * @return true=已卸载，false=该方法未安装
+     */
+    @JvmStatic
+    @Synchronized
+    fun unhookMethod(
+        feature: Feature,
+        clazz: Class<*>,
+        methodName: String,
+        vararg parameterTypes: Any
+    ): Boolean {
+        val key = keyOf(feature, clazz, methodName, parameterTypes, parameterTypes.size)
+        val unhook = hooks.remove(key) ?: return false
+        unhook.unhook()
+        return true
+    }
+
+    /**
+     * 指定功能是否已有 Hook 安装
+     */
+    @JvmStatic
+    fun isInstalled(feature: Feature): Boolean {
+        val prefix = "${feature.name}/"
+        return hooks.keys.any { it.startsWith(prefix) }
+    }
+
+    /**
+     * 卸载指定功能的所有 Hook
+     *
+     * 同时关闭功能开关；之后再次注册会重新安装
+     *
+     * @return 卸载的 Hook 数量
+     */
+    @JvmStatic
+    @Synchronized
+    fun unhookAll(feature: Feature): Int {
+        feature.enabled = false
+
+        val prefix = "${feature.name}/"
+        var count = 0
+        val iterator = hooks.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key.startsWith(prefix)) {
+                try {
+                    entry.value.unhook()
+                    count++
+                } catch (t: Throwable) {
+                    XposedBridge.log("[$TAG]✗ 卸载 ${entry.key} 失败: ${t.message}")
+                }
+                iterator.remove()
+            }
+        }
+        return count
+    }
+
+    /**
+     * 生成注册表 key：功能名/类名#方法名(参数类型)
+     */
+    private fun keyOf(
+        feature: Feature,
+        clazz: Class<*>,
+        methodName: String,
+        parameterTypes: Array<out Any>,
+        typeCount: Int
+    ): String {
+        return feature.name + "/" + CompatCache.methodKey(clazz, methodName, parameterTypes, typeCount)
+    }
+}
@@ -0,0 +1,252 @@
+package im.hoho.alipayInstallB.hook
+
+import im.hoho.alipayInstallB.diagnostics.StartupProfiler
+import java.io.File
+import java.lang.reflect.Field
+import java.lang.reflect.Member
+import java.lang.reflect.Method
+import java.lang.reflect.Modifier
+import java.lang.reflect.ParameterizedType
+
+/**
+ * 按结构特征解析支付宝的混淆成员
+ *
+ * 支付宝每个版本的混淆名（SCInnerManager.K / y / q / m / g、SCConfigUtil.m / l）都可能变化，
+ * 这里按修饰符、参数类型、返回类型、字段泛型等特征匹配：
+ * 1. 扫描类的全部声明成员，特征唯一匹配时直接采用（不论名称）
+ * 2. 同一特征有多个方法时（例如 K 的实例 void()、l 的静态 boolean()），只有已知名称在候选中，
+ *    且同特征方法的数量与首次按名称确认时记录的数量（[CompatCache.shapeCount]）一致才采用；
+ *    数量变化说明类结构已变，名称可能指向了别的方法，放弃（对应 Hook 跳过）
+ * 3. 多个字段符合声明类型时，只采用泛型参数确实包含目标类型的那一个，没有泛型签名可区分时放弃
+ * 4. 解析结果（包括失败）写入 [CompatCache]，与支付宝版本绑定，之后的冷启动只按缓存的名称查找；
+ *    同特征方法数量跨版本保留
+ */
+object MemberResolver {
+    private const val TAG = "MemberResolver"
+
+    /**
+     * 方法特征
+     *
+     * @param key 逻辑名称，作为缓存 key 的一部分
+     * @param hint 已知的混淆名，同特征的方法有多个时用于选择
+     * @param isStatic 是否为静态方法
+     * @param returnType 返回类型，为 null 时表示返回声明类本身（单例访问方法）
+     * @param parameterTypes 参数类型（完全一致）
+     */
+    class MethodSignature(
+        val key: String,
+        val hint: String,
+        val isStatic: Boolean,
+        val returnType: Class<*>?,
+        vararg val parameterTypes: Class<*>
+    )
+
+    /**
+     * 字段特征（实例字段）
+     *
+     * @param key 逻辑名称，作为缓存 key 的一部分
+     * @param hint 已知的混淆名，解析出的名称不同时输出日志
+     * @param type 字段声明类型需要可以赋值给此类型
+     * @param typeArgument 泛型参数中需要出现的类名，为 null 或字段没有泛型签名时不检查
+     */
+    class FieldSignature(
+        val key: String,
+        val hint: String,
+        val type: Class<*>,
+        val typeArgument: String? = null
+    )
+
+    /** SCInnerManager 单例访问方法（m） */
+    @JvmField
+    val SC_INNER_MANAGER_INSTANCE = MethodSignature("instance", "m", true, null)
+
+    /** SCInnerManager.readSkinInfoFromLocalCache（K） */
+    @JvmField
+    val SC_INNER_MANAGER_READ_CACHE = MethodSignature("readSkinInfoFromLocalCache", "K", false, Void.TYPE)
+
+    /** SCInnerManager.hasEnableSkin（y） */
+    @JvmField
+    val SC_INNER_MANAGER_HAS_ENABLE_SKIN = MethodSignature(
+        "hasEnableSkin", "y", false, java.lang.Boolean.TYPE,
+        String::class.java, Map::class.java
+    )
+
+    /** SCInnerManager 皮肤文件目录（q） */
+    @JvmField
+    val SC_INNER_MANAGER_SKIN_DIR = MethodSignature(
+        "skinDir", "q", false, File::class.java,
+        File::class.java, String::class.java, String::class.java
+    )
+
+    /** SCInnerManager 内存缓存 Map<String, SCCacheInfoModel>（g） */
+    @JvmField
+    val SC_INNER_MANAGER_CACHE_MAP = FieldSignature(
+        "cacheMap", "g", Map::class.java,
+        "com.alipay.mobile.skincenter.model.SCCacheInfoModel"
+    )
+
+    /** SCConfigUtil MD5 校验（m） */
+    @JvmField
+    val SC_CONFIG_UTIL_MD5_CHECK = MethodSignature(
+        "md5Check", "m", true, java.lang.Boolean.TYPE,
+        String::class.java, java.lang.Long.TYPE
+    )
+
+    /** SCConfigUtil 缓存时间检查（l） */
+    @JvmField
+    val SC_CONFIG_UTIL_TIME_CHECK = MethodSignature("timeCheck", "l", true, java.lang.Boolean.TYPE)
+
+    /**
+     * 解析方法
+     *
+     * @return 方法（已设置 accessible），找不到或有歧义时返回 null
+     */
+    @JvmStatic
+    fun method(clazz: Class<*>, signature: MethodSignature): Method? {
+        val cacheKey = "${clazz.name}#${signature.key}"
+        val cached = CompatCache.memberName(cacheKey)
+        if (cached != null) {
+            if (cached.isEmpty()) {
+                return null
+            }
+            declaredMethod(clazz, cached, signature)?.let { return it }
+        }
+
+        val method = StartupProfiler.measure(StartupProfiler.Category.LOOKUP, "resolve ${signature.key}") {
+            scanMethods(clazz, signature, cacheKey)
+        }
+        CompatCache.recordMemberName(cacheKey, method?.name ?: "")
+        if (method != null && method.name != signature.hint) {
+            ModuleLog.i(TAG, "✓ ${clazz.simpleName}.${signature.key} 已解析为 ${method.name}")
+        }
+        return method?.apply { isAccessible = true }
+    }
+
+    /**
+     * 解析字段
+     *
+     * @return 字段（已设置 accessible），找不到或有歧义时返回 null
+     */
+    @JvmStatic
+    fun field(clazz: Class<*>, signature: FieldSignature): Field? {
+        val cacheKey = "${clazz.name}.${signature.key}"
+        val cached = CompatCache.memberName(cacheKey)
+        if (cached != null) {
+            if (cached.isEmpty()) {
+                return null
+            }
+            declaredField(clazz, cached, signature)?.let { return it }
+        }
+
+        val field = StartupProfiler.measure(StartupProfiler.Category.LOOKUP, "resolve ${signature.key}") {
+            scanFields(clazz, signature)
+        }
+        CompatCache.recordMemberName(cacheKey, field?.name ?: "")
+        if (field != null && field.name != signature.hint) {
+            ModuleLog.i(TAG, "✓ ${clazz.simpleName}.${signature.key} 已解析为 ${field.name}")
+        }
+        return field?.apply { isAccessible = true }
+    }
+
+    private fun declaredMethod(clazz: Class<*>, name: String, signature: MethodSignature): Method? {
+        return try {
+            clazz.getDeclaredMethod(name, *signature.parameterTypes)
+                .takeIf { matches(clazz, it, signature) }
+                ?.apply { isAccessible = true }
+        } catch (e: NoSuchMethodException) {
+            null
+        }
+    }
+
+    private fun declaredField(clazz: Class<*>, name: String, signature: FieldSignature): Field? {
+        return try {
+            clazz.getDeclaredField(name)
+                .takeIf { matches(it, signature) }
+                ?.apply { isAccessible = true }
+        } catch (e: NoSuchFieldException) {
+            null
+        }
+    }
+
+    private fun scanMethods(clazz: Class<*>, signature: MethodSignature, cacheKey: String): Method? {
+        val candidates = try {
+            clazz.declaredMethods.filter { !it.isSynthetic && !it.isBridge && matches(clazz, it, signature) }
+        } catch (t: Throwable) {
+            // 某些方法签名引用的类不存在时 getDeclaredMethods 会抛出 NoClassDefFoundError
+            ModuleLog.w(TAG, "✗ 无法枚举 ${clazz.name} 的方法: $t")
+            return null
+        }
+        if (candidates.size <= 1) {
+            return unique(clazz, signature.key, candidates)?.also { CompatCache.recordShapeCount(cacheKey, 1) }
+        }
+
+        // 同特征的方法不止一个，只能靠已知名称，并用同特征方法的数量确认类结构没有变化
+        val hinted = candidates.firstOrNull { it.name == signature.hint }
+        val expected = CompatCache.shapeCount(cacheKey)
+        if (hinted == null || (expected != null && expected != candidates.size)) {
+            ModuleLog.w(
+                TAG,
+                "✗ ${clazz.simpleName}.${signature.key} 有 ${candidates.size} 个同特征方法" +
+                        "（上次 ${expected ?: "-"} 个）: ${candidates.joinToString { it.name }}"
+            )
+            return null
+        }
+        CompatCache.recordShapeCount(cacheKey, candidates.size)
+        return hinted
+    }
+
+    private fun scanFields(clazz: Class<*>, signature: FieldSignature): Field? {
+        val candidates = try {
+            clazz.declaredFields.filter { !it.isSynthetic && matches(it, signature) }
+        } catch (t: Throwable) {
+            ModuleLog.w(TAG, "✗ 无法枚举 ${clazz.name} 的字段: $t")
+            return null
+        }
+        if (candidates.size <= 1) {
+            return unique(clazz, signature.key, candidates)
+        }
+        // 声明类型相同的字段有多个时，按泛型参数区分
+        return unique(clazz, signature.key, candidates.filter { hasTypeArgument(it, signature) })
+    }
+
+    private fun <T : Member> unique(clazz: Class<*>, key: String, candidates: List<T>): T? {
+        return when (candidates.size) {
+            1 -> candidates[0]
+            0 -> {
+                ModuleLog.w(TAG, "✗ ${clazz.simpleName}.$key 没有符合特征的成员")
+                null
+            }
+            else -> {
+                ModuleLog.w(TAG, "✗ ${clazz.simpleName}.$key 有 ${candidates.size} 个候选: ${candidates.joinToString { it.name }}")
+                null
+            }
+        }
+    }
+
+    private fun matches(clazz: Class<*>, method: Method, signature: MethodSignature): Boolean {
+        return Modifier.isStatic(method.modifiers) == signature.isStatic &&
+                method.returnType == (signature.returnType ?: clazz) &&
+                method.parameterTypes.contentEquals(signature.parameterTypes)
+    }
+
+    private fun matches(field: Field, signature: FieldSignature): Boolean {
+        if (Modifier.isStatic(field.modifiers) || !signature.type.isAssignableFrom(field.type)) {
+            return false
+        }
+        signature.typeArgument ?: return true
+        // 混淆时去掉了泛型签名的只能按声明类型匹配
+        if (field.genericType !is ParameterizedType) {
+            return true
+        }
+        return hasTypeArgument(field, signature)
+    }
+
+    /**
+     * 字段的泛型参数中确实包含目标类型（没有泛型签名时返回 false）
+     */
+    private fun hasTypeArgument(field: Field, signature: FieldSignature): Boolean {
+        val typeArgument = signature.typeArgument ?: return false
+        val genericType = field.genericType as? ParameterizedType ?: return false
+        return genericType.actualTypeArguments.any { (it as? Class<*>)?.name == typeArgument }
+    }
+}
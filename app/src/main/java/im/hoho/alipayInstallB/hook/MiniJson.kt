@@ -0,0 +1,278 @@
+package im.hoho.alipayInstallB.hook
+
+/**
+ * Hook 层使用的最小 JSON 读写
+ *
+ * 支付宝进程中只需要读写 theme_info.json、meta.json 这类扁平的小文件，
+ * 不再为此加载模块自带的 fastjson（以及它的反序列化器、ASM 生成类等）
+ * 1. 对象解析为 LinkedHashMap，数组解析为 ArrayList
+ * 2. 整数解析为 Long，小数解析为 Double
+ * 3. 写出时支持 Map、Collection、String、Number、Boolean 和 null
+ *
+ * 格式错误时抛出 [IllegalArgumentException]
+ */
+object MiniJson {
+
+    /**
+     * 解析 JSON 文本
+     */
+    @JvmStatic
+    fun parse(text: String): Any? {
+        val reader = Reader(text)
+        val value = reader.readValue()
+        reader.skipWhitespace()
+        if (!reader.atEnd()) {
+            throw reader.error("多余的内容")
+        }
+        return value
+    }
+
+    /**
+     * 解析 JSON 对象
+     *
+     * @throws IllegalArgumentException 格式错误或顶层不是对象
+     */
+    @JvmStatic
+    fun parseObject(text: String): Map<String, Any?> {
+        @Suppress("UNCHECKED_CAST")
+        return parse(text) as? Map<String, Any?> ?: throw IllegalArgumentException("顶层不是 JSON 对象")
+    }
+
+    /**
+     * 序列化为 JSON 文本
+     */
+    @JvmStatic
+    fun write(value: Any?): String {
+        val builder = StringBuilder()
+        writeValue(builder, value)
+        return builder.toString()
+    }
+
+    private fun writeValue(builder: StringBuilder, value: Any?) {
+        when (value) {
+            null -> builder.append("null")
+            is String -> writeString(builder, value)
+            is Boolean, is Int, is Long, is Short, is Byte -> builder.append(value)
+            is Number -> {
+                val number = value.toDouble()
+                if (number.isNaN() || number.isInfinite()) builder.append("null") else builder.append(value)
+            }
+            is Map<*, *> -> {
+                builder.append('{')
+                var first = true
+                for ((key, item) in value) {
+                    if (!first) {
+                        builder.append(',')
+                    }
+                    first = false
+                    writeString(builder, key.toString())
+                    builder.append(':')
+                    writeValue(builder, item)
+                }
+                builder.append('}')
+            }
+            is Collection<*> -> {
+                builder.append('[')
+                var first = true
+                for (item in value) {
+                    if (!first) {
+                        builder.append(',')
+                    }
+                    first = false
+                    writeValue(builder, item)
+                }
+                builder.append(']')
+            }
+            else -> writeString(builder, value.toString())
+        }
+    }
+
+    private fun writeString(builder: StringBuilder, value: String) {
+        builder.append('"')
+        for (c in value) {
+            when (c) {
+                '"' -> builder.append("\\\"")
+                '\\' -> builder.append("\\\\")
+                '\n' -> builder.append("\\n")
+                '\r' -> builder.append("\\r")
+                '\t' -> builder.append("\\t")
+                else -> if (c < ' ') {
+                    builder.append("\\u")
+                    val hex = Integer.toHexString(c.code)
+                    for (i in hex.length until 4) {
+                        builder.append('0')
+                    }
+                    builder.append(hex)
+                } else {
+                    builder.append(c)
+                }
+            }
+        }
+        builder.append('"')
+    }
+
+    /**
+     * 递归下降解析器
+     */
+    private class Reader(private val text: String) {
+        private var pos = 0
+
+        fun atEnd(): Boolean = pos >= text.length
+
+        fun skipWhitespace() {
+            while (pos < text.length) {
+                val c = text[pos]
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') {
+                    return
+                }
+                pos++
+            }
+        }
+
+        fun readValue(): Any? {
+            skipWhitespace()
+            if (atEnd()) {
+                throw error("意外的结尾")
+            }
+            return when (val c = text[pos]) {
+                '{' -> readObject()
+                '[' -> readArray()
+                '"' -> readString()
+                't' -> readLiteral("true", true)
+                'f' -> readLiteral("false", false)
+                'n' -> readLiteral("null", null)
+                else -> if (c == '-' || c in '0'..'9') readNumber() else throw error("意外的字符 '$c'")
+            }
+        }
+
+        private fun readObject(): Map<String, Any?> {
+            val map = LinkedHashMap<String, Any?>()
+            pos++
+            skipWhitespace()
+            if (peek() == '}') {
+                pos++
+                return map
+            }
+            while (true) {
+                skipWhitespace()
+                if (peek() != '"') {
+                    throw error("缺少键名")
+                }
+                val key = readString()
+                skipWhitespace()
+                expect(':')
+                map[key] = readValue()
+                skipWhitespace()
+                when (next()) {
+                    ',' -> continue
+                    '}' -> return map
+                    else -> throw error("缺少 ',' 或 '}'")
+                }
+            }
+        }
+
+        private fun readArray(): List<Any?> {
+            val list = ArrayList<Any?>()
+            pos++
+            skipWhitespace()
+            if (peek() == ']') {
+                pos++
+                return list
+            }
+            while (true) {
+                list.add(readValue())
+                skipWhitespace()
+                when (next()) {
+                    ',' -> continue
+                    ']' -> return list
+                    else -> throw error("缺少 ',' 或 ']'")
+                }
+            }
+        }
+
+        private fun readString(): String {
+            pos++
+            val builder = StringBuilder()
+            while (true) {
+                if (atEnd()) {
+                    throw error("字符串未结束")
+                }
+                val c = text[pos++]
+                when (c) {
+                    '"' -> return builder.toString()
+                    '\\' -> {
+                        if (atEnd()) {
+                            throw error("转义未结束")
+                        }
+                        when (val escaped = text[pos++]) {
+                            '"', '\\', '/' -> builder.append(escaped)
+                            'b' -> builder.append('\b')
+                            'f' -> builder.append('\u000C')
+                            'n' -> builder.append('\n')
+                            'r' -> builder.append('\r')
+                            't' -> builder.append('\t')
+                            'u' -> {
+                                if (pos + 4 > text.length) {
+                                    throw error("\\u 转义不完整")
+                                }
+                                val code = text.substring(pos, pos + 4).toIntOrNull(16)
+                                    ?: throw error("\\u 转义无效")
+                                builder.append(code.toChar())
+                                pos += 4
+                            }
+                            else -> throw error("未知转义 '\\$escaped'")
+                        }
+                    }
+                    else -> builder.append(c)
+                }
+            }
+        }
+
+        private fun readNumber(): Number {
+            val start = pos
+            var integral = true
+            if (peek() == '-') {
+                pos++
+            }
+            while (pos < text.length) {
+                val c = text[pos]
+                if (c in '0'..'9') {
+                    pos++
+                } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false
+                    pos++
+                } else {
+                    break
+                }
+            }
+            val literal = text.substring(start, pos)
+            return try {
+                if (integral) literal.toLong() else literal.toDouble()
+            } catch (e: NumberFormatException) {
+                // 超出 Long 范围的整数按小数处理
+                literal.toDoubleOrNull() ?: throw error("数字无效 '$literal'")
+            }
+        }
+
+        private fun readLiteral(literal: String, value: Any?): Any? {
+            if (!text.startsWith(literal, pos)) {
+                throw error("意外的字符 '${text[pos]}'")
+            }
+            pos += literal.length
+            return value
+        }
+
+        private fun peek(): Char = if (atEnd()) '\u0000' else text[pos]
+
+        private fun next(): Char = if (atEnd()) '\u0000' else text[pos++]
+
+        private fun expect(c: Char) {
+            if (next() != c) {
+                throw error("缺少 '$c'")
+            }
+        }
+
+        fun error(message: String): IllegalArgumentException =
+            IllegalArgumentException("JSON 格式错误（位置 $pos）: $message")
+    }
+}
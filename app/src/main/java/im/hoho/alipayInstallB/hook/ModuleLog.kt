@@ -0,0 +1,302 @@
+package im.hoho.alipayInstallB.hook
+
+import android.os.Process
+import android.util.Log
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.Diagnostics
+import im.hoho.alipayInstallB.diagnostics.StartupProfiler
+import java.io.File
+import java.io.FileWriter
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.Properties
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * 模块日志（Hook层使用）
+ *
+ * Hook 线程只把日志写入预分配的环形缓冲区，由后台线程统一输出到 Xposed 日志或 SD 卡文件
+ * 1. 按 tag 设置日志级别，低于级别的日志在调用处直接丢弃，不拼接字符串
+ * 2. [sampled] 提供线程安全的限频，代替各处手写的 lastLogTime 防抖
+ * 3. 缓冲区满时丢弃新日志并计数，Hook 线程永远不会等待日志 I/O
+ *
+ * 级别配置：000_HOHO_DIAGNOSTICS/log_levels.properties，每行 tag=DEBUG，"*" 为默认级别
+ * 文件输出：000_HOHO_DIAGNOSTICS 中存在 log_to_file 文件夹时写入 module_log_<pid>.txt
+ */
+object ModuleLog {
+
+    // 静态初始化的开始时间，第一次使用本类时触发，初始化结束时记录耗时
+    private val clinitStart = StartupProfiler.now()
+
+    // 缓冲区容量（2 的幂）
+    private const val CAPACITY = 1024
+    private const val MASK = CAPACITY - 1
+
+    // 后台线程的输出间隔
+    private const val DRAIN_INTERVAL_NANOS = 200_000_000L
+
+    private const val LEVELS_FILE = "log_levels.properties"
+    private const val FILE_SINK_FLAG = "log_to_file"
+
+    // 预分配的环形缓冲区
+    private val levels = IntArray(CAPACITY)
+    private val times = LongArray(CAPACITY)
+    private val tags = arrayOfNulls<String>(CAPACITY)
+    private val messages = arrayOfNulls<String>(CAPACITY)
+    private val throwables = arrayOfNulls<Throwable>(CAPACITY)
+
+    // 槽位发布序号：写完后设为 序号 + 1，后台线程据此判断槽位是否可读
+    private val published = AtomicLongArray(CAPACITY)
+
+    // 下一个写入序号 / 下一个读取序号
+    private val head = AtomicLong()
+    private val tail = AtomicLong()
+
+    private val dropped = AtomicLong()
+
+    @Volatile
+    private var defaultLevel = Log.INFO
+
+    private val tagLevels = ConcurrentHashMap<String, Int>()
+
+    // 限频 key -> 上次放行的时间
+    private val lastSampled = ConcurrentHashMap<String, AtomicLong>()
+
+    @Volatile
+    private var drainThread: Thread? = null
+
+    /**
+     * 指定 tag 和级别的日志是否会被记录
+     */
+    @JvmStatic
+    fun isLoggable(tag: String, level: Int): Boolean {
+        return level >= (tagLevels[tag] ?: defaultLevel)
+    }
+
+    /**
+     * 设置 tag 的日志级别（android.util.Log 常量）
+     */
+    @JvmStatic
+    fun setLevel(tag: String, level: Int) {
+        tagLevels[tag] = level
+    }
+
+    @JvmStatic
+    fun d(tag: String, message: String) = log(Log.DEBUG, tag, message, null)
+
+    @JvmStatic
+    fun i(tag: String, message: String) = log(Log.INFO, tag, message, null)
+
+    @JvmStatic
+    fun w(tag: String, message: String) = log(Log.WARN, tag, message, null)
+
+    @JvmStatic
+    @JvmOverloads
+    fun e(tag: String, message: String, throwable: Throwable? = null) = log(Log.ERROR, tag, message, throwable)
+
+    /**
+     * 调试日志（Kotlin），级别不够时不拼接消息
+     */
+    inline fun d(tag: String, message: () -> String) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            d(tag, message())
+        }
+    }
+
+    /**
+     * 限频：同一个 key 在 [intervalMs] 内只放行一次
+     *
+     * 通过 CAS 更新时间戳，多个线程同时调用时只有一个返回 true
+     */
+    @JvmStatic
+    fun sampled(key: String, intervalMs: Long): Boolean {
+        val now = System.currentTimeMillis()
+        val last = lastSampled[key] ?: lastSampled.getOrPut(key) { AtomicLong(0) }
+        val previous = last.get()
+        return now - previous >= intervalMs && last.compareAndSet(previous, now)
+    }
+
+    /**
+     * 写入缓冲区
+     *
+     * 只做级别判断、占用槽位和写入字段，不做任何 I/O
+     */
+    @JvmStatic
+    fun log(level: Int, tag: String, message: String, throwable: Throwable?) {
+        if (!isLoggable(tag, level)) {
+            return
+        }
+
+        var sequence: Long
+        while (true) {
+            sequence = head.get()
+            if (sequence - tail.get() >= CAPACITY) {
+                dropped.incrementAndGet()
+                return
+            }
+            if (head.compareAndSet(sequence, sequence + 1)) {
+                break
+            }
+        }
+
+        val slot = (sequence and MASK.toLong()).toInt()
+        levels[slot] = level
+        times[slot] = System.currentTimeMillis()
+        tags[slot] = tag
+        messages[slot] = message
+        throwables[slot] = throwable
+        published.lazySet(slot, sequence + 1)
+
+        val thread = drainThread ?: startDrain()
+        if (level >= Log.ERROR) {
+            LockSupport.unpark(thread)
+        }
+    }
+
+    @Synchronized
+    private fun startDrain(): Thread {
+        drainThread?.let { return it }
+
+        val thread = Thread({
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND)
+            val fileSink = loadConfig()
+            while (true) {
+                drain(fileSink)
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS)
+            }
+        }, "HohoLogDrain").apply {
+            isDaemon = true
+        }
+        drainThread = thread
+        thread.start()
+        return thread
+    }
+
+    /**
+     * 读取级别配置，返回文件输出目标（未开启时为 null）
+     */
+    private fun loadConfig(): File? {
+        val dir = File(Diagnostics.DIAGNOSTICS_PATH)
+        try {
+            val levelsFile = File(dir, LEVELS_FILE)
+            if (levelsFile.exists()) {
+                val properties = Properties()
+                levelsFile.inputStream().use { properties.load(it) }
+                for (name in properties.stringPropertyNames()) {
+                    val level = parseLevel(properties.getProperty(name)) ?: continue
+                    if (name == "*") {
+                        defaultLevel = level
+                    } else {
+                        tagLevels[name] = level
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            XposedBridge.log("[ModuleLog] 读取日志级别失败: ${e.message}")
+        }
+
+        return if (File(dir, FILE_SINK_FLAG).exists()) {
+            File(dir, "module_log_${Process.myPid()}.txt")
+        } else {
+            null
+        }
+    }
+
+    private fun parseLevel(value: String?): Int? {
+        return when (value?.trim()?.uppercase(Locale.US)) {
+            "VERBOSE" -> Log.VERBOSE
+            "DEBUG" -> Log.DEBUG
+            "INFO" -> Log.INFO
+            "WARN" -> Log.WARN
+            "ERROR" -> Log.ERROR
+            "OFF" -> Int.MAX_VALUE
+            else -> null
+        }
+    }
+
+    /**
+     * 输出缓冲区中已发布的日志
+     */
+    private fun drain(fileSink: File?) {
+        var writer: FileWriter? = null
+        try {
+            var sequence = tail.get()
+            while (published.get((sequence and MASK.toLong()).toInt()) == sequence + 1) {
+                val slot = (sequence and MASK.toLong()).toInt()
+                val line = format(levels[slot], times[slot], tags[slot], messages[slot], fileSink != null)
+                val throwable = throwables[slot]
+                tags[slot] = null
+                messages[slot] = null
+                throwables[slot] = null
+                tail.set(++sequence)
+
+                if (fileSink != null) {
+                    if (writer == null) {
+                        writer = FileWriter(fileSink, true)
+                    }
+                    writer.append(line).append('\n')
+                    if (throwable != null) {
+                        writer.append(stackTrace(throwable))
+                    }
+                } else {
+                    XposedBridge.log(line)
+                    if (throwable != null) {
+                        XposedBridge.log(throwable)
+                    }
+                }
+            }
+
+            val lost = dropped.getAndSet(0)
+            if (lost > 0) {
+                val line = "[ModuleLog] 缓冲区已满，丢弃 $lost 条日志"
+                writer?.append(line)?.append('\n') ?: XposedBridge.log(line)
+            }
+        } catch (e: Exception) {
+            XposedBridge.log("[ModuleLog] 日志输出失败: ${e.message}")
+        } finally {
+            try {
+                writer?.close()
+            } catch (e: Exception) {
+                // 忽略
+            }
+        }
+    }
+
+    private fun format(level: Int, time: Long, tag: String?, message: String?, withTime: Boolean): String {
+        val text = message ?: ""
+        val separator = if (text.isEmpty() || text[0] == ' ' || text[0] == '✓' || text[0] == '✗') "" else " "
+        val prefix = if (withTime) {
+            SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(Date(time)) + " " + levelName(level) + " "
+        } else {
+            ""
+        }
+        return "$prefix[$tag]$separator$text"
+    }
+
+    private fun levelName(level: Int): String {
+        return when (level) {
+            Log.VERBOSE -> "V"
+            Log.DEBUG -> "D"
+            Log.INFO -> "I"
+            Log.WARN -> "W"
+            else -> "E"
+        }
+    }
+
+    private fun stackTrace(throwable: Throwable): String {
+        val writer = StringWriter()
+        throwable.printStackTrace(PrintWriter(writer))
+        return writer.toString()
+    }
+
+    init {
+        // 放在最后，覆盖上面全部属性的初始化
+        StartupProfiler.end(StartupProfiler.Category.CLINIT, "ModuleLog", clinitStart)
+    }
+}
@@ -0,0 +1,146 @@
+package im.hoho.alipayInstallB.hook
+
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * 后台操作执行器
+ *
+ * 支付宝进程中负责皮肤、主题导出/删除/更新等维护工作的后台执行器
+ * 1. 相同 key 的请求在开始执行前会被合并为一次
+ * 2. 执行过程中到达的新请求会排队，而不是被丢弃；由 Hook 轮询提交的请求使用 [submitOnce]，执行期间不再排队
+ * 3. 耗时数秒的复制和导出（[BULK_KEYS]）在单独的线程中执行，
+ *    其他短任务不会排在皮肤导入之后
+ * 4. Hook 线程只负责提交请求并立即返回
+ */
+object OperationExecutor {
+    private const val TAG = "OperationExecutor"
+
+    /** 皮肤操作（SkinHook） */
+    const val KEY_SKIN_OPERATIONS = "skin_operations"
+
+    /** 外部皮肤库链接和扫描（SkinModelCache） */
+    const val KEY_SKIN_EXTERNAL_SCAN = "skin_external_scan"
+
+    /** 旧版皮肤操作（PluginMain） */
+    const val KEY_LEGACY_SKIN_OPERATIONS = "legacy_skin_operations"
+
+    /** 主题操作（ThemeManager） */
+    const val KEY_THEME_OPERATIONS = "theme_operations"
+
+    /** 主题库指针读取和可读性检查（ThemeLibraryLink），单个目录的检查在后面追加目录路径 */
+    const val KEY_THEME_LIBRARY_VALIDATE = "theme_library_validate"
+
+    /** 主题库不可读时把主题复制到内部目录（ThemeManager） */
+    const val KEY_THEME_MATERIALIZE = "theme_materialize"
+
+    /** 会员等级写入 alipayclient.db（MemberGradeDbSync） */
+    const val KEY_MEMBER_GRADE_SYNC = "member_grade_sync"
+
+    /** 诊断目录初始化（Diagnostics） */
+    const val KEY_DIAGNOSTICS = "diagnostics"
+
+    /** 诊断数据导出（Diagnostics） */
+    const val KEY_DIAGNOSTICS_DUMP = "diagnostics_dump"
+
+    /** 冷启动耗时记录（StartupProfiler） */
+    const val KEY_STARTUP_PROFILE = "startup_profile"
+
+    /** Hook 兼容性缓存写入（CompatCache） */
+    const val KEY_COMPAT_CACHE = "compat_cache"
+
+    /** 延迟安装开关同步（DeferredHooks） */
+    const val KEY_DEFERRED_HOOKS = "deferred_hooks"
+
+    // 耗时较长的复制、导出操作，在单独的线程中执行
+    private val BULK_KEYS = setOf(
+        KEY_SKIN_OPERATIONS,
+        KEY_LEGACY_SKIN_OPERATIONS,
+        KEY_THEME_OPERATIONS,
+        KEY_THEME_MATERIALIZE,
+        KEY_DIAGNOSTICS_DUMP
+    )
+
+    private val executor: ExecutorService by lazy { newLane("HohoOperationExecutor") }
+
+    private val bulkExecutor: ExecutorService by lazy { newLane("HohoBulkExecutor") }
+
+    // 已提交但尚未开始执行的请求
+    private val pending: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap())
+
+    // 正在执行的请求
+    private val running: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap())
+
+    /**
+     * 提交操作
+     *
+     * 同一 key 已在队列中等待时直接合并；任务开始执行后再提交的请求会重新排队
+     *
+     * @param key 操作标识
+     * @param task 操作内容
+     * @return true=已加入队列，false=与等待中的请求合并
+     */
+    @JvmStatic
+    fun submit(key: String, task: Runnable): Boolean {
+        if (!pending.add(key)) {
+            return false
+        }
+
+        val lane = if (key in BULK_KEYS) bulkExecutor else executor
+        lane.execute {
+            // 先标记为执行中再移除等待标记，执行期间的新请求会排在本次之后
+            running.add(key)
+            pending.remove(key)
+            val start = HookMetrics.now()
+            try {
+                task.run()
+            } catch (t: Throwable) {
+                HookMetrics.increment(HookMetrics.Counter.OPERATION_FAILURES)
+                XposedBridge.log("[$TAG]✗ 操作执行异常 ($key): ${t.message}")
+                XposedBridge.log(t)
+            } finally {
+                running.remove(key)
+                HookMetrics.increment(HookMetrics.Counter.OPERATIONS)
+                HookMetrics.add(HookMetrics.Counter.OPERATION_NANOS, System.nanoTime() - start)
+            }
+        }
+        return true
+    }
+
+    /**
+     * 提交操作，同一 key 等待或正在执行时都直接合并
+     *
+     * 用于 Hook 每次调用都会根据旧快照重复提交的请求：任务结束前快照还没有刷新，
+     * 执行期间的提交不能再排一次
+     *
+     * @return true=已加入队列，false=与等待中或执行中的请求合并
+     */
+    @JvmStatic
+    fun submitOnce(key: String, task: Runnable): Boolean {
+        if (running.contains(key)) {
+            return false
+        }
+        return submit(key, task)
+    }
+
+    /**
+     * 指定操作是否在队列中等待执行
+     */
+    @JvmStatic
+    fun isPending(key: String): Boolean = pending.contains(key)
+
+    private fun newLane(name: String): ExecutorService {
+        return Executors.newSingleThreadExecutor { runnable ->
+            Thread({
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND)
+                runnable.run()
+            }, name).apply {
+                isDaemon = true
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package im.hoho.alipayInstallB.skin
+
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.OperationExecutor
+import java.io.File
+
+/**
+ * 会员等级数据库同步
+ *
+ * 把配置中的会员等级写入支付宝本地数据库 alipayclient.db 的 userinfo 表，使变化立即生效
+ * 1. 只需要一个 Context；首次登录前数据库可能还不存在，Activity.onCreate Hook
+ *    在 [isSynced] 返回 true（数据库存在且已同步）之前保留，每次回调都重新请求同步
+ * 2. 检查和更新在 OperationExecutor 的后台线程中执行，使用参数化语句并在同一事务内完成
+ * 3. 之后会员等级变化时（SkinConfigStore 快照变化）增量写入，无需重新 Hook
+ * 4. SkinHook 入口与原先一样不写入 unknown 等级
+ */
+object MemberGradeDbSync {
+    private const val TAG = "MemberGradeDbSync"
+
+    private const val DATABASE_NAME = "alipayclient.db"
+
+    // 只在等级不同时更新，检查和写入合并为一条语句
+    private const val UPDATE_SQL =
+        "UPDATE userinfo SET memberGrade = ? WHERE memberGrade IS NULL OR memberGrade <> ?"
+
+    @Volatile
+    private var appContext: Context? = null
+
+    // 不写入 unknown 等级（SkinHook 入口）
+    @Volatile
+    private var skipUnknown = false
+
+    // 数据库存在且已与配置一致
+    @Volatile
+    private var synced = false
+
+    // 上次成功写入数据库的会员等级（只在后台线程中读写）
+    private var syncedGrade: String? = null
+
+    /**
+     * 绑定 Context 并立即同步一次
+     *
+     * 已经绑定过时只重新请求同步，用于数据库尚未创建时在之后的 Activity 中重试
+     *
+     * @param context 任意支付宝 Context，只保存其 ApplicationContext
+     * @param skipUnknown true=unknown 等级不写入数据库
+     * @return true=首次绑定，false=之前已经绑定过
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun attach(context: Context, skipUnknown: Boolean = false): Boolean {
+        synchronized(this) {
+            if (appContext != null) {
+                if (!synced) {
+                    requestSync()
+                }
+                return false
+            }
+            this.skipUnknown = skipUnknown
+            appContext = context.applicationContext ?: context
+        }
+
+        SkinConfigStore.addListener { snapshot ->
+            if (snapshot.memberGrade != null) {
+                requestSync()
+            }
+        }
+        requestSync()
+        return true
+    }
+
+    /**
+     * 是否已成功同步过一次（之后不再需要 Activity.onCreate 提供的 Context）
+     */
+    @JvmStatic
+    fun isSynced(): Boolean = synced
+
+    /**
+     * 请求同步
+     *
+     * 未绑定 Context 时忽略；多次请求在执行前会被合并
+     */
+    @JvmStatic
+    fun requestSync() {
+        if (appContext == null) {
+            return
+        }
+        OperationExecutor.submit(OperationExecutor.KEY_MEMBER_GRADE_SYNC) { sync() }
+    }
+
+    /**
+     * 写入当前会员等级
+     *
+     * 未设置会员等级（原有）时不修改数据库；数据库不存在或写入失败时保持未同步，等待下次请求重试
+     */
+    private fun sync() {
+        val context = appContext ?: return
+        val dbFile = context.getDatabasePath(DATABASE_NAME)
+        if (!dbFile.exists()) {
+            XposedBridge.log("[$TAG] 数据库不存在，等待下次重试: ${dbFile.parent}")
+            return
+        }
+
+        val grade = SkinConfigStore.current().memberGrade
+        if (grade == null || (skipUnknown && grade == "unknown") || grade == syncedGrade) {
+            synced = true
+            return
+        }
+
+        try {
+            IoTrace.trace("sqlite", dbFile) { writeGrade(dbFile, grade) }
+            syncedGrade = grade
+            synced = true
+        } catch (e: Exception) {
+            XposedBridge.log("[$TAG]✗ 数据库更新失败: ${e.message}")
+        }
+    }
+
+    /**
+     * 在一个事务中写入会员等级
+     */
+    private fun writeGrade(dbFile: File, grade: String) {
+        SQLiteDatabase.openDatabase(dbFile.path, null, SQLiteDatabase.OPEN_READWRITE).use { db ->
+            db.beginTransaction()
+            try {
+                val changed = db.compileStatement(UPDATE_SQL).use { statement ->
+                    statement.bindString(1, grade)
+                    statement.bindString(2, grade)
+                    statement.executeUpdateDelete()
+                }
+                db.setTransactionSuccessful()
+
+                if (changed > 0) {
+                    XposedBridge.log("[$TAG]✓ 数据库会员等级已更新: $grade")
+                }
+            } finally {
+                db.endTransaction()
+            }
+        }
+    }
+}
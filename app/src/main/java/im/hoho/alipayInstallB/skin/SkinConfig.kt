@@ -0,0 +1,226 @@
+package im.hoho.alipayInstallB.skin
+
+import android.os.FileObserver
+import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import java.io.File
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 皮肤配置快照
+ *
+ * 000_HOHO_ALIPAY_SKIN 目录状态的不可变快照
+ * Hook 回调只读取快照，不触发任何文件 I/O
+ */
+data class SkinConfigSnapshot(
+    /** 会员等级（primary/golden/platinum/diamond/unknown），未设置时为 null */
+    val memberGrade: String?,
+
+    /** 用户选择的皮肤名称（selected_skin 文件内容） */
+    val selectedSkin: String?,
+
+    /** 皮肤是否已激活（actived 文件夹存在） */
+    val isActivated: Boolean,
+
+    /** 等待执行的皮肤操作（导出、删除、更新） */
+    val pendingOperations: Set<SkinOperation>
+) {
+    /** 是否有等待执行的操作 */
+    val hasPendingOperations: Boolean
+        get() = pendingOperations.isNotEmpty()
+
+    companion object {
+        /** 目录不存在时使用的空配置 */
+        @JvmField
+        val EMPTY = SkinConfigSnapshot(null, null, false, emptySet())
+    }
+}
+
+/**
+ * 皮肤配置存储
+ *
+ * 通过 AtomicReference 发布 [SkinConfigSnapshot]，Hook 回调读取时零 I/O
+ * 使用 FileObserver 监听 000_HOHO_ALIPAY_SKIN 目录，只有目录实际变化时才重建快照
+ */
+object SkinConfigStore {
+    private const val TAG = "SkinConfigStore"
+
+    // 会员等级按优先级排列（与原先逐个 exists() 检查的顺序一致）
+    private val GRADES = arrayOf("primary", "golden", "platinum", "diamond", "unknown")
+
+    private const val SELECTED_SKIN_FILE = "selected_skin"
+
+    // 会引起快照变化的目录事件
+    private const val DIR_EVENTS = FileObserver.CREATE or FileObserver.DELETE or
+            FileObserver.MOVED_FROM or FileObserver.MOVED_TO or FileObserver.CLOSE_WRITE or
+            FileObserver.DELETE_SELF or FileObserver.MOVE_SELF
+
+    private val snapshot = AtomicReference<SkinConfigSnapshot?>(null)
+
+    // 快照变化监听器，在 FileObserver 线程或调用 refresh() 的线程中回调
+    private val listeners = CopyOnWriteArrayList<(SkinConfigSnapshot) -> Unit>()
+
+    // FileObserver 必须保持强引用，否则被回收后监听失效
+    private var skinDirObserver: FileObserver? = null
+    private var parentDirObserver: FileObserver? = null
+
+    /**
+     * 获取当前配置快照
+     *
+     * 首次调用时同步读取一次目录并启动监听，之后只返回内存中的快照
+     */
+    @JvmStatic
+    fun current(): SkinConfigSnapshot {
+        return snapshot.get() ?: start()
+    }
+
+    /**
+     * 立即重建快照
+     *
+     * 模块自身修改了控制文件夹后可调用，避免等待 FileObserver 事件
+     */
+    @JvmStatic
+    @Synchronized
+    fun refresh(): SkinConfigSnapshot {
+        val rebuilt = load()
+        publish(rebuilt)
+        return rebuilt
+    }
+
+    /**
+     * 监听快照变化
+     *
+     * 只有快照内容实际变化时才回调，监听器中不应执行耗时操作
+     */
+    @JvmStatic
+    fun addListener(listener: (SkinConfigSnapshot) -> Unit) {
+        listeners.add(listener)
+    }
+
+    private fun publish(updated: SkinConfigSnapshot) {
+        val previous = snapshot.getAndSet(updated)
+        if (previous == null || previous == updated) {
+            return
+        }
+        for (listener in listeners) {
+            try {
+                listener(updated)
+            } catch (e: Exception) {
+                XposedBridge.log("[$TAG]✗ 配置监听器异常: ${e.message}")
+            }
+        }
+    }
+
+    @Synchronized
+    private fun start(): SkinConfigSnapshot {
+        snapshot.get()?.let { return it }
+
+        val skinDir = File(SkinConstants.EXTERNAL_STORAGE_PATH)
+        skinDir.parentFile?.let { parent ->
+            if (!parent.exists()) {
+                parent.mkdirs()
+            }
+            watchParentDir(parent, skinDir.name)
+        }
+        watchSkinDir(skinDir)
+
+        return refresh()
+    }
+
+    /**
+     * 监听皮肤目录本身
+     *
+     * FileObserver 不递归，控制文件夹和 selected_skin 都是直接子项，足够使用
+     */
+    @Synchronized
+    private fun watchSkinDir(skinDir: File) {
+        skinDirObserver?.stopWatching()
+        skinDirObserver = null
+
+        if (!skinDir.isDirectory) {
+            return
+        }
+
+        skinDirObserver = object : FileObserver(skinDir.absolutePath, DIR_EVENTS) {
+            override fun onEvent(event: Int, path: String?) {
+                if (event and (DELETE_SELF or MOVE_SELF) != 0) {
+                    // 目录被删除或移走，等待父目录监听器重新挂载
+                    publish(SkinConfigSnapshot.EMPTY)
+                    return
+                }
+                if (path != null && isRelevant(path)) {
+                    refresh()
+                }
+            }
+        }.apply { startWatching() }
+    }
+
+    /**
+     * 监听父目录
+     *
+     * 皮肤目录被创建或重新创建时重新挂载监听器
+     */
+    private fun watchParentDir(parent: File, skinDirName: String) {
+        parentDirObserver = object : FileObserver(
+            parent.absolutePath,
+            FileObserver.CREATE or FileObserver.MOVED_TO or FileObserver.DELETE or FileObserver.MOVED_FROM
+        ) {
+            override fun onEvent(event: Int, path: String?) {
+                if (path != skinDirName) {
+                    return
+                }
+                watchSkinDir(File(parent, skinDirName))
+                refresh()
+            }
+        }.apply { startWatching() }
+    }
+
+    /**
+     * 判断变化的子项是否会影响快照
+     */
+    private fun isRelevant(name: String): Boolean {
+        return name == SELECTED_SKIN_FILE ||
+                name.startsWith("level_") ||
+                SkinOperation.values().any { File(it.filePath).name == name }
+    }
+
+    /**
+     * 从文件系统构建快照
+     *
+     * 一次 list() 代替逐个 exists() 检查，只有存在 selected_skin 时才读取内容
+     */
+    private fun load(): SkinConfigSnapshot {
+        return IoTrace.trace("read", SkinConstants.EXTERNAL_STORAGE_PATH) { loadUnmeasured() }
+    }
+
+    private fun loadUnmeasured(): SkinConfigSnapshot {
+        return try {
+            val names = File(SkinConstants.EXTERNAL_STORAGE_PATH).list()?.toHashSet()
+                ?: return SkinConfigSnapshot.EMPTY
+
+            val grade = GRADES.firstOrNull { names.contains("level_$it") }
+
+            val selectedSkin = if (names.contains(SELECTED_SKIN_FILE)) {
+                File(SkinConstants.EXTERNAL_STORAGE_PATH, SELECTED_SKIN_FILE)
+                    .readText().trim().takeIf { it.isNotEmpty() }
+            } else {
+                null
+            }
+
+            val pending = SkinOperation.values()
+                .filter { it != SkinOperation.ACTIVATE && names.contains(File(it.filePath).name) }
+                .toSet()
+
+            SkinConfigSnapshot(
+                memberGrade = grade,
+                selectedSkin = selectedSkin,
+                isActivated = names.contains(File(SkinOperation.ACTIVATE.filePath).name),
+                pendingOperations = pending
+            )
+        } catch (e: Exception) {
+            XposedBridge.log("[$TAG]✗ 读取皮肤配置失败: ${e.message}")
+            SkinConfigSnapshot.EMPTY
+        }
+    }
+}
@@ -2,14 +2,18 @@ package im.hoho.alipayInstallB.skin
 
 import android.os.Environment
 import de.robv.android.xposed.XC_MethodHook
-import de.robv.android.xposed.XposedHelpers
 import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.PerfTrace
+import im.hoho.alipayInstallB.hook.AlipayAccessors
+import im.hoho.alipayInstallB.hook.CompatCache
+import im.hoho.alipayInstallB.hook.CopyEngine
+import im.hoho.alipayInstallB.hook.HookPlan
+import im.hoho.alipayInstallB.hook.HookRegistry
+import im.hoho.alipayInstallB.hook.ModuleLog
+import im.hoho.alipayInstallB.hook.OperationExecutor
 import im.hoho.alipayInstallB.theme.ThemeManager
-import com.alibaba.fastjson.JSON
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileOutputStream
-import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * 皮肤模块 Hook 管理器
@@ -26,17 +30,11 @@ object SkinHook {
 
     // 存储路径常量
     private val EXTERNAL_STORAGE_PATH = "${Environment.getExternalStorageDirectory()}/Android/media/com.eg.android.AlipayGphone/000_HOHO_ALIPAY_SKIN"
-    private const val SKIN_DIR_IN_ALIPAY = "/data/data/com.eg.android.AlipayGphone/files/onsitepay_skin_dir/HOHO"
+    private const val SKIN_DIR_IN_ALIPAY = SkinModelCache.SKIN_DIR_IN_ALIPAY
 
-    // Hook 状态标记
+    // 是否已经尝试安装过 Hook（开关切换只修改 HookRegistry.SKIN.enabled）
     @Volatile
-    private var hooked = false
-
-    // 数据库更新标记（确保只更新一次）- 使用 AtomicBoolean 防止竞态条件
-    private val isDbUpdated = AtomicBoolean(false)
-
-    // 皮肤操作执行标记（确保同一时间只有一个线程在执行操作）
-    private val isOperationRunning = AtomicBoolean(false)
+    private var hooksInstalled = false
 
     /**
      * 保存ClassLoader供后续使用
@@ -72,45 +70,64 @@ object SkinHook {
         //XposedBridge.log("[$TAG]📝 更新皮肤模块Hook状态:")
         XposedBridge.log("[$TAG]  皮肤模块: ${if (enabled) "✅ 开启" else "⛔ 关闭"}")
 
-        // 先卸载所有现有Hook
-        unhook()
+        // 当前进程不渲染付款码和会员等级时不安装任何 Hook
+        if (!HookPlan.installsHooks()) {
+            return
+        }
+
+        // 回调在执行时检查开关，关闭时原方法照常执行
+        HookRegistry.SKIN.enabled = enabled
 
-        // 根据开关状态重新Hook
         if (enabled) {
-            try {
+            installHooks(classLoader)
+        } else {
+            XposedBridge.log("[$TAG]  ⚠️ 皮肤模块已关闭")
+        }
 
-                // Hook 会员等级转换
-                hookMemberGradeConversion(classLoader)
+        XposedBridge.log("[$TAG]皮肤模块Hook更新完成 ✅")
+    }
 
-                // Hook 登录结果中的会员等级
-                hookLoginResultMemberGrade(classLoader)
+    /**
+     * 安装所有皮肤 Hook
+     *
+     * 只在首次开启时执行一次，之后的开关切换不再进入 Hook 安装流程
+     */
+    @Synchronized
+    private fun installHooks(classLoader: ClassLoader) {
+        if (hooksInstalled) {
+            return
+        }
+        hooksInstalled = true
 
-                // Hook Activity.onCreate 直接修改数据库
-                hookActivityOnCreate(classLoader)
+        try {
+            // Hook 会员等级转换
+            hookMemberGradeConversion(classLoader)
 
-                // Hook 皮肤资源加载
-                hookSkinResourceLoading(classLoader)
+            // Hook 登录结果中的会员等级
+            hookLoginResultMemberGrade(classLoader)
 
-                hooked = true
-            } catch (t: Throwable) {
-                XposedBridge.log("[$TAG]✗ 皮肤模块Hook注册失败")
-                XposedBridge.log(t)
-            }
-        } else {
-            XposedBridge.log("[$TAG]  ⚠️ 皮肤模块已关闭")
-        }
+            // Hook Activity.onCreate 获取 Context（用于同步数据库中的会员等级）
+            hookActivityOnCreate(classLoader)
 
-        XposedBridge.log("[$TAG]皮肤模块Hook更新完成 ✅")
+            // Hook 皮肤资源加载
+            hookSkinResourceLoading(classLoader)
+        } catch (t: Throwable) {
+            XposedBridge.log("[$TAG]✗ 皮肤模块Hook注册失败")
+            XposedBridge.log(t)
+        }
     }
 
     /**
      * 清理 Hooks
      *
-     * 重置 hook 状态标记
+     * 通过保存的 Unhook 句柄卸载所有皮肤 Hook，之后调用 updateHooks(true) 会重新安装
      */
     @JvmStatic
+    @Synchronized
     fun unhook() {
-        hooked = false
+        val count = HookRegistry.unhookAll(HookRegistry.SKIN)
+        hooksInstalled = false
+        XposedBridge.log("[$TAG] 已卸载 $count 个皮肤Hook")
     }
 
     /**
@@ -121,54 +138,37 @@ object SkinHook {
      */
     private fun hookMemberGradeConversion(classLoader: ClassLoader) {
         try {
-            val memberGradeEnumClass = XposedHelpers.findClass(
-                "com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum",
-                classLoader
-            )
-
-            // 添加防抖：记录上次修改时间，避免短时间内重复打印日志
-            var lastLogTime = 0L
+            // 枚举常量只解析一次，回调中不再按名称查找
+            val memberGradeEnum = AlipayAccessors.of(classLoader).mergeMemberGradeEnum
+                ?: throw ClassNotFoundException("com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum")
 
-            XposedHelpers.findAndHookMethod(
+            HookRegistry.hookMethod(
+                HookRegistry.SKIN,
                 "com.alipay.mobile.onsitepay9.utils.MergeMemberGradeEnum",
                 classLoader,
                 "convertMemberGrade",
                 String::class.java,
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
+                object : HookRegistry.FeatureHook(HookRegistry.SKIN, HookMetrics.HookId.CONVERT_MEMBER_GRADE) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
                         val currentGrade = getCurrentMemberGrade()
                         if (currentGrade != "original") {
-                            val gradeField = when (currentGrade) {
-                                "primary" -> "PRIMARY"
-                                "golden" -> "GOLDEN"
-                                "platinum" -> "PLATINUM"
-                                "diamond" -> "DIAMOND"
-                                else -> return
-                            }
-
                             try {
-                                val gradeValue = XposedHelpers.getStaticObjectField(
-                                    memberGradeEnumClass,
-                                    gradeField
-                                )
+                                val gradeValue = memberGradeEnum.valueOf(currentGrade) ?: return
 
                                 // 检查原始返回值是否已经是目标等级
-                                val originalResult = param.result
-                                if (originalResult != null && originalResult.toString() == gradeField) {
+                                if (param.result === gradeValue) {
                                     // 已经是目标等级，无需修改
                                     return
                                 }
 
                                 param.result = gradeValue
 
-                                // 防抖：只在距离上次日志超过5秒时才打印
-                                val currentTime = System.currentTimeMillis()
-                                if (currentTime - lastLogTime > 5000) {
-                                    XposedBridge.log("[$TAG]✓ 会员等级已修改: $currentGrade")
-                                    lastLogTime = currentTime
+                                // 限频：5秒内只记录一次
+                                if (ModuleLog.sampled("$TAG.convertMemberGrade", 5000)) {
+                                    ModuleLog.i(TAG, "✓ 会员等级已修改: $currentGrade")
                                 }
                             } catch (e: Exception) {
-                                XposedBridge.log(e)
+                                ModuleLog.e(TAG, "Hook回调异常", e)
                             }
                         }
                     }
@@ -188,15 +188,13 @@ object SkinHook {
      */
     private fun hookLoginResultMemberGrade(classLoader: ClassLoader) {
         try {
-            // 添加防抖：记录上次修改时间
-            var lastLogTime = 0L
-
-            XposedHelpers.findAndHookMethod(
+            HookRegistry.hookMethod(
+                HookRegistry.SKIN,
                 "com.alipay.mobilegw.biz.shared.processer.login.UserLoginResult",
                 classLoader,
                 "getExtResAttrs",
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
+                object : HookRegistry.FeatureHook(HookRegistry.SKIN, HookMetrics.HookId.GET_EXT_RES_ATTRS) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
                         @Suppress("UNCHECKED_CAST")
                         val map = param.result as? MutableMap<String, String> ?: return
 
@@ -211,11 +209,9 @@ object SkinHook {
 
                                 map["memberGrade"] = currentGrade
 
-                                // 防抖：只在距离上次日志超过5秒时才打印
-                                val currentTime = System.currentTimeMillis()
-                                if (currentTime - lastLogTime > 5000) {
-                                    XposedBridge.log("[$TAG]✓ 登录数据会员等级已修改: $currentGrade")
-                                    lastLogTime = currentTime
+                                // 限频：5秒内只记录一次
+                                if (ModuleLog.sampled("$TAG.getExtResAttrs", 5000)) {
+                                    ModuleLog.i(TAG, "✓ 登录数据会员等级已修改: $currentGrade")
                                 }
                             }
                         }
@@ -236,65 +232,50 @@ object SkinHook {
      */
     private fun hookSkinResourceLoading(classLoader: ClassLoader) {
         try {
-            val ospSkinModelClass = classLoader.loadClass(
-                "com.alipay.mobile.onsitepaystatic.skin.OspSkinModel"
+            val ospSkinModelClass = CompatCache.findClass(
+                "com.alipay.mobile.onsitepaystatic.skin.OspSkinModel",
+                classLoader
             )
+            if (ospSkinModelClass == null) {
+                XposedBridge.log("[$TAG]✗ OspSkinModel 不存在，跳过皮肤资源Hook")
+                return
+            }
 
-            // 添加防抖：记录上次加载时间
-            var lastLoadTime = 0L
+            // 按选中皮肤缓存已构建的皮肤模型
+            val skinModelCache = SkinModelCache(ospSkinModelClass, "Sesame Skin")
 
-            XposedHelpers.findAndHookMethod(
+            HookRegistry.hookMethod(
+                HookRegistry.SKIN,
                 "com.alipay.mobile.onsitepaystatic.ConfigUtilBiz",
                 classLoader,
                 "getFacePaySkinModel",
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
-                        val skinDirInAlipay = File(SKIN_DIR_IN_ALIPAY)
-                        val skinActivated = File(EXTERNAL_STORAGE_PATH, "actived")
+                object : HookRegistry.FeatureHook(HookRegistry.SKIN, HookMetrics.HookId.GET_FACE_PAY_SKIN_MODEL) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
+                        val config = SkinConfigStore.current()
 
-                        // 处理主题操作（导出、删除、更新）
-                        try {
-                            ThemeManager.handleThemeOperations()
-                        } catch (e: Exception) {
-                            XposedBridge.log("[$TAG]主题操作处理异常: ${e.message}")
-                        }
+                        // 主题操作（导出、删除、更新）交给后台执行器
+                        ThemeManager.requestThemeOperations()
 
-                        // 处理皮肤操作（导出、删除、更新）
-                        handleSkinOperations(skinDirInAlipay)
+                        // 皮肤操作交给后台执行器，Hook 立即返回当前可用的皮肤
+                        if (config.hasPendingOperations) {
+                            OperationExecutor.submitOnce(OperationExecutor.KEY_SKIN_OPERATIONS) {
+                                handleSkinOperations(File(SKIN_DIR_IN_ALIPAY))
+                            }
+                        }
 
                         // 如果皮肤已激活且存在，则加载自定义皮肤
-                        if (skinDirInAlipay.exists() && skinActivated.exists()) {
-                            val availableSkins = searchAvailableSkins(SKIN_DIR_IN_ALIPAY)
-
-                            if (availableSkins.isNotEmpty()) {
+                        if (config.isActivated) {
+                            try {
                                 // 读取用户选择的皮肤，如果没有选择则使用第一个
-                                val selectedSkin = getSelectedSkinName() ?: availableSkins.firstOrNull() ?: return
-
-                                // 构建皮肤模型 JSON
-                                val skinModelJson = """
-                                    {
-                                        "md5": "HOHO_MD5",
-                                        "minWalletVersion": "10.2.23.0000",
-                                        "outDirName": "HOHO/$selectedSkin",
-                                        "skinId": "HOHO_CUSTOMIZED",
-                                        "skinStyleId": "Sesame Skin",
-                                        "userId": "HOHO"
-                                    }
-                                """.trimIndent()
-
-                                try {
-                                    val skinModel = JSON.parseObject(skinModelJson, ospSkinModelClass)
-                                    param.result = skinModel
-
-                                    // 防抖：只在距离上次日志超过3秒时才打印
-                                    val currentTime = System.currentTimeMillis()
-                                    if (currentTime - lastLoadTime > 3000) {
-                                        XposedBridge.log("[$TAG]✓ 自定义皮肤已应用: $selectedSkin")
-                                        lastLoadTime = currentTime
-                                    }
-                                } catch (e: Exception) {
-                                    XposedBridge.log(e)
+                                val skinModel = skinModelCache.get(config.selectedSkin) ?: return
+                                param.result = skinModel
+
+                                // 限频：3秒内只记录一次
+                                if (ModuleLog.sampled("$TAG.getFacePaySkinModel", 3000)) {
+                                    ModuleLog.i(TAG, "✓ 自定义皮肤已应用: ${config.selectedSkin ?: "默认"}")
                                 }
+                            } catch (e: Exception) {
+                                ModuleLog.e(TAG, "Hook回调异常", e)
                             }
                         }
                     }
@@ -313,283 +294,124 @@ object SkinHook {
      *
      * 处理导出、删除、更新等皮肤操作
      * 通过检查控制文件夹来执行相应的操作
-     * 使用 AtomicBoolean 确保同一时间只有一个线程在执行操作
+     * 只在 OperationExecutor 的后台线程中执行，同一时间只有一个操作在运行
      *
      * @param skinDirInAlipay 支付宝内部的皮肤目录
      */
     private fun handleSkinOperations(skinDirInAlipay: File) {
-        // 使用 compareAndSet 确保只有一个线程能执行操作
-        // 如果已经有线程在执行（值为 true），则跳过
-        if (!isOperationRunning.compareAndSet(false, true)) {
-            return
-        }
+        PerfTrace.section("skinOperations") {
+            try {
+                val externalSkinDir = File(EXTERNAL_STORAGE_PATH)
+                val exportDir = File(externalSkinDir, "export")
+                val deleteDir = File(externalSkinDir, "delete")
+                val updateDir = File(externalSkinDir, "update")
 
-        try {
-            val externalSkinDir = File(EXTERNAL_STORAGE_PATH)
-            val exportDir = File(externalSkinDir, "export")
-            val deleteDir = File(externalSkinDir, "delete")
-            val updateDir = File(externalSkinDir, "update")
-
-            // 处理导出操作（导出整个 onsitepay_skin_dir 目录）
-            if (exportDir.exists()) {
-                val alipaySkinsRoot = File("/data/data/com.eg.android.AlipayGphone/files/onsitepay_skin_dir")
-
-                if (!alipaySkinsRoot.exists()) {
-                    XposedBridge.log("[$TAG]✗ 皮肤导出失败: 目录不存在")
-                } else {
-                    val exportTargetDir = File(externalSkinDir, "exported_skins")
-                    if (exportTargetDir.exists()) {
-                        exportTargetDir.deleteRecursively()
-                    }
-                    exportTargetDir.mkdirs()
+                // 处理导出操作（导出整个 onsitepay_skin_dir 目录）
+                if (exportDir.exists()) {
+                    val alipaySkinsRoot = File("/data/data/com.eg.android.AlipayGphone/files/onsitepay_skin_dir")
 
-                    var exportCount = 0
-                    alipaySkinsRoot.listFiles()?.forEach { skinFolder ->
-                        if (skinFolder.isDirectory) {
-                            try {
-                                val targetDir = File(exportTargetDir, skinFolder.name)
-                                copyDirectory(skinFolder, targetDir)
-                                exportCount++
-                            } catch (e: Exception) {
-                                // 静默失败，避免日志过多
+                    if (!alipaySkinsRoot.exists()) {
+                        XposedBridge.log("[$TAG]✗ 皮肤导出失败: 目录不存在")
+                    } else {
+                        val exportTargetDir = File(externalSkinDir, "exported_skins")
+                        if (exportTargetDir.exists()) {
+                            exportTargetDir.deleteRecursively()
+                        }
+                        exportTargetDir.mkdirs()
+
+                        var exportCount = 0
+                        var failedCount = 0
+                        PerfTrace.section("export") {
+                            alipaySkinsRoot.listFiles()?.forEach { skinFolder ->
+                                if (skinFolder.isDirectory) {
+                                    val result = CopyEngine.copy(skinFolder, File(exportTargetDir, skinFolder.name))
+                                    exportCount++
+                                    failedCount += result.failures.size
+                                }
                             }
                         }
-                    }
 
-                    if (exportCount > 0) {
-                        XposedBridge.log("[$TAG]✓ 皮肤已导出: $exportCount 个目录")
+                        if (exportCount > 0) {
+                            XposedBridge.log("[$TAG]✓ 皮肤已导出: $exportCount 个目录")
+                        }
+                        if (failedCount > 0) {
+                            XposedBridge.log("[$TAG]✗ 皮肤导出时 $failedCount 个文件复制失败")
+                        }
                     }
-                }
-
-                exportDir.deleteRecursively()
-            }
 
-            // 处理删除操作
-            if (deleteDir.exists()) {
-                if (skinDirInAlipay.exists()) {
-                    skinDirInAlipay.deleteRecursively()
-                    XposedBridge.log("[$TAG]✓ 皮肤缓存已删除")
-                }
-                deleteDir.deleteRecursively()
-            }
-
-            // 处理更新操作
-            if (updateDir.exists()) {
-                if (skinDirInAlipay.exists()) {
-                    skinDirInAlipay.deleteRecursively()
+                    exportDir.deleteRecursively()
                 }
 
-                if (externalSkinDir.exists()) {
-                    if (!skinDirInAlipay.exists()) {
-                        skinDirInAlipay.mkdirs()
-                    }
-
-                    copyDirectoryContents(externalSkinDir, skinDirInAlipay)
-
+                // 处理删除操作
+                if (deleteDir.exists()) {
                     if (skinDirInAlipay.exists()) {
-                        XposedBridge.log("[$TAG]✓ 皮肤缓存已更新")
-                    } else {
-                        XposedBridge.log("[$TAG]✗ 皮肤更新失败")
+                        PerfTrace.section("delete") { SkinSync.remove(skinDirInAlipay) }
+                        XposedBridge.log("[$TAG]✓ 皮肤缓存已删除")
                     }
-                } else {
-                    XposedBridge.log("[$TAG]✗ 皮肤更新失败: 源目录不存在")
+                    deleteDir.deleteRecursively()
                 }
-                updateDir.deleteRecursively()
-            }
-        } catch (e: Exception) {
-            XposedBridge.log("[$TAG]✗ 皮肤操作异常: ${e.message}")
-            XposedBridge.log(e)
-        } finally {
-            // 操作完成后重置标志，允许下次操作
-            isOperationRunning.set(false)
-        }
-    }
 
-    /**
-     * 复制目录内容
-     *
-     * 将源目录的所有内容复制到目标目录（不包括源目录本身）
-     * 这与原代码的 copy 方法行为一致
-     *
-     * @param source 源目录
-     * @param destination 目标目录
-     */
-    private fun copyDirectoryContents(source: File, destination: File) {
-        if (!source.exists() || !source.isDirectory) {
-            return
-        }
-
-        if (!destination.exists()) {
-            destination.mkdirs()
-        }
-
-        source.listFiles()?.forEach { file ->
-            val destFile = File(destination, file.name)
-            if (file.isDirectory) {
-                copyDirectory(file, destFile)
-            } else {
-                copyFile(file, destFile)
-            }
-        }
-    }
-
-    /**
-     * 复制目录
-     *
-     * 递归复制整个目录及其内容
-     *
-     * @param source 源目录
-     * @param destination 目标目录
-     */
-    private fun copyDirectory(source: File, destination: File) {
-        if (!source.exists()) return
+                // 处理更新操作（按清单增量同步到暂存目录，完成后原子切换）
+                if (updateDir.exists()) {
+                    val result = PerfTrace.section("install") { SkinSync.install(externalSkinDir, skinDirInAlipay) }
 
-        if (source.isDirectory) {
-            // 创建目标目录
-            if (!destination.exists()) {
-                destination.mkdirs()
-            }
-
-            // 复制所有子文件和子目录
-            source.listFiles()?.forEach { file ->
-                val destFile = File(destination, file.name)
-                if (file.isDirectory) {
-                    copyDirectory(file, destFile)
-                } else {
-                    copyFile(file, destFile)
-                }
-            }
-        } else {
-            // 复制单个文件
-            copyFile(source, destination)
-        }
-    }
-
-    /**
-     * 复制文件
-     *
-     * 将源文件复制到目标位置
-     *
-     * @param source 源文件
-     * @param destination 目标文件
-     */
-    private fun copyFile(source: File, destination: File) {
-        try {
-            FileInputStream(source).use { input ->
-                FileOutputStream(destination).use { output ->
-                    input.copyTo(output)
+                    if (result.isSuccess) {
+                        XposedBridge.log("[$TAG]✓ 皮肤缓存已更新（$result）")
+                    } else {
+                        XposedBridge.log("[$TAG]✗ 皮肤更新失败（$result）: ${result.copy.failures.first().error.message}")
+                    }
+                    updateDir.deleteRecursively()
                 }
-            }
-        } catch (e: Exception) {
-            // 静默失败
-        }
-    }
-
-    /**
-     * 搜索可用皮肤
-     *
-     * 扫描皮肤目录，查找所有可用的皮肤文件夹
-     * 排除控制文件夹（update、actived、delete、level_*）
-     *
-     * @param path 皮肤目录路径
-     * @return 可用皮肤列表
-     */
-    private fun searchAvailableSkins(path: String): List<String> {
-        val resultList = mutableListOf<String>()
-        val dir = File(path)
-
-        if (!dir.exists() || !dir.isDirectory) {
-            return resultList
-        }
-
-        dir.listFiles()?.forEach { file ->
-            if (file.isDirectory) {
-                val name = file.name
-                // 排除控制文件夹
-                if (name != "update" && 
-                    name != "actived" && 
-                    name != "delete" && 
-                    !name.startsWith("level_")) {
-                    resultList.add(name)
+            } catch (e: Exception) {
+                XposedBridge.log("[$TAG]✗ 皮肤操作异常: ${e.message}")
+                XposedBridge.log(e)
+            } finally {
+                // 控制文件夹已被删除，立即刷新配置快照；皮肤目录可能已变化，使模型缓存失效
+                PerfTrace.section("cache reload") {
+                    SkinConfigStore.refresh()
+                    SkinModelCache.invalidate()
                 }
             }
         }
-
-        return resultList
     }
 
     /**
-     * Hook Activity.onCreate 直接修改数据库
+     * Hook Activity.onCreate 获取 Context
      *
      * Hook: android.app.Activity.onCreate
-     * 功能：直接修改支付宝本地数据库中的会员等级，使变化立即生效
+     * 功能：拿到 Context 后交给 MemberGradeDbSync 在后台修改数据库中的会员等级，
+     * 同步成功后卸载自身（数据库尚未创建时在之后的 Activity 中重试），之后的会员等级变化由 MemberGradeDbSync 增量写入
      */
     private fun hookActivityOnCreate(classLoader: ClassLoader) {
         try {
-            XposedHelpers.findAndHookMethod(
-                "android.app.Activity",
-                classLoader,
+            HookRegistry.hookMethod(
+                HookRegistry.SKIN,
+                android.app.Activity::class.java,
                 "onCreate",
                 android.os.Bundle::class.java,
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
+                object : HookRegistry.FeatureHook(HookRegistry.SKIN) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
                         try {
-                            val currentGrade = getCurrentMemberGrade()
-                            if (currentGrade == "original") {
-                                return
-                            }
-
-                            if (!isDbUpdated.compareAndSet(false, true)) {
-                                return
-                            }
-
                             val context = param.thisObject as? android.content.Context ?: return
 
-                            // 设置 ThemeManager 的 Context 和 ClassLoader
-                            ThemeManager.setAppContext(context)
-                            ThemeManager.setClassLoader(context.classLoader)
-
-                            val dbFile = context.getDatabasePath("alipayclient.db")
-
-                            if (dbFile.exists()) {
-                                try {
-                                    val db = android.database.sqlite.SQLiteDatabase.openDatabase(
-                                        dbFile.path,
-                                        null,
-                                        android.database.sqlite.SQLiteDatabase.OPEN_READWRITE
-                                    )
-
-                                    db.use {
-                                        val cursor = it.rawQuery(
-                                            "SELECT memberGrade FROM 'main'.'userinfo' LIMIT 1",
-                                            null
-                                        )
-
-                                        var needUpdate = true
-                                        cursor.use { c ->
-                                            if (c.moveToFirst()) {
-                                                val existingGrade = c.getString(0)
-                                                if (existingGrade == currentGrade) {
-                                                    needUpdate = false
-                                                }
-                                            }
-                                        }
-
-                                        if (needUpdate) {
-                                            it.execSQL("UPDATE 'main'.'userinfo' SET 'memberGrade' = '$currentGrade'")
-                                            XposedBridge.log("[$TAG]✓ 数据库会员等级已更新: $currentGrade")
-                                        }
-                                    }
-                                } catch (e: Exception) {
-                                    XposedBridge.log("[$TAG]✗ 数据库更新失败: ${e.message}")
-                                    isDbUpdated.set(false)
-                                }
-                            } else {
-                                isDbUpdated.set(false)
+                            // 与原先一样不写入 unknown 等级
+                            if (MemberGradeDbSync.attach(context, skipUnknown = true)) {
+                                // 设置 ThemeManager 的 Context 和 ClassLoader
+                                ThemeManager.setAppContext(context)
+                                ThemeManager.setClassLoader(context.classLoader)
                             }
                         } catch (e: Exception) {
-                            XposedBridge.log(e)
-                            isDbUpdated.set(false)
+                            ModuleLog.e(TAG, "Hook回调异常", e)
+                        }
+
+                        // 数据库同步成功后不再需要 Context，之后不再为每个 Activity 分发回调
+                        if (MemberGradeDbSync.isSynced()) {
+                            HookRegistry.unhookMethod(
+                                HookRegistry.SKIN,
+                                android.app.Activity::class.java,
+                                "onCreate",
+                                android.os.Bundle::class.java
+                            )
                         }
                     }
                 }
@@ -605,41 +427,12 @@ object SkinHook {
     /**
      * 获取当前会员等级
      *
-     * 通过检查文件系统中的 level_ 文件夹来确定当前选中的会员等级
+     * 从内存中的配置快照读取，不访问文件系统
      *
      * @return 会员等级标识（primary/golden/platinum/diamond/original）
      */
     private fun getCurrentMemberGrade(): String {
-        val grades = arrayOf("primary", "golden", "platinum", "diamond")
-
-        for (grade in grades) {
-            val folder = File(EXTERNAL_STORAGE_PATH, "level_$grade")
-            if (folder.exists()) {
-                return grade
-            }
-        }
-
-        return "original"
-    }
-
-    /**
-     * 获取用户选择的皮肤名称
-     *
-     * 从 selected_skin 文件读取用户选择的皮肤
-     *
-     * @return 皮肤名称，如果没有选择则返回 null
-     */
-    private fun getSelectedSkinName(): String? {
-        return try {
-            val selectedFile = File(EXTERNAL_STORAGE_PATH, "selected_skin")
-            if (selectedFile.exists()) {
-                selectedFile.readText().trim().takeIf { it.isNotEmpty() }
-            } else {
-                null
-            }
-        } catch (e: Exception) {
-            XposedBridge.log(e)
-            null
-        }
+        val grade = SkinConfigStore.current().memberGrade
+        return if (grade == null || grade == "unknown") "original" else grade
     }
 }
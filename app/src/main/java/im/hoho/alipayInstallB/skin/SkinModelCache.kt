@@ -0,0 +1,272 @@
+package im.hoho.alipayInstallB.skin
+
+import android.os.FileObserver
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.ModuleLog
+import im.hoho.alipayInstallB.hook.OperationExecutor
+import java.io.File
+import java.lang.reflect.Constructor
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 皮肤模型缓存
+ *
+ * 按 outDirName 缓存已构建的 OspSkinModel 实例，以及 onsitepay_skin_dir/HOHO 中已安装的皮肤列表
+ * 只有 HOHO 目录或皮肤配置变化时才重新扫描和构建，getFacePaySkinModel 的重复调用直接返回现成对象
+ * 选中的皮肤没有复制到 HOHO 时，通过 files/hoho_module/skin_ext 链接（[SkinSync.linkExternal]）
+ * 直接使用外部皮肤库中的目录，复制（更新操作）只是可选的缓存
+ * 外部皮肤库的链接和扫描在 OperationExecutor 的后台线程中执行，Hook 线程只读取上次的扫描结果；
+ * 冷启动后第一次扫描完成前，选中的皮肤不在 HOHO 中时直接通过链接确认一次
+ * 模型通过解析一次的 setter / 字段直接赋值，不经过 JSON，支付宝进程中不加载 fastjson
+ *
+ * @param ospSkinModelClass 支付宝的 OspSkinModel 类（每个 ClassLoader 一个缓存实例）
+ * @param skinStyleId 写入皮肤模型的 skinStyleId
+ */
+class SkinModelCache(
+    private val ospSkinModelClass: Class<*>,
+    private val skinStyleId: String
+) {
+
+    /**
+     * 已安装皮肤的扫描结果
+     */
+    private class Installed(
+        val version: Int,
+        val exists: Boolean,
+        val skins: List<String>
+    )
+
+    @Volatile
+    private var installed: Installed? = null
+
+    // outDirName -> 已构建的 OspSkinModel
+    private val models = ConcurrentHashMap<String, Any>()
+
+    // OspSkinModel 的构造方法和各属性的写入方式，首次构建模型时解析一次
+    private val constructor: Constructor<*> by lazy {
+        ospSkinModelClass.getDeclaredConstructor().apply { isAccessible = true }
+    }
+    private val writers: Map<String, (Any, String) -> Unit> by lazy {
+        MODEL_PROPERTIES.associateWith { writerFor(it) }
+    }
+
+    /**
+     * HOHO 目录是否存在（不包括外部皮肤库）
+     */
+    fun isInstalled(): Boolean = installed().exists
+
+    /**
+     * HOHO 中已安装的皮肤列表（排除控制文件夹，不包括外部皮肤库）
+     */
+    fun installedSkins(): List<String> = installed().skins
+
+    /**
+     * 获取选中皮肤的模型
+     *
+     * 优先使用 HOHO 中已复制的皮肤；选中的皮肤只存在于外部皮肤库时直接使用外部目录
+     * 没有选择时使用第一个已安装的皮肤
+     *
+     * @param selectedSkin 用户选择的皮肤名称
+     * @return 皮肤模型，HOHO 和外部皮肤库中都没有该皮肤时返回 null
+     */
+    fun get(selectedSkin: String?): Any? {
+        val current = installed()
+        val external = externalSkins
+        val skinName = selectedSkin
+            ?: current.skins.firstOrNull()
+            ?: external.firstOrNull()
+            ?: return null
+        if (skinName in current.skins) {
+            return modelFor(skinName)
+        }
+        if (skinName in external || (!externalScanned && existsExternally(skinName))) {
+            return model("${SkinSync.EXTERNAL_OUT_DIR}/$skinName")
+        }
+        return null
+    }
+
+    /**
+     * 外部皮肤库尚未扫描完成时，通过链接确认单个皮肤是否存在
+     */
+    private fun existsExternally(skinName: String): Boolean {
+        // outDirName 相对于 onsitepay_skin_dir
+        val dir = File(File(SKIN_DIR_IN_ALIPAY).parentFile, "${SkinSync.EXTERNAL_OUT_DIR}/$skinName")
+        return IoTrace.trace("stat", dir) { dir.isDirectory }
+    }
+
+    /**
+     * 获取指定子目录的皮肤模型
+     *
+     * 模型只在首次请求或 HOHO 目录变化后构建一次
+     *
+     * @param skinName HOHO 下的子目录名称
+     */
+    fun modelFor(skinName: String): Any = model("HOHO/$skinName")
+
+    private fun model(outDirName: String): Any {
+        // 先确认缓存版本，目录变化后会清空旧模型
+        installed()
+        models[outDirName]?.let {
+            HookMetrics.increment(HookMetrics.Counter.SKIN_MODEL_HITS)
+            return it
+        }
+        HookMetrics.increment(HookMetrics.Counter.SKIN_MODEL_MISSES)
+        return models.getOrPut(outDirName) { buildModel(outDirName) }
+    }
+
+    private fun installed(): Installed {
+        val version = installedVersion.get()
+        val current = installed
+        if (current != null && current.version == version) {
+            return current
+        }
+
+        synchronized(this) {
+            installed?.let { if (it.version == version) return it }
+
+            models.clear()
+            val scanned = scan(version)
+            installed = scanned
+            return scanned
+        }
+    }
+
+    /**
+     * 扫描 HOHO 目录
+     *
+     * 排除控制文件夹（update、actived、delete、export、level_*）和 exported_skins
+     */
+    private fun scan(version: Int): Installed {
+        val dir = File(SKIN_DIR_IN_ALIPAY)
+        val files = IoTrace.trace("list", dir) { dir.listFiles() }
+            ?: return Installed(version, false, emptyList())
+
+        val skins = files.filter { it.isDirectory && SkinSync.isSkinFolder(it.name) }.map { it.name }
+
+        watch(dir)
+        return Installed(version, true, skins)
+    }
+
+    private fun buildModel(outDirName: String): Any {
+        val values = mapOf(
+            "md5" to "HOHO_MD5",
+            "minWalletVersion" to "10.2.23.0000",
+            "outDirName" to outDirName,
+            "skinId" to "HOHO_CUSTOMIZED",
+            "skinStyleId" to skinStyleId,
+            "userId" to "HOHO"
+        )
+        return HookMetrics.measure(HookMetrics.Phase.REFLECTION) {
+            val model = constructor.newInstance()
+            for ((property, value) in values) {
+                writers[property]?.invoke(model, value)
+            }
+            model
+        }
+    }
+
+    /**
+     * 解析属性的写入方式
+     *
+     * 与 fastjson 的绑定顺序一致：优先 public setter，其次字段（包括父类）
+     */
+    private fun writerFor(property: String): (Any, String) -> Unit {
+        val setterName = "set" + property[0].uppercaseChar() + property.substring(1)
+        try {
+            val setter = ospSkinModelClass.getMethod(setterName, String::class.java)
+            return { model, value -> setter.invoke(model, value) }
+        } catch (e: NoSuchMethodException) {
+            // 没有 setter，查找字段
+        }
+
+        var current: Class<*>? = ospSkinModelClass
+        while (current != null) {
+            try {
+                val field = current.getDeclaredField(property).apply { isAccessible = true }
+                return { model, value -> field.set(model, value) }
+            } catch (e: NoSuchFieldException) {
+                current = current.superclass
+            }
+        }
+
+        ModuleLog.w(TAG, "OspSkinModel 没有属性 $property，已跳过")
+        return { _, _ -> }
+    }
+
+    companion object {
+        private const val TAG = "SkinModelCache"
+
+        // 写入皮肤模型的属性
+        private val MODEL_PROPERTIES = listOf("md5", "minWalletVersion", "outDirName", "skinId", "skinStyleId", "userId")
+
+        const val SKIN_DIR_IN_ALIPAY = "/data/data/com.eg.android.AlipayGphone/files/onsitepay_skin_dir/HOHO"
+
+        // HOHO 目录的变更版本号，所有缓存实例共享
+        private val installedVersion = AtomicInteger()
+
+        // 外部皮肤库中的皮肤，由后台线程更新
+        @Volatile
+        private var externalSkins: Set<String> = emptySet()
+
+        // 外部皮肤库是否已扫描过至少一次
+        @Volatile
+        private var externalScanned = false
+
+        // 保持强引用，避免 FileObserver 被回收
+        private var observer: FileObserver? = null
+
+        init {
+            // 选中的皮肤变化时重新确认它在 HOHO 还是外部皮肤库中
+            SkinConfigStore.addListener { invalidate() }
+            scanExternal()
+        }
+
+        /**
+         * 标记 HOHO 目录已变化
+         *
+         * 皮肤操作（删除、更新）完成后或皮肤配置变化时调用，下次获取模型时重新扫描，
+         * 外部皮肤库在后台重新扫描
+         */
+        @JvmStatic
+        fun invalidate() {
+            installedVersion.incrementAndGet()
+            scanExternal()
+        }
+
+        /**
+         * 在后台线程中确认外部皮肤库链接可用，并列出其中的皮肤
+         */
+        private fun scanExternal() {
+            OperationExecutor.submit(OperationExecutor.KEY_SKIN_EXTERNAL_SCAN) {
+                val external = File(SkinConstants.EXTERNAL_STORAGE_PATH)
+                externalSkins = if (!SkinSync.linkExternal(File(SKIN_DIR_IN_ALIPAY), external)) {
+                    emptySet()
+                } else {
+                    val files = IoTrace.trace("list", external) { external.listFiles() }
+                    files?.filter { it.isDirectory && SkinSync.isSkinFolder(it.name) }
+                        ?.mapTo(LinkedHashSet()) { it.name }
+                        ?: emptySet()
+                }
+                externalScanned = true
+            }
+        }
+
+        /**
+         * 监听 HOHO 目录，目录内容变化时使缓存失效
+         */
+        @Synchronized
+        private fun watch(dir: File) {
+            observer?.stopWatching()
+            observer = object : FileObserver(
+                dir.absolutePath,
+                CREATE or DELETE or MOVED_FROM or MOVED_TO or DELETE_SELF or MOVE_SELF
+            ) {
+                override fun onEvent(event: Int, path: String?) {
+                    invalidate()
+                }
+            }.apply { startWatching() }
+        }
+    }
+}
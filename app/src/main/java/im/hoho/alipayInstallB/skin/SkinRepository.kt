@@ -3,6 +3,7 @@ package im.hoho.alipayInstallB.skin
 import android.content.Context
 import android.content.SharedPreferences
 import android.net.Uri
+import im.hoho.alipayInstallB.hook.CopyEngine
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
@@ -427,7 +428,7 @@ class SkinRepository(private val context: Context) {
             targetDir.parentFile?.mkdirs()
 
             // 复制皮肤文件夹到目标位置
-            copyDirectory(skinFolder, targetDir)
+            CopyEngine.copy(skinFolder, targetDir).throwIfFailed()
 
             // 清理临时文件
             tempZipFile.delete()
@@ -495,58 +496,6 @@ class SkinRepository(private val context: Context) {
         return backgroundFiles.any { File(folder, it).exists() }
     }
 
-    /**
-     * 复制目录
-     *
-     * 递归复制整个目录及其内容
-     *
-     * @param source 源目录
-     * @param destination 目标目录
-     */
-    private fun copyDirectory(source: File, destination: File) {
-        if (!source.exists()) return
-
-        if (source.isDirectory) {
-            // 创建目标目录
-            if (!destination.exists()) {
-                destination.mkdirs()
-            }
-
-            // 复制所有子文件和子目录
-            source.listFiles()?.forEach { file ->
-                val destFile = File(destination, file.name)
-                if (file.isDirectory) {
-                    copyDirectory(file, destFile)
-                } else {
-                    copyFile(file, destFile)
-                }
-            }
-        } else {
-            // 复制单个文件
-            copyFile(source, destination)
-        }
-    }
-
-    /**
-     * 复制文件
-     *
-     * 将源文件复制到目标位置
-     *
-     * @param source 源文件
-     * @param destination 目标文件
-     */
-    private fun copyFile(source: File, destination: File) {
-        try {
-            source.inputStream().use { input ->
-                destination.outputStream().use { output ->
-                    input.copyTo(output)
-                }
-            }
-        } catch (e: Exception) {
-            // 忽略复制错误
-        }
-    }
-
     /**
      * 从URI导入皮肤目录
      *
@@ -590,7 +539,7 @@ class SkinRepository(private val context: Context) {
             targetDir.parentFile?.mkdirs()
 
             // 复制皮肤文件夹到目标位置
-            copyDirectory(skinFolder, targetDir)
+            CopyEngine.copy(skinFolder, targetDir).throwIfFailed()
 
             // 清理临时文件
             tempDir.deleteRecursively()
@@ -0,0 +1,401 @@
+package im.hoho.alipayInstallB.skin
+
+import android.system.ErrnoException
+import android.system.Os
+import android.system.OsConstants
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.CopyEngine
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+
+/**
+ * 皮肤增量同步与分阶段安装（Hook层使用）
+ *
+ * 更新操作不再删除整个 onsitepay_skin_dir/HOHO 后全量复制，而是对比清单只处理变化的文件：
+ * 1. 清单（[MANIFEST_NAME]）保存在每一代皮肤目录中，记录每个文件的相对路径、大小、修改时间和快速哈希
+ * 2. 只同步 000_HOHO_ALIPAY_SKIN 下的皮肤目录，跳过控制文件夹（export、delete、update、actived、level_*）、
+ *    exported_skins 和顶层的配置文件
+ * 3. 大小和修改时间都没变的文件直接跳过；只有修改时间变化时再比较快速哈希（首尾各 64KB 的 CRC32）
+ * 4. 新增或变化的文件通过 [CopyEngine] 并行复制，源中已不存在的文件不再出现在新一代中
+ * 5. 复制失败的文件不写入清单，下次更新时重试
+ *
+ * 安装是分阶段的，Hook 永远看不到写了一半的目录：
+ * 1. HOHO 是指向 files/hoho_module/skin_generations/<代号> 的符号链接
+ * 2. 新一代先在旁边的暂存目录中组装：未变化的文件从当前一代硬链接过来（不复制数据），变化的文件复制进来
+ * 3. 组装完成后新建临时符号链接并 rename 覆盖 HOHO，切换是原子的；切换前旧一代始终完整可读
+ * 4. 旧一代保留到下一次安装开始时再删除，切换瞬间仍在读取旧路径的调用不受影响
+ * 5. 中途崩溃只会留下未发布的暂存目录，HOHO 仍指向旧一代，下一次安装时清理
+ *
+ * 没有清单（首次使用或清单损坏）时全量复制一次；旧版本留下的普通 HOHO 目录在首次安装时被替换为符号链接
+ *
+ * 复制只是可选的缓存：[linkExternal] 维护 files/hoho_module/skin_ext -> 000_HOHO_ALIPAY_SKIN 的链接，
+ * 没有复制过的皮肤由 [SkinModelCache] 直接从外部皮肤库提供
+ * 链接放在 onsitepay_skin_dir 之外，支付宝递归清理皮肤目录时不会进入外部皮肤库
+ */
+object SkinSync {
+
+    // 指向外部皮肤库的链接（相对支付宝 files 目录）
+    private const val EXTERNAL_LINK = "hoho_module/skin_ext"
+
+    /** 未复制的皮肤使用的 outDirName 前缀（相对 onsitepay_skin_dir），即 "<前缀>/<皮肤>" */
+    const val EXTERNAL_OUT_DIR = "../$EXTERNAL_LINK"
+
+    /** 清单文件名（位于每一代皮肤目录中，不是目录，不会被当作皮肤） */
+    const val MANIFEST_NAME = ".hoho_manifest"
+
+    private const val MANIFEST_HEADER = "hoho-skin-manifest v1"
+
+    // 各代皮肤目录所在位置（相对支付宝 files 目录）
+    private const val GENERATIONS_DIR = "hoho_module/skin_generations"
+
+    // 不属于皮肤的顶层文件夹
+    private val CONTROL_FOLDERS = setOf("export", "delete", "update", "actived", "exported_skins")
+
+    // 快速哈希读取的首尾长度
+    private const val HASH_SAMPLE = 64 * 1024
+
+    /**
+     * 清单中的一个文件
+     */
+    private class Entry(val size: Long, val mtime: Long, val hash: Long)
+
+    /**
+     * 同步结果
+     *
+     * @param copied 复制的文件数
+     * @param deleted 删除的文件数
+     * @param unchanged 未变化的文件数
+     * @param full 是否为全量复制（没有可用的清单）
+     * @param published 新一代是否已发布（有文件复制失败时不发布，HOHO 保持不变）
+     * @param copy 本次复制的结果
+     */
+    class Result(
+        val copied: Int,
+        val deleted: Int,
+        val unchanged: Int,
+        val full: Boolean,
+        val published: Boolean,
+        val copy: CopyEngine.Result
+    ) {
+        val isSuccess: Boolean
+            get() = published && copy.isSuccess
+
+        override fun toString(): String =
+            "${if (full) "全量" else "增量"}：复制 $copied 个，删除 $deleted 个，未变化 $unchanged 个" +
+                    (if (copy.isSuccess) "" else "，失败 ${copy.failures.size} 个") +
+                    if (published) "" else "，未发布"
+    }
+
+    /**
+     * 把外部皮肤目录安装到支付宝的 HOHO 目录
+     *
+     * 只在 OperationExecutor 的后台线程中调用
+     *
+     * @param source 000_HOHO_ALIPAY_SKIN
+     * @param skinDir onsitepay_skin_dir/HOHO
+     */
+    @JvmStatic
+    fun install(source: File, skinDir: File): Result {
+        val generations = generationsDir(skinDir)
+        val current = resolve(skinDir)
+
+        // 清理上一次安装保留的旧一代和崩溃留下的暂存目录
+        generations.listFiles()?.forEach { dir ->
+            if (dir != current) {
+                IoTrace.trace("delete", dir) { dir.deleteRecursively() }
+            }
+        }
+
+        val staging = File(generations, System.currentTimeMillis().toString())
+        if (!staging.mkdirs()) {
+            throw IOException("无法创建暂存目录 ${staging.path}")
+        }
+
+        val result = try {
+            sync(source, current, staging)
+        } catch (e: Exception) {
+            staging.deleteRecursively()
+            throw e
+        }
+        if (!result.copy.isSuccess) {
+            // 不发布不完整的一代，HOHO 保持原样
+            staging.deleteRecursively()
+            return result
+        }
+
+        publish(skinDir, staging)
+        return Result(result.copied, result.deleted, result.unchanged, result.full, true, result.copy)
+    }
+
+    /**
+     * 删除已安装的皮肤（HOHO 链接和所有代）
+     */
+    @JvmStatic
+    fun remove(skinDir: File) {
+        // 先删除链接，Hook 立即看到目录不存在，再删除实际内容
+        if (isSymlink(skinDir)) {
+            skinDir.delete()
+        } else if (skinDir.exists()) {
+            IoTrace.trace("delete", skinDir) { skinDir.deleteRecursively() }
+        }
+        val generations = generationsDir(skinDir)
+        IoTrace.trace("delete", generations) { generations.deleteRecursively() }
+    }
+
+    /**
+     * 确保 files/hoho_module/skin_ext 指向外部皮肤库
+     *
+     * 链接已正确时只需一次 lstat + readlink；需要修改时用 rename 原子替换
+     * 会访问外部存储，只在 OperationExecutor 的后台线程中调用
+     *
+     * @param skinDir onsitepay_skin_dir/HOHO
+     * @param external 000_HOHO_ALIPAY_SKIN
+     * @return 链接可用且外部皮肤库可读
+     */
+    @JvmStatic
+    fun linkExternal(skinDir: File, external: File): Boolean {
+        // onsitepay_skin_dir/HOHO -> files/hoho_module/skin_ext
+        val filesDir = skinDir.parentFile?.parentFile ?: return false
+        val link = File(filesDir, EXTERNAL_LINK)
+        val parent = link.parentFile ?: return false
+        try {
+            val current = if (isSymlink(link)) Os.readlink(link.path) else null
+            if (current != external.path) {
+                if (current == null && link.exists()) {
+                    // 名称被普通文件或目录占用，不覆盖
+                    return false
+                }
+                parent.mkdirs()
+                val temp = File(parent, "${link.name}.link")
+                temp.delete()
+                Os.symlink(external.path, temp.path)
+                Os.rename(temp.path, link.path)
+            }
+        } catch (e: ErrnoException) {
+            return false
+        }
+        return IoTrace.trace("stat", link) { link.isDirectory && link.canRead() }
+    }
+
+    /**
+     * 是否为皮肤文件夹（不是控制文件夹或导出目录）
+     */
+    @JvmStatic
+    fun isSkinFolder(name: String): Boolean {
+        return name !in CONTROL_FOLDERS && !name.startsWith("level_")
+    }
+
+    private fun generationsDir(skinDir: File): File {
+        // onsitepay_skin_dir/HOHO -> files/hoho_module/skin_generations
+        val filesDir = skinDir.parentFile?.parentFile ?: throw IOException("无效的皮肤目录 ${skinDir.path}")
+        return File(filesDir, GENERATIONS_DIR)
+    }
+
+    /**
+     * HOHO 当前指向的目录（旧版本的普通目录原样返回），不存在时返回 null
+     */
+    private fun resolve(skinDir: File): File? {
+        if (isSymlink(skinDir)) {
+            return try {
+                val target = File(Os.readlink(skinDir.path))
+                if (target.isDirectory) target else null
+            } catch (e: ErrnoException) {
+                null
+            }
+        }
+        return if (skinDir.isDirectory) skinDir else null
+    }
+
+    private fun isSymlink(file: File): Boolean {
+        return try {
+            OsConstants.S_ISLNK(Os.lstat(file.path).st_mode)
+        } catch (e: ErrnoException) {
+            false
+        }
+    }
+
+    /**
+     * 用 rename 把 HOHO 原子地切换到新一代
+     */
+    private fun publish(skinDir: File, generation: File) {
+        val link = File(skinDir.parentFile, "${skinDir.name}.link")
+        link.delete()
+        try {
+            Os.symlink(generation.path, link.path)
+            if (isSymlink(skinDir) || !skinDir.exists()) {
+                Os.rename(link.path, skinDir.path)
+            } else {
+                // 旧版本留下的普通目录：rename 不能覆盖非空目录，先移开再放入链接（只发生一次）
+                val legacy = File(skinDir.parentFile, "${skinDir.name}.legacy")
+                legacy.deleteRecursively()
+                Os.rename(skinDir.path, legacy.path)
+                Os.rename(link.path, skinDir.path)
+                IoTrace.trace("delete", legacy) { legacy.deleteRecursively() }
+            }
+        } catch (e: ErrnoException) {
+            link.delete()
+            throw IOException("切换皮肤目录失败: ${e.message}", e)
+        }
+    }
+
+    /**
+     * 以 [previous] 为基础在 [staging] 中组装新一代
+     */
+    private fun sync(source: File, previous: File?, staging: File): Result {
+        val previousManifest = previous?.let { readManifest(File(it, MANIFEST_NAME)) }
+        val full = previousManifest == null
+
+        // 扫描源目录
+        val current = LinkedHashMap<String, File>()
+        val roots = IoTrace.trace("list", source) { source.listFiles() } ?: emptyArray()
+        for (root in roots) {
+            if (root.isDirectory && isSkinFolder(root.name)) {
+                walk(root, root.name, current)
+            }
+        }
+
+        val installed = previousManifest ?: emptyMap()
+        val manifest = HashMap<String, Entry>()
+        val changed = LinkedHashMap<File, File>()
+        var unchanged = 0
+        for ((path, file) in current) {
+            val size = file.length()
+            val mtime = file.lastModified()
+            val old = installed[path]
+            val target = File(staging, path)
+            val existing = if (previous != null) File(previous, path) else null
+            if (old != null && existing != null && old.size == size && existing.length() == size) {
+                // 只有修改时间变化（例如重新解压了同一个皮肤包）时比较内容
+                val hash = if (old.mtime == mtime) old.hash else fastHash(file)
+                if (hash == old.hash && link(existing, target)) {
+                    manifest[path] = Entry(size, mtime, hash)
+                    unchanged++
+                    continue
+                }
+            }
+            changed[file] = target
+        }
+        val deleted = installed.keys.count { !current.containsKey(it) }
+
+        val copy = CopyEngine.copyFiles(changed)
+        val failed = copy.failures.mapTo(HashSet()) { it.source }
+        for ((path, file) in current) {
+            if (file in changed && file !in failed) {
+                manifest[path] = Entry(file.length(), file.lastModified(), fastHash(file))
+            }
+        }
+
+        writeManifest(File(staging, MANIFEST_NAME), manifest)
+        return Result(changed.size - failed.size, deleted, unchanged, full, false, copy)
+    }
+
+    /**
+     * 把未变化的文件硬链接到暂存目录
+     *
+     * 新一代只会新建文件、不会写入已有文件，共享 inode 是安全的
+     *
+     * @return false=无法链接（例如跨文件系统），改为复制
+     */
+    private fun link(existing: File, target: File): Boolean {
+        target.parentFile?.let { if (!it.exists()) it.mkdirs() }
+        return try {
+            Os.link(existing.path, target.path)
+            true
+        } catch (e: ErrnoException) {
+            false
+        }
+    }
+
+    private fun walk(dir: File, relative: String, out: MutableMap<String, File>) {
+        val children = IoTrace.trace("list", dir) { dir.listFiles() } ?: return
+        for (child in children) {
+            val path = "$relative/${child.name}"
+            if (child.isDirectory) {
+                walk(child, path, out)
+            } else {
+                out[path] = child
+            }
+        }
+    }
+
+    /**
+     * 快速哈希：文件大小 + 首尾各 [HASH_SAMPLE] 字节的 CRC32
+     */
+    private fun fastHash(file: File): Long = IoTrace.trace("read", file) {
+        val crc = CRC32()
+        RandomAccessFile(file, "r").use { raf ->
+            val length = raf.length()
+            val buffer = ByteArray(HASH_SAMPLE)
+            val head = raf.read(buffer, 0, minOf(length, HASH_SAMPLE.toLong()).toInt())
+            if (head > 0) {
+                crc.update(buffer, 0, head)
+            }
+            if (length > HASH_SAMPLE * 2L) {
+                raf.seek(length - HASH_SAMPLE)
+                raf.readFully(buffer)
+                crc.update(buffer)
+            } else if (length > HASH_SAMPLE) {
+                raf.seek(HASH_SAMPLE.toLong())
+                val tail = raf.read(buffer, 0, (length - HASH_SAMPLE).toInt())
+                if (tail > 0) {
+                    crc.update(buffer, 0, tail)
+                }
+            }
+            crc.value xor (length shl 32)
+        }
+    }
+
+    /**
+     * 读取清单
+     *
+     * @return 相对路径 -> 文件信息；没有清单或格式不对时返回 null
+     */
+    private fun readManifest(file: File): Map<String, Entry>? {
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            IoTrace.trace("read", file) {
+                file.bufferedReader().use { reader ->
+                    if (reader.readLine() != MANIFEST_HEADER) {
+                        return@use null
+                    }
+                    val entries = HashMap<String, Entry>()
+                    while (true) {
+                        val line = reader.readLine() ?: break
+                        // 路径可能包含空格，用制表符分隔且路径放在最后
+                        val parts = line.split('\t', limit = 4)
+                        if (parts.size != 4) {
+                            return@use null
+                        }
+                        entries[parts[3]] = Entry(parts[0].toLong(), parts[1].toLong(), parts[2].toLong())
+                    }
+                    entries
+                }
+            }
+        } catch (e: IOException) {
+            null
+        } catch (e: NumberFormatException) {
+            null
+        }
+    }
+
+    private fun writeManifest(file: File, entries: Map<String, Entry>) {
+        val temp = File(file.parentFile, "$MANIFEST_NAME.tmp")
+        IoTrace.trace("write", temp) {
+            temp.bufferedWriter().use { writer ->
+                writer.write(MANIFEST_HEADER)
+                writer.newLine()
+                for ((path, entry) in entries) {
+                    writer.write("${entry.size}\t${entry.mtime}\t${entry.hash}\t$path")
+                    writer.newLine()
+                }
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete()
+        }
+    }
+}
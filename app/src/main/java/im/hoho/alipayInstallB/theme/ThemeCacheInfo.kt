@@ -63,7 +63,7 @@ data class ThemeCacheInfo(
          * 用于在 Xposed 环境中手动解析 JSON，避免 Jackson 反序列化 Kotlin data class 的问题
          */
         @JvmStatic
-        fun fromMap(map: Map<String, Any>): ThemeCacheInfo {
+        fun fromMap(map: Map<String, Any?>): ThemeCacheInfo {
             return ThemeCacheInfo(
                 themeId = map["themeId"] as String,
                 skinId = map["skinId"] as String,
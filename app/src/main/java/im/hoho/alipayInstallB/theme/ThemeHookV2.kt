@@ -1,10 +1,17 @@
 package im.hoho.alipayInstallB.theme
 
 import de.robv.android.xposed.XC_MethodHook
-import de.robv.android.xposed.XC_MethodReplacement
-import de.robv.android.xposed.XposedHelpers
 import de.robv.android.xposed.XposedBridge
-import com.alibaba.fastjson.JSON
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.AlipayAccessors
+import im.hoho.alipayInstallB.hook.CircuitBreaker
+import im.hoho.alipayInstallB.hook.CompatCache
+import im.hoho.alipayInstallB.hook.HookPlan
+import im.hoho.alipayInstallB.hook.HookRegistry
+import im.hoho.alipayInstallB.hook.MemberResolver
+import im.hoho.alipayInstallB.hook.MiniJson
+import im.hoho.alipayInstallB.hook.ModuleLog
 import java.io.File
 
 /**
@@ -28,13 +35,25 @@ object ThemeHookV2 {
 
     private const val TAG = "ThemeHookV2"
 
-    // Hook状态
+    // 是否已经安装过Hook（开关切换只修改 HookRegistry.THEME.enabled）
     @Volatile
     private var isHooked = false
 
     // 保存ClassLoader
     private var savedClassLoader: ClassLoader? = null
 
+    // 按 userId 缓存的主题信息，K / q / loadResSync 三个 Hook 共用
+    private val themeInfoCache = ThemeInfoCache(::readThemeInfo)
+
+    // 上次注入时的主题信息，只用于避免每次 K() 都输出日志（主题信息来自缓存，可按引用比较）
+    @Volatile
+    private var lastInjectedThemeInfo: ThemeCacheInfo? = null
+
+    // K / q / loadResSync 的熔断器：连续抛出异常后直通原方法，主题更新或账号切换时恢复
+    private val cacheReadBreaker = themeBreaker("SCInnerManager.K")
+    private val filePathBreaker = themeBreaker("SCInnerManager.q")
+    private val resourceLoadBreaker = themeBreaker("SCMetaModel.loadResSync")
+
     /**
      * 初始化Hook系统
      */
@@ -47,6 +66,7 @@ object ThemeHookV2 {
      * 应用所有主题Hook
      */
     @JvmStatic
+    @Synchronized
     fun applyHooks(enabled: Boolean) {
         val classLoader = savedClassLoader
         if (classLoader == null) {
@@ -54,9 +74,16 @@ object ThemeHookV2 {
             return
         }
 
+        // SCInnerManager 只存在于主进程，其他进程不安装主题Hook
+        if (!HookPlan.installsHooks()) {
+            return
+        }
+
+        // 回调在执行时检查开关，关闭时原方法照常执行
+        HookRegistry.THEME.enabled = enabled
+
         if (!enabled) {
             XposedBridge.log("[$TAG] 主题Hook已关闭")
-            isHooked = false
             return
         }
 
@@ -65,34 +92,22 @@ object ThemeHookV2 {
             return
         }
 
-        try {
-            //XposedBridge.log("[$TAG] 开始应用主题Hook...")
-
-            // 1. Hook缓存读取 - 注入动态主题信息
-            hookCacheRead(classLoader)
-
-            // 2. Hook MD5校验 - 绕过MD5验证
-            hookMd5Check(classLoader)
-
-            // 3. Hook时间戳检查 - 防止缓存过期
-            hookTimeCheck(classLoader)
-
-            // 4. Hook hasEnableSkin - 强制启用主题
-            hookHasEnableSkin(classLoader)
-
-            // 5. Hook文件路径 - 指向自定义主题目录
-            hookFilePath(classLoader)
-
-            // 6. Hook资源加载 - 确保加载自定义资源
-            hookResourceLoad(classLoader)
-
-            isHooked = true
-            XposedBridge.log("[$TAG] 主题Hook应用成功")
-
-        } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 主题Hook应用失败: ${e.message}")
-            XposedBridge.log(e)
-        }
+        // 每个 Hook 独立安装，某个目标在当前支付宝版本中不存在时不影响其他 Hook
+        val steps = listOf(
+            ::hookCacheRead,     // 1. 缓存读取 - 注入动态主题信息
+            ::hookMd5Check,      // 2. MD5校验 - 绕过MD5验证
+            ::hookTimeCheck,     // 3. 时间戳检查 - 防止缓存过期
+            ::hookHasEnableSkin, // 4. hasEnableSkin - 强制启用主题
+            ::hookFilePath,      // 5. 文件路径 - 指向自定义主题目录
+            ::hookResourceLoad   // 6. 资源加载 - 确保加载自定义资源
+        )
+        val installed = steps.count { it(classLoader) }
+
+        isHooked = true
+        XposedBridge.log("[$TAG] 主题Hook应用完成（$installed/${steps.size}）")
+
+        // 在后台预先读取主题库指针，SCInnerManager.q 的 Hook 只查找结果
+        ThemeLibraryLink.preload(File(ThemeConstants.INTERNAL_STORAGE_PATH))
     }
 
     /**
@@ -101,89 +116,110 @@ object ThemeHookV2 {
      * Hook: SCInnerManager.K() - readSkinInfoFromLocalCache
      * 目的：在读取缓存后，注入动态主题信息到内存缓存
      */
-    private fun hookCacheRead(classLoader: ClassLoader) {
+    private fun hookCacheRead(classLoader: ClassLoader): Boolean {
         try {
-            val scInnerManagerClass = XposedHelpers.findClass(
+            val installed = hookResolved(
+                classLoader,
                 "com.alipay.mobile.skincenter.manage.SCInnerManager",
-                classLoader
-            )
-
-            XposedHelpers.findAndHookMethod(
-                scInnerManagerClass,
-                "K", // readSkinInfoFromLocalCache方法
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
-                        try {
-                            val manager = param.thisObject
-
-                            // 获取内存缓存Map: Map<String, SCCacheInfoModel> g
-                            val cacheMap = XposedHelpers.getObjectField(manager, "g") as? MutableMap<String, Any>
-                            if (cacheMap == null) {
-                                XposedBridge.log("[$TAG] 无法获取缓存Map")
-                                return
+                MemberResolver.SC_INNER_MANAGER_READ_CACHE,
+                object : HookRegistry.FeatureHook(
+                    HookRegistry.THEME,
+                    HookMetrics.HookId.SC_INNER_MANAGER_K,
+                    cacheReadBreaker
+                ) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
+                        val manager = param.thisObject
+                        val accessors = AlipayAccessors.of(classLoader)
+
+                        // 获取内存缓存Map: Map<String, SCCacheInfoModel> g
+                        val cacheMap = accessors.scInnerManager?.cacheMap(manager)
+                        if (cacheMap == null) {
+                            if (ModuleLog.sampled("$TAG.cacheMap", 10_000)) {
+                                ModuleLog.w(TAG, "无法获取缓存Map")
                             }
+                            return
+                        }
 
-                            // 获取当前用户ID
-                            val currentUserId = getCurrentUserId(classLoader) ?: return
+                        // 获取当前用户ID
+                        val currentUserId = getCurrentUserId(classLoader) ?: return
 
-                            // 动态读取主题信息
-                            val themeInfo = loadThemeInfo(currentUserId)
-                            if (themeInfo == null) {
-                                XposedBridge.log("[$TAG] 未找到主题信息，跳过注入")
-                                return
-                            }
+                        // 动态读取主题信息
+                        val themeInfo = loadThemeInfo(currentUserId)
+                        if (themeInfo == null) {
+                            ModuleLog.d(TAG) { "未找到主题信息，跳过注入" }
+                            return
+                        }
 
-                            // 创建自定义主题缓存信息
-                            val cacheInfoClass = XposedHelpers.findClass(
-                                "com.alipay.mobile.skincenter.model.SCCacheInfoModel",
-                                classLoader
-                            )
+                        // 每次注入新建对象：支付宝会修改内存缓存中的对象，不能在多次 K() 之间共享同一个实例
+                        val cacheInfoModel = accessors.scCacheInfoModel ?: return
+                        val customCache = buildCacheModel(cacheInfoModel, themeInfo)
+                        if (lastInjectedThemeInfo !== themeInfo) {
+                            lastInjectedThemeInfo = themeInfo
 
-                            val customCache = cacheInfoClass.newInstance()
-
-                            // 使用动态读取的真实数据设置字段
-                            XposedHelpers.setObjectField(customCache, "usageScene", themeInfo.usageScene)
-                            XposedHelpers.setObjectField(customCache, "skinId", themeInfo.skinId)
-                            XposedHelpers.setObjectField(customCache, "userSkinId", themeInfo.userSkinId)
-                            XposedHelpers.setObjectField(customCache, "userId", themeInfo.userId)
-                            XposedHelpers.setObjectField(customCache, "md5", themeInfo.md5)
-                            XposedHelpers.setObjectField(customCache, "appSquareMd5", themeInfo.appSquareMd5)
-                            XposedHelpers.setLongField(customCache, "cacheTime", themeInfo.cacheTime)
-                            XposedHelpers.setObjectField(customCache, "versionLimit", themeInfo.versionLimit)
-                            XposedHelpers.setBooleanField(customCache, "isDiySkin", themeInfo.isDiySkin)
-                            XposedHelpers.setObjectField(customCache, "name", themeInfo.name)
-                            XposedHelpers.setObjectField(customCache, "expireDate", themeInfo.expireDate)
-                            XposedHelpers.setObjectField(customCache, "skinType", themeInfo.skinType)
-                            XposedHelpers.setObjectField(customCache, "materialId", themeInfo.materialId)
-                            XposedHelpers.setLongField(customCache, "diyExpiredTime", themeInfo.diyExpiredTime)
-
-                            // 注入到内存缓存
-                            cacheMap["theme"] = customCache
-
-                            XposedBridge.log("[$TAG] 已注入动态主题缓存: ${themeInfo.name}")
-                            XposedBridge.log("[$TAG]    主题ID: ${themeInfo.themeId}")
-                            XposedBridge.log("[$TAG]    皮肤ID: ${themeInfo.skinId}")
-                            XposedBridge.log("[$TAG]    MD5: ${themeInfo.md5}")
-
-                            // 可选：持久化到磁盘（或者软件自动持久化）
-                            // persistCacheToDisk(classLoader, cacheMap)
-
-                        } catch (e: Exception) {
-                            XposedBridge.log("[$TAG] 注入缓存失败: ${e.message}")
-                            XposedBridge.log(e)
+                            ModuleLog.i(
+                                TAG,
+                                "已注入动态主题缓存: ${themeInfo.name}（主题ID: ${themeInfo.themeId}，" +
+                                        "皮肤ID: ${themeInfo.skinId}，MD5: ${themeInfo.md5}）"
+                            )
                         }
+
+                        // 注入到内存缓存
+                        cacheMap["theme"] = customCache
+
+                        // 可选：持久化到磁盘（或者软件自动持久化）
+                        // persistCacheToDisk(classLoader, cacheMap)
                     }
                 }
             )
 
-            XposedBridge.log("[$TAG] Hook缓存读取成功")
+            XposedBridge.log("[$TAG] Hook缓存读取${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
 
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook缓存读取失败: ${e.message}")
-            throw e
+            return false
         }
     }
 
+    /**
+     * 构建 SCCacheInfoModel
+     *
+     * 使用预解析的字段句柄写入动态读取的真实数据
+     */
+    private fun buildCacheModel(
+        model: AlipayAccessors.SCCacheInfoModel,
+        themeInfo: ThemeCacheInfo
+    ): Any = HookMetrics.measure(HookMetrics.Phase.REFLECTION) {
+        val customCache = model.newInstance()
+        model.usageScene.set(customCache, themeInfo.usageScene)
+        model.skinId.set(customCache, themeInfo.skinId)
+        model.userSkinId.set(customCache, themeInfo.userSkinId)
+        model.userId.set(customCache, themeInfo.userId)
+        model.md5.set(customCache, themeInfo.md5)
+        model.appSquareMd5.set(customCache, themeInfo.appSquareMd5)
+        model.cacheTime.setLong(customCache, themeInfo.cacheTime)
+        model.versionLimit.set(customCache, themeInfo.versionLimit)
+        model.isDiySkin.setBoolean(customCache, themeInfo.isDiySkin)
+        model.name.set(customCache, themeInfo.name)
+        model.expireDate.set(customCache, themeInfo.expireDate)
+        model.skinType.set(customCache, themeInfo.skinType)
+        model.materialId.set(customCache, themeInfo.materialId)
+        model.diyExpiredTime.setLong(customCache, themeInfo.diyExpiredTime)
+        customCache
+    }
+
+    /**
+     * 获取主题信息
+     *
+     * 从 [ThemeInfoCache] 读取，只有主题目录变化或主题被更新后才重新解析
+     *
+     * @param userId 用户ID
+     * @return 主题信息，如果未找到则返回null
+     */
+    private fun loadThemeInfo(userId: String): ThemeCacheInfo? {
+        return themeInfoCache.get(userId)
+    }
+
     /**
      * 动态读取主题信息
      *
@@ -193,19 +229,19 @@ object ThemeHookV2 {
      * @param userId 用户ID
      * @return 主题信息，如果未找到则返回null
      */
-    private fun loadThemeInfo(userId: String): ThemeCacheInfo? {
+    private fun readThemeInfo(userId: String): ThemeCacheInfo? {
         try {
             // 1. 找到主题目录
-            val themeBaseDir = File("/data/data/com.eg.android.AlipayGphone/files/skin_center_dir/$userId/theme")
+            val themeBaseDir = File("${ThemeConstants.INTERNAL_STORAGE_PATH}/$userId/theme")
             if (!themeBaseDir.exists()) {
-                XposedBridge.log("[$TAG] 主题目录不存在: ${themeBaseDir.absolutePath}")
+                ModuleLog.d(TAG) { "主题目录不存在: ${themeBaseDir.absolutePath}" }
                 return null
             }
 
             // 2. 查找所有主题目录
-            val themeDirs = themeBaseDir.listFiles { it.isDirectory }
+            val themeDirs = IoTrace.trace("list", themeBaseDir) { themeBaseDir.listFiles { it.isDirectory } }
             if (themeDirs == null || themeDirs.isEmpty()) {
-                XposedBridge.log("[$TAG] 未找到主题目录")
+                ModuleLog.d(TAG) { "未找到主题目录" }
                 return null
             }
 
@@ -225,23 +261,25 @@ object ThemeHookV2 {
             // 4. 优先读取预处理的theme_info.json
             if (themeInfoFile.exists()) {
                 try {
-                    // 手动解析 JSON，避免 Jackson 反序列化 Kotlin data class 的问题
-                    @Suppress("UNCHECKED_CAST")
-                    val json = JSON.parseObject(themeInfoFile.readText(), Map::class.java) as Map<String, Any>
+                    // 使用 MiniJson 解析，支付宝进程中不加载 fastjson
+                    val text = IoTrace.trace("read", themeInfoFile) { themeInfoFile.readText() }
+                    val json = HookMetrics.measure(HookMetrics.Phase.JSON) {
+                        MiniJson.parseObject(text)
+                    }
                     val themeInfo = ThemeCacheInfo.fromMap(json)
-                    XposedBridge.log("[$TAG] 从theme_info.json加载主题信息: ${themeInfo.name}")
+                    ModuleLog.i(TAG, "从theme_info.json加载主题信息: ${themeInfo.name}")
                     return themeInfo
                 } catch (e: Exception) {
-                    XposedBridge.log("[$TAG] 解析theme_info.json失败: ${e.message}")
+                    ModuleLog.w(TAG, "解析theme_info.json失败: ${e.message}")
                 }
             }
 
             // 5. 回退：动态读取meta.json（兼容性）
-            XposedBridge.log("[$TAG] theme_info.json不存在，回退到动态读取")
+            ModuleLog.i(TAG, "theme_info.json不存在，回退到动态读取")
             return loadThemeInfoFromMeta(themeDir, userId)
 
         } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 加载主题信息失败: ${e.message}")
+            ModuleLog.w(TAG, "加载主题信息失败: ${e.message}")
             return null
         }
     }
@@ -254,7 +292,7 @@ object ThemeHookV2 {
             val metaFile = File(themeDir, "meta.json")
             val metadata = if (metaFile.exists()) {
                 try {
-                    JSON.parseObject(metaFile.readText(), ThemeMetadata::class.java)
+                    MiniJson.parseObject(metaFile.readText())
                 } catch (e: Exception) {
                     null
                 }
@@ -273,7 +311,7 @@ object ThemeHookV2 {
 
             return ThemeCacheInfo(
                 themeId = themeId,
-                skinId = metadata?.skinId ?: "$themeId",
+                skinId = metadata?.let { it["skinId"] as? String ?: "" } ?: themeId,
                 userSkinId = themeId,
                 userId = userId,
                 md5 = themeId.hashCode().toString(16),
@@ -283,13 +321,13 @@ object ThemeHookV2 {
                 diyExpiredTime = 0,
                 versionLimit = "10.8.20.0000",
                 skinType = "INST_UNLIMITED",
-                name = metadata?.description ?: themeId,
+                name = metadata?.let { it["description"] as? String ?: "" } ?: themeId,
                 materialId = "",
                 isDiySkin = false,
                 usageScene = "theme"
             )
         } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 从meta.json加载失败: ${e.message}")
+            ModuleLog.w(TAG, "从meta.json加载失败: ${e.message}")
             return null
         }
     }
@@ -297,65 +335,62 @@ object ThemeHookV2 {
     /**
      * Hook 2: MD5校验
      */
-    private fun hookMd5Check(classLoader: ClassLoader) {
+    private fun hookMd5Check(classLoader: ClassLoader): Boolean {
         try {
-            XposedHelpers.findAndHookMethod(
-                "com.alipay.mobile.skincenter.util.SCConfigUtil",
+            val installed = hookResolved(
                 classLoader,
-                "m",
-                String::class.java,
-                Long::class.javaPrimitiveType,
-                object : XC_MethodReplacement() {
-                    override fun replaceHookedMethod(param: MethodHookParam): Any {
-                        return false
+                "com.alipay.mobile.skincenter.util.SCConfigUtil",
+                MemberResolver.SC_CONFIG_UTIL_MD5_CHECK,
+                object : HookRegistry.FeatureHook(HookRegistry.THEME, HookMetrics.HookId.SC_CONFIG_UTIL_M) {
+                    // 开关关闭时不设置结果，原方法照常执行
+                    override fun before(param: XC_MethodHook.MethodHookParam) {
+                        param.result = false
                     }
                 }
             )
-            XposedBridge.log("[$TAG] Hook MD5校验成功")
+            XposedBridge.log("[$TAG] Hook MD5校验${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook MD5校验失败: ${e.message}")
-            throw e
+            return false
         }
     }
 
     /**
      * Hook 3: 时间戳检查
      */
-    private fun hookTimeCheck(classLoader: ClassLoader) {
+    private fun hookTimeCheck(classLoader: ClassLoader): Boolean {
         try {
-            XposedHelpers.findAndHookMethod(
-                "com.alipay.mobile.skincenter.util.SCConfigUtil",
+            val installed = hookResolved(
                 classLoader,
-                "l",
-                object : XC_MethodReplacement() {
-                    override fun replaceHookedMethod(param: MethodHookParam): Any {
-                        return false
+                "com.alipay.mobile.skincenter.util.SCConfigUtil",
+                MemberResolver.SC_CONFIG_UTIL_TIME_CHECK,
+                object : HookRegistry.FeatureHook(HookRegistry.THEME, HookMetrics.HookId.SC_CONFIG_UTIL_L) {
+                    // 开关关闭时不设置结果，原方法照常执行
+                    override fun before(param: XC_MethodHook.MethodHookParam) {
+                        param.result = false
                     }
                 }
             )
-            XposedBridge.log("[$TAG] Hook时间戳检查成功")
+            XposedBridge.log("[$TAG] Hook时间戳检查${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook时间戳检查失败（可能不影响功能）: ${e.message}")
+            return false
         }
     }
 
     /**
      * Hook 4: hasEnableSkin检查
      */
-    private fun hookHasEnableSkin(classLoader: ClassLoader) {
+    private fun hookHasEnableSkin(classLoader: ClassLoader): Boolean {
         try {
-            val scInnerManagerClass = XposedHelpers.findClass(
+            val installed = hookResolved(
+                classLoader,
                 "com.alipay.mobile.skincenter.manage.SCInnerManager",
-                classLoader
-            )
-
-            XposedHelpers.findAndHookMethod(
-                scInnerManagerClass,
-                "y",
-                String::class.java,
-                Map::class.java,
-                object : XC_MethodHook() {
-                    override fun beforeHookedMethod(param: MethodHookParam) {
+                MemberResolver.SC_INNER_MANAGER_HAS_ENABLE_SKIN,
+                object : HookRegistry.FeatureHook(HookRegistry.THEME, HookMetrics.HookId.SC_INNER_MANAGER_Y) {
+                    override fun before(param: XC_MethodHook.MethodHookParam) {
                         val scene = param.args[0] as? String
                         if (scene == "theme") {
                             param.result = true
@@ -363,31 +398,29 @@ object ThemeHookV2 {
                     }
                 }
             )
-            XposedBridge.log("[$TAG] Hook hasEnableSkin成功")
+            XposedBridge.log("[$TAG] Hook hasEnableSkin${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook hasEnableSkin失败: ${e.message}")
-            throw e
+            return false
         }
     }
 
     /**
      * Hook 5: 文件路径
      */
-    private fun hookFilePath(classLoader: ClassLoader) {
+    private fun hookFilePath(classLoader: ClassLoader): Boolean {
         try {
-            val scInnerManagerClass = XposedHelpers.findClass(
+            val installed = hookResolved(
+                classLoader,
                 "com.alipay.mobile.skincenter.manage.SCInnerManager",
-                classLoader
-            )
-
-            XposedHelpers.findAndHookMethod(
-                scInnerManagerClass,
-                "q",
-                File::class.java,
-                String::class.java,
-                String::class.java,
-                object : XC_MethodHook() {
-                    override fun afterHookedMethod(param: MethodHookParam) {
+                MemberResolver.SC_INNER_MANAGER_SKIN_DIR,
+                object : HookRegistry.FeatureHook(
+                    HookRegistry.THEME,
+                    HookMetrics.HookId.SC_INNER_MANAGER_Q,
+                    filePathBreaker
+                ) {
+                    override fun after(param: XC_MethodHook.MethodHookParam) {
                         val scene = param.args[1] as? String
                         if (scene == "theme") {
                             // 动态读取userSkinId
@@ -397,8 +430,9 @@ object ThemeHookV2 {
                                 if (themeInfo != null) {
                                     val baseDir = param.args[0] as? File
                                     if (baseDir != null) {
+                                        // 直读模式下指向 SD 卡上的主题库，不可读时仍使用内部目录
                                         val customThemeDir = File(baseDir, "theme/${themeInfo.userSkinId}")
-                                        param.result = customThemeDir
+                                        param.result = ThemeLibraryLink.resolve(customThemeDir)
                                     }
                                 }
                             }
@@ -406,104 +440,127 @@ object ThemeHookV2 {
                     }
                 }
             )
-            XposedBridge.log("[$TAG] Hook文件路径成功")
+            XposedBridge.log("[$TAG] Hook文件路径${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook文件路径失败: ${e.message}")
-            throw e
+            return false
         }
     }
 
     /**
      * Hook 6: 资源加载
      */
-    private fun hookResourceLoad(classLoader: ClassLoader) {
+    private fun hookResourceLoad(classLoader: ClassLoader): Boolean {
         try {
-            val scMetaModelClass = XposedHelpers.findClass(
+            val installed = HookRegistry.hookMethod(
+                HookRegistry.THEME,
                 "com.alipay.mobile.skincenter.model.SCMetaModel",
-                classLoader
-            )
-
-            XposedHelpers.findAndHookMethod(
-                scMetaModelClass,
+                classLoader,
                 "loadResSync",
                 String::class.java,
                 Map::class.java,
                 Boolean::class.javaPrimitiveType,
                 Boolean::class.javaPrimitiveType,
                 String::class.java,
-                object : XC_MethodHook() {
-                    override fun beforeHookedMethod(param: MethodHookParam) {
-                        try {
-                            val metaModel = param.thisObject
-                            val scene = XposedHelpers.getObjectField(metaModel, "scene") as? String
-
-                            if (scene == "theme") {
-                                val userId = getCurrentUserId(classLoader)
-                                if (userId != null) {
-                                    val themeInfo = loadThemeInfo(userId)
-                                    if (themeInfo != null) {
-                                        XposedHelpers.setObjectField(metaModel, "skinId", themeInfo.skinId)
-                                        XposedHelpers.setObjectField(metaModel, "userSkinId", themeInfo.userSkinId)
+                object : HookRegistry.FeatureHook(
+                    HookRegistry.THEME,
+                    HookMetrics.HookId.SC_META_MODEL_LOAD_RES_SYNC,
+                    resourceLoadBreaker
+                ) {
+                    override fun before(param: XC_MethodHook.MethodHookParam) {
+                        val metaModel = param.thisObject
+                        val metaAccessor = AlipayAccessors.of(classLoader).scMetaModel ?: return
+                        val scene = metaAccessor.scene.get(metaModel) as? String
+
+                        if (scene == "theme") {
+                            val userId = getCurrentUserId(classLoader)
+                            if (userId != null) {
+                                val themeInfo = loadThemeInfo(userId)
+                                if (themeInfo != null) {
+                                    HookMetrics.measure(HookMetrics.Phase.REFLECTION) {
+                                        metaAccessor.skinId.set(metaModel, themeInfo.skinId)
+                                        metaAccessor.userSkinId.set(metaModel, themeInfo.userSkinId)
                                     }
                                 }
                             }
-                        } catch (e: Exception) {
-                            // 静默失败
                         }
                     }
                 }
             )
-            XposedBridge.log("[$TAG] Hook资源加载成功")
+            XposedBridge.log("[$TAG] Hook资源加载${if (installed) "成功" else "跳过：目标不存在或已安装"}")
+            return installed
         } catch (e: Exception) {
             XposedBridge.log("[$TAG] Hook资源加载失败（可能不影响功能）: ${e.message}")
+            return false
         }
     }
 
+    /**
+     * 安装按特征解析的混淆方法 Hook
+     *
+     * @return true=本次新安装，false=类或方法在当前支付宝版本中找不到，或已经安装过
+     */
+    private fun hookResolved(
+        classLoader: ClassLoader,
+        className: String,
+        signature: MemberResolver.MethodSignature,
+        callback: XC_MethodHook
+    ): Boolean {
+        val clazz = CompatCache.findClass(className, classLoader) ?: return false
+        val method = MemberResolver.method(clazz, signature) ?: return false
+        return HookRegistry.hookMethod(HookRegistry.THEME, method, callback)
+    }
+
     /**
      * 获取当前用户ID
+     *
+     * 由 [UserIdResolver] 缓存 Method 句柄和解析结果
      */
     private fun getCurrentUserId(classLoader: ClassLoader): String? {
-        return try {
-            // 方案1：从支付宝的类中获取
-            try {
-                val scCommonUtilClass = classLoader.loadClass("com.alipay.mobile.skincenter.util.SCCommonUtil")
-                val getCurrentUserIdMethod = scCommonUtilClass.getDeclaredMethod("getCurrentUserId")
-                val userId = getCurrentUserIdMethod.invoke(null) as? String
-                if (!userId.isNullOrEmpty()) {
-                    XposedBridge.log("[$TAG] 从 SCCommonUtil 获取用户ID: $userId")
-                    return userId
-                }
-            } catch (e: Exception) {
-                XposedBridge.log("[$TAG] 从 SCCommonUtil 获取用户ID失败: ${e.message}")
-            }
+        return UserIdResolver.resolve(classLoader)
+    }
 
-            // 方案2：从文件系统扫描（回退）
-            val skinCenterDir = File("/data/data/com.eg.android.AlipayGphone/files/skin_center_dir")
-            if (skinCenterDir.exists()) {
-                val userDirs = skinCenterDir.listFiles { file ->
-                    file.isDirectory && file.name.matches(Regex("^\\d+$"))
-                }
-                if (userDirs != null && userDirs.isNotEmpty()) {
-                    val userId = userDirs[0].name
-                    XposedBridge.log("[$TAG] 从文件系统扫描获取用户ID: $userId")
-                    return userId
-                }
-            }
+    /**
+     * 创建主题Hook的熔断器
+     *
+     * 主题或用户ID变化时立即恢复；冷却后在后台重新执行一次主题查找
+     */
+    private fun themeBreaker(name: String): CircuitBreaker {
+        return CircuitBreaker(name, ::themeChangeToken, ::probeThemeLookup)
+    }
 
-            XposedBridge.log("[$TAG] 所有方法都无法获取用户ID")
-            null
-        } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 获取用户ID失败: ${e.message}")
-            XposedBridge.log(e)
-            null
+    private fun themeChangeToken(): Int {
+        return ThemeInfoCache.changeToken() * 31 + UserIdResolver.changeToken()
+    }
+
+    /**
+     * 熔断后的后台探测：访问器、用户ID和主题信息都能正常获取时才再次尝试
+     */
+    private fun probeThemeLookup(): Boolean {
+        val classLoader = savedClassLoader ?: return false
+        val accessors = AlipayAccessors.of(classLoader)
+        if (accessors.scInnerManager == null || accessors.scMetaModel == null) {
+            return false
         }
+        val userId = getCurrentUserId(classLoader) ?: return false
+        return loadThemeInfo(userId) != null
     }
 
     /**
      * 清理Hook
+     *
+     * 通过保存的 Unhook 句柄卸载所有主题Hook，之后调用 applyHooks(true) 会重新安装
      */
     @JvmStatic
+    @Synchronized
     fun unhook() {
+        val count = HookRegistry.unhookAll(HookRegistry.THEME)
         isHooked = false
+        lastInjectedThemeInfo = null
+        cacheReadBreaker.reset()
+        filePathBreaker.reset()
+        resourceLoadBreaker.reset()
+        XposedBridge.log("[$TAG] 已卸载 $count 个主题Hook")
     }
 }
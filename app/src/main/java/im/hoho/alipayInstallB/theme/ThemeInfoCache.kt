@@ -0,0 +1,98 @@
+package im.hoho.alipayInstallB.theme
+
+import android.os.SystemClock
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 主题信息缓存（Hook层使用）
+ *
+ * 按 userId 缓存 [ThemeCacheInfo] 的读取结果（包括未找到主题的结果）
+ * 通过 skin_center_dir/<uid>/theme 的修改时间和变更版本号校验，
+ * 同一场景的重复资源加载只需一次 Map 查找
+ *
+ * @param loader 缓存未命中时实际读取主题信息的函数
+ */
+class ThemeInfoCache(private val loader: (String) -> ThemeCacheInfo?) {
+
+    /**
+     * 缓存条目
+     *
+     * @param version 写入时的变更版本号
+     * @param dirModified 写入时主题目录的修改时间
+     * @param checkedAt 上次校验目录修改时间的时刻
+     */
+    private class Entry(
+        val version: Int,
+        val dirModified: Long,
+        val checkedAt: Long,
+        val info: ThemeCacheInfo?
+    )
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    /**
+     * 获取主题信息
+     *
+     * 校验间隔内直接返回缓存；超过间隔后只检查一次主题目录的修改时间
+     *
+     * @param userId 用户ID
+     * @return 主题信息，如果未找到则返回null
+     */
+    fun get(userId: String): ThemeCacheInfo? {
+        val currentVersion = version.get()
+        val now = SystemClock.elapsedRealtime()
+        val entry = entries[userId]
+
+        if (entry != null && entry.version == currentVersion) {
+            if (now - entry.checkedAt < VALIDATE_INTERVAL_MS) {
+                HookMetrics.increment(HookMetrics.Counter.THEME_INFO_HITS)
+                return entry.info
+            }
+
+            val modified = IoTrace.trace("stat", userId) { themeBaseDir(userId).lastModified() }
+            if (modified == entry.dirModified) {
+                entries[userId] = Entry(currentVersion, modified, now, entry.info)
+                HookMetrics.increment(HookMetrics.Counter.THEME_INFO_HITS)
+                return entry.info
+            }
+        }
+
+        HookMetrics.increment(HookMetrics.Counter.THEME_INFO_MISSES)
+        val modified = themeBaseDir(userId).lastModified()
+        val info = loader(userId)
+        entries[userId] = Entry(currentVersion, modified, now, info)
+        return info
+    }
+
+    private fun themeBaseDir(userId: String): File {
+        return File("${ThemeConstants.INTERNAL_STORAGE_PATH}/$userId/theme")
+    }
+
+    companion object {
+        // 两次目录校验之间的最短间隔
+        private const val VALIDATE_INTERVAL_MS = 1000L
+
+        // 主题变更版本号，所有缓存实例共享
+        private val version = AtomicInteger()
+
+        /**
+         * 标记主题信息已变化
+         *
+         * ThemeManager 更新或删除主题后调用（theme_info.json 的改写不会改变目录修改时间）
+         */
+        @JvmStatic
+        fun invalidate() {
+            version.incrementAndGet()
+        }
+
+        /**
+         * 当前变更版本号，供熔断器判断主题是否已变化
+         */
+        @JvmStatic
+        fun changeToken(): Int = version.get()
+    }
+}
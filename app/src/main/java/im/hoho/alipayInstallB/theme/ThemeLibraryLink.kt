@@ -0,0 +1,181 @@
+package im.hoho.alipayInstallB.theme
+
+import android.os.SystemClock
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.ModuleLog
+import im.hoho.alipayInstallB.hook.OperationExecutor
+import java.io.File
+import java.io.FileInputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 主题库直读（Hook层使用）
+ *
+ * 直读模式下切换主题不再复制整个主题目录：
+ * 1. ThemeManager 只在 skin_center_dir/<uid>/theme/<id> 中写入 theme_info.json 和指针文件 [POINTER_FILE]，
+ *    指针内容为 000_HOHO_THEME_CENTER/themes/<id> 的绝对路径
+ * 2. SCInnerManager.q 的 Hook 通过 [resolve] 把主题目录直接指向主题库
+ * 3. 读取指针和检查主题库是否可读都在 OperationExecutor 的后台线程中执行，[resolve] 只查找上次的结果；
+ *    Hook 安装时通过 [preload] 预先读取全部指针，结果超过 [VALIDATE_INTERVAL_MS] 后在后台重新检查
+ * 4. 主题库不可读（被删除、存储未挂载等）时请求 ThemeManager 把主题复制到内部目录（[ThemeManager.requestMaterialize]），
+ *    复制完成并删除指针后改用内部目录；复制失败时每 [MATERIALIZE_RETRY_MS] 重试一次
+ * 5. 支付宝进程在激活时就读不到主题库，或 000_HOHO_THEME_CENTER 中存在 copy_mode 文件夹时，
+ *    ThemeManager 仍按原方式复制整个主题
+ */
+object ThemeLibraryLink {
+    private const val TAG = "ThemeLibraryLink"
+
+    /** 指针文件名，位于内部主题目录中 */
+    const val POINTER_FILE = "hoho_library_path"
+
+    // 两次可读性校验之间的最短间隔
+    private const val VALIDATE_INTERVAL_MS = 1000L
+
+    /** 主题库不可读时两次复制尝试之间的最短间隔 */
+    const val MATERIALIZE_RETRY_MS = 30_000L
+
+    /**
+     * 缓存条目
+     *
+     * @param target 可读的主题库目录，null 表示使用内部目录
+     */
+    private class Entry(val version: Int, val checkedAt: Long, val target: File?)
+
+    // 内部主题目录 -> 解析结果
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    // 内部主题目录 -> 上次请求复制的时间
+    private val materializeRequests = ConcurrentHashMap<String, Long>()
+
+    // 指针变更版本号
+    private val version = AtomicInteger()
+
+    /**
+     * 解析主题目录
+     *
+     * 不访问文件系统：返回上次后台检查的结果，结果过期或不存在时提交后台检查
+     *
+     * @param themeDir skin_center_dir/<uid>/theme/<id>
+     * @return 有指针且主题库可读时返回主题库目录，否则返回 [themeDir]
+     */
+    @JvmStatic
+    fun resolve(themeDir: File): File {
+        val entry = entries[themeDir.path]
+        if (entry == null || entry.version != version.get() ||
+            SystemClock.elapsedRealtime() - entry.checkedAt >= VALIDATE_INTERVAL_MS
+        ) {
+            OperationExecutor.submit(OperationExecutor.KEY_THEME_LIBRARY_VALIDATE + themeDir.path) { validate(themeDir) }
+        }
+        return entry?.target ?: themeDir
+    }
+
+    /**
+     * 在后台读取 skin_center_dir 下全部主题目录的指针
+     *
+     * @param skinCenterDir skin_center_dir
+     */
+    @JvmStatic
+    fun preload(skinCenterDir: File) {
+        OperationExecutor.submit(OperationExecutor.KEY_THEME_LIBRARY_VALIDATE) {
+            val users = IoTrace.trace("list", skinCenterDir) { skinCenterDir.listFiles() } ?: return@submit
+            for (user in users) {
+                val themes = File(user, "theme").listFiles() ?: continue
+                for (themeDir in themes) {
+                    if (File(themeDir, POINTER_FILE).exists()) {
+                        validate(themeDir)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取指针并检查主题库是否可读（后台线程）
+     */
+    private fun validate(themeDir: File) {
+        val currentVersion = version.get()
+        val library = target(themeDir)
+        val usable = library?.takeIf { IoTrace.trace("stat", it) { it.isDirectory && it.canRead() } }
+        entries[themeDir.path] = Entry(currentVersion, SystemClock.elapsedRealtime(), usable)
+
+        if (library != null && usable == null) {
+            val now = SystemClock.elapsedRealtime()
+            val last = materializeRequests[themeDir.path]
+            if (last == null || now - last >= MATERIALIZE_RETRY_MS) {
+                materializeRequests[themeDir.path] = now
+                ModuleLog.w(TAG, "主题库不可读，改为复制到内部目录: ${library.path}")
+                ThemeManager.requestMaterialize(themeDir, library)
+            }
+        } else {
+            materializeRequests.remove(themeDir.path)
+        }
+    }
+
+    /**
+     * 读取内部主题目录中的指针
+     *
+     * @return 主题库目录，没有指针时返回 null
+     */
+    @JvmStatic
+    fun target(themeDir: File): File? {
+        val pointer = File(themeDir, POINTER_FILE)
+        if (!pointer.exists()) {
+            return null
+        }
+        return try {
+            val path = IoTrace.trace("read", pointer) { pointer.readText() }.trim()
+            if (path.isEmpty()) null else File(path)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /**
+     * 写入指针（ThemeManager 激活主题时调用）
+     *
+     * 调用方已确认主题库可读，直接记录解析结果，Hook 不必等待后台检查
+     */
+    @JvmStatic
+    fun link(themeDir: File, library: File) {
+        val pointer = File(themeDir, POINTER_FILE)
+        IoTrace.trace("write", pointer) { pointer.writeText(library.absolutePath) }
+        invalidate()
+        entries[themeDir.path] = Entry(version.get(), SystemClock.elapsedRealtime(), library)
+    }
+
+    /**
+     * 删除指针（主题已复制到内部目录后调用）
+     */
+    @JvmStatic
+    fun unlink(themeDir: File) {
+        File(themeDir, POINTER_FILE).delete()
+        invalidate()
+        entries[themeDir.path] = Entry(version.get(), SystemClock.elapsedRealtime(), null)
+    }
+
+    /**
+     * 当前进程能否读取主题库
+     *
+     * 除了目录权限，还实际打开其中一个文件，FUSE 或存储权限拒绝访问时返回 false
+     */
+    @JvmStatic
+    fun isReadable(library: File): Boolean {
+        return try {
+            val files = IoTrace.trace("list", library) { library.listFiles() } ?: return false
+            val sample = files.firstOrNull { it.isFile } ?: return files.isNotEmpty()
+            IoTrace.trace("read", sample) { FileInputStream(sample).use { it.read() } }
+            true
+        } catch (e: Exception) {
+            false
+        }
+    }
+
+    /**
+     * 标记指针已变化，下次 [resolve] 时在后台重新检查
+     */
+    @JvmStatic
+    fun invalidate() {
+        version.incrementAndGet()
+    }
+}
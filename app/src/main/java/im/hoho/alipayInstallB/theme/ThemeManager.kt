@@ -1,7 +1,12 @@
 package im.hoho.alipayInstallB.theme
 
-import com.alibaba.fastjson.JSON
 import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.diagnostics.PerfTrace
+import im.hoho.alipayInstallB.hook.AlipayAccessors
+import im.hoho.alipayInstallB.hook.CopyEngine
+import im.hoho.alipayInstallB.hook.MiniJson
+import im.hoho.alipayInstallB.hook.OperationExecutor
 import java.io.File
 import java.util.concurrent.atomic.AtomicBoolean
 
@@ -31,11 +36,8 @@ object ThemeManager {
     private const val EXPORTED_THEMES_FOLDER = "exported_themes"
     private const val SELECTED_THEME_FILE = "selected_theme"
 
-    // 线程安全标志
-    private val isOperationRunning = AtomicBoolean(false)
-
-    // 防抖：记录上次日志时间
-    private var lastSkipLogTime = 0L
+    // 存在时不使用主题库直读，激活主题时复制整个目录
+    private const val COPY_MODE_FLAG = "copy_mode"
 
     // 后台监控线程
     private var monitorThread: Thread? = null
@@ -82,8 +84,8 @@ object ThemeManager {
                 try {
                     while (isMonitorRunning.get()) {
                         try {
-                            // 检查是否有操作请求
-                            handleThemeOperations()
+                            // 检查是否有操作请求（由后台执行器处理）
+                            requestThemeOperations()
 
                             // 每2秒检查一次
                             Thread.sleep(2000)
@@ -117,71 +119,54 @@ object ThemeManager {
     /**
      * 获取当前用户ID
      *
-     * 通过扫描 skin_center_dir 目录来确定用户ID
+     * 与 ThemeHookV2 共用 [UserIdResolver] 的缓存，ClassLoader 未设置时回退到扫描 skin_center_dir
      */
     private fun getCurrentUserId(): String? {
-        try {
-            val skinCenterDir = File(INTERNAL_STORAGE_PATH)
-            if (!skinCenterDir.exists() || !skinCenterDir.isDirectory) {
-                return null
-            }
-
-            // 查找第一个数字开头的目录（用户ID通常是数字）
-            val userDirs = skinCenterDir.listFiles { file ->
-                file.isDirectory && file.name.matches(Regex("^\\d+$"))
-            }
-
-            if (userDirs != null && userDirs.isNotEmpty()) {
-                val foundUserId = userDirs[0].name
-                XposedBridge.log("[$TAG] 从文件系统扫描到用户ID: $foundUserId")
-                return foundUserId
-            }
-
+        val userId = UserIdResolver.resolve(appClassLoader)
+        if (userId == null) {
             XposedBridge.log("[$TAG] 未找到用户ID目录")
-            return null
-        } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 获取用户ID失败: ${e.message}")
-            return null
         }
+        return userId
     }
 
     /**
-     * 处理主题操作
+     * 请求处理主题操作
      *
-     * 在应用启动时检查操作标记文件夹并执行相应操作
+     * 提交到 OperationExecutor 后立即返回，等待中或执行中的重复请求会被合并
      */
-    fun handleThemeOperations() {
-        // 线程安全保护
-        if (!isOperationRunning.compareAndSet(false, true)) {
-            // 防抖：只在距离上次日志超过10秒时才打印
-            val currentTime = System.currentTimeMillis()
-            if (currentTime - lastSkipLogTime > 10000) {
-                XposedBridge.log("[$TAG] 主题操作正在执行中，跳过")
-                lastSkipLogTime = currentTime
-            }
-            return
+    fun requestThemeOperations() {
+        OperationExecutor.submitOnce(OperationExecutor.KEY_THEME_OPERATIONS) {
+            handleThemeOperations()
         }
+    }
 
-        try {
-            val userId = getCurrentUserId()
-            if (userId == null) {
-                XposedBridge.log("[$TAG] 无法获取用户ID，跳过主题操作")
-                return
-            }
+    /**
+     * 处理主题操作
+     *
+     * 检查操作标记文件夹并执行相应操作
+     * 只在 OperationExecutor 的后台线程中执行
+     */
+    private fun handleThemeOperations() {
+        PerfTrace.section("themeOperations") {
+            try {
+                val userId = PerfTrace.section("resolve user") { getCurrentUserId() }
+                if (userId == null) {
+                    XposedBridge.log("[$TAG] 无法获取用户ID，跳过主题操作")
+                    return
+                }
 
-            val userThemeDir = File(INTERNAL_STORAGE_PATH, userId)
-            if (!userThemeDir.exists()) {
-                XposedBridge.log("[$TAG] 用户主题目录不存在: ${userThemeDir.absolutePath}")
-                return
-            }
+                val userThemeDir = File(INTERNAL_STORAGE_PATH, userId)
+                if (!userThemeDir.exists()) {
+                    XposedBridge.log("[$TAG] 用户主题目录不存在: ${userThemeDir.absolutePath}")
+                    return
+                }
 
-            // 检查并执行操作
-            checkAndExecuteOperations(userId, userThemeDir)
-        } catch (e: Exception) {
-            XposedBridge.log("[$TAG] 处理主题操作时出错: ${e.message}")
-            e.printStackTrace()
-        } finally {
-            isOperationRunning.set(false)
+                // 检查并执行操作
+                checkAndExecuteOperations(userId, userThemeDir)
+            } catch (e: Exception) {
+                XposedBridge.log("[$TAG] 处理主题操作时出错: ${e.message}")
+                e.printStackTrace()
+            }
         }
     }
 
@@ -192,21 +177,21 @@ object ThemeManager {
         // 检查删除操作
         val deleteFile = File(DELETE_PATH)
         if (deleteFile.exists()) {
-            executeDeleteOperation(userThemeDir)
+            PerfTrace.section("delete") { executeDeleteOperation(userThemeDir) }
             deleteFile.deleteRecursively()
         }
 
         // 检查导出操作
         val exportFile = File(EXPORT_PATH)
         if (exportFile.exists()) {
-            executeExportOperation(userId, userThemeDir)
+            PerfTrace.section("export") { executeExportOperation(userId, userThemeDir) }
             exportFile.deleteRecursively()
         }
 
         // 检查更新操作
         val updateFile = File(UPDATE_PATH)
         if (updateFile.exists()) {
-            executeUpdateOperation(userId, userThemeDir)
+            PerfTrace.section("update") { executeUpdateOperation(userId, userThemeDir) }
             updateFile.deleteRecursively()
         }
     }
@@ -219,7 +204,9 @@ object ThemeManager {
     private fun executeDeleteOperation(userThemeDir: File) {
         try {
             if (userThemeDir.exists()) {
-                userThemeDir.deleteRecursively()
+                IoTrace.trace("delete", userThemeDir) { userThemeDir.deleteRecursively() }
+                ThemeInfoCache.invalidate()
+                ThemeLibraryLink.invalidate()
                 XposedBridge.log("[$TAG] 主题缓存已删除")
             }
         } catch (e: Exception) {
@@ -271,13 +258,13 @@ object ThemeManager {
                     val themeId = themeDir.name
                     val themeTargetDir = File(targetDir, themeId)
 
-                    // 复制主题资源
-                    copyDirectory(themeDir, themeTargetDir)
+                    // 复制主题资源（直读模式的主题从主题库复制）
+                    CopyEngine.copy(ThemeLibraryLink.target(themeDir) ?: themeDir, themeTargetDir).throwIfFailed()
 
                     // 将 ltp 复制到主题目录中
                     if (hasLtp) {
                         val ltpTargetDir = File(themeTargetDir, "ltp")
-                        copyDirectory(ltpSourceDir, ltpTargetDir)
+                        CopyEngine.copy(ltpSourceDir, ltpTargetDir).throwIfFailed()
                     }
 
                     XposedBridge.log("[$TAG] 已导出主题: $themeId")
@@ -308,7 +295,8 @@ object ThemeManager {
      *
      * 完整模拟支付宝内部切换主题的流程：
      * 1. 删除旧的自定义主题（可选）
-     * 2. 导入新主题文件
+     * 2. 导入新主题文件：支付宝进程能读取主题库时只写入 theme_info.json 和指向主题库的指针（[ThemeLibraryLink]），
+     *    否则复制整个主题目录
      * 3. 更新 SharedPreferences
      * 4. 清除内存缓存
      * 5. 重新读取缓存
@@ -350,7 +338,7 @@ object ThemeManager {
                 }
                 existingCustomThemes?.forEach { oldTheme ->
                     if (oldTheme.name != selectedThemeId) {
-                        oldTheme.deleteRecursively()
+                        PerfTrace.section("delete old") { oldTheme.deleteRecursively() }
                         XposedBridge.log("[$TAG] 已删除旧的自定义主题: ${oldTheme.name}")
                     }
                 }
@@ -362,11 +350,25 @@ object ThemeManager {
             val targetThemeDir = File(themeBaseDir, selectedThemeId)
             try {
                 if (targetThemeDir.exists()) {
-                    targetThemeDir.deleteRecursively()
+                    PerfTrace.section("delete target") { targetThemeDir.deleteRecursively() }
                 }
 
-                copyDirectory(sourceThemeDir, targetThemeDir)
-                XposedBridge.log("[$TAG] 已复制主题文件到: ${targetThemeDir.absolutePath}")
+                val direct = !File(EXTERNAL_STORAGE_PATH, COPY_MODE_FLAG).exists() &&
+                        PerfTrace.section("probe library") { ThemeLibraryLink.isReadable(sourceThemeDir) }
+                if (direct) {
+                    // 直读模式：只复制 theme_info.json，资源由 SCInnerManager.q 的 Hook 指向主题库
+                    PerfTrace.section("link") {
+                        targetThemeDir.mkdirs()
+                        CopyEngine.copy(File(sourceThemeDir, "theme_info.json"), File(targetThemeDir, "theme_info.json"))
+                            .throwIfFailed()
+                        ThemeLibraryLink.link(targetThemeDir, sourceThemeDir)
+                    }
+                    XposedBridge.log("[$TAG] 已指向主题库: ${sourceThemeDir.absolutePath}")
+                } else {
+                    val copied = PerfTrace.section("copy") { CopyEngine.copy(sourceThemeDir, targetThemeDir) }
+                    copied.throwIfFailed()
+                    XposedBridge.log("[$TAG] 已复制主题文件到: ${targetThemeDir.absolutePath}（$copied）")
+                }
 
                 // 读取并更新 theme_info.json
                 val themeInfoFile = File(targetThemeDir, "theme_info.json")
@@ -376,15 +378,21 @@ object ThemeManager {
                     return
                 }
 
-                // 手动解析 JSON，避免 Jackson 反序列化 Kotlin data class 的问题
-                @Suppress("UNCHECKED_CAST")
-                val json = JSON.parseObject(themeInfoFile.readText(), Map::class.java) as Map<String, Any>
-                val themeInfo = ThemeCacheInfo.fromMap(json)
-                val updatedThemeInfo = themeInfo.copy(
-                    userId = userId,
-                    cacheTime = System.currentTimeMillis() / 1000
-                )
-                themeInfoFile.writeText(JSON.toJSONString(updatedThemeInfo))
+                // 使用 MiniJson 读写，支付宝进程中不加载 fastjson
+                val updatedThemeInfo = PerfTrace.section("rewrite theme_info") {
+                    val json = MiniJson.parseObject(themeInfoFile.readText())
+                    val themeInfo = ThemeCacheInfo.fromMap(json)
+                    val updated = themeInfo.copy(
+                        userId = userId,
+                        cacheTime = System.currentTimeMillis() / 1000
+                    )
+                    themeInfoFile.writeText(MiniJson.write(updated.toMap()))
+                    updated
+                }
+
+                // theme_info.json 和指针已改写，让 Hook 层重新读取
+                ThemeInfoCache.invalidate()
+                ThemeLibraryLink.invalidate()
 
                 XposedBridge.log("[$TAG] 主题信息:")
                 XposedBridge.log("[$TAG]    名称: ${updatedThemeInfo.name}")
@@ -392,16 +400,18 @@ object ThemeManager {
                 XposedBridge.log("[$TAG]    MD5: ${updatedThemeInfo.md5}")
 
                 // 步骤3: 更新 SharedPreferences
-                updateSharedPreferences(userId, selectedThemeId, updatedThemeInfo)
+                PerfTrace.section("SharedPreferences update") {
+                    updateSharedPreferences(userId, selectedThemeId, updatedThemeInfo)
+                }
 
                 // 步骤4: 清除内存缓存
-                clearMemoryCache()
+                PerfTrace.section("clear memory cache") { clearMemoryCache() }
 
                 // 步骤5: 重新读取缓存
-                reloadCache()
+                PerfTrace.section("cache reload") { reloadCache() }
 
                 // 步骤6: 刷新 UI
-                notifySkinChanged()
+                PerfTrace.section("UI notify") { notifySkinChanged() }
 
                 XposedBridge.log("[$TAG] 主题切换成功: ${updatedThemeInfo.name}")
                 showToast("主题已切换: ${updatedThemeInfo.name}")
@@ -419,67 +429,35 @@ object ThemeManager {
     }
 
     /**
-     * 复制目录内容
+     * 主题库不可读时把主题复制到内部目录
      *
-     * 将源目录的所有文件复制到目标目录（不包括子目录）
-     */
-    private fun copyDirectoryContents(source: File, destination: File) {
-        if (!source.exists() || !source.isDirectory) {
-            return
-        }
-
-        if (!destination.exists()) {
-            destination.mkdirs()
-        }
-
-        source.listFiles()?.forEach { file ->
-            if (file.isFile) {
-                val destFile = File(destination, file.name)
-                copyFile(file, destFile)
-            }
-        }
-    }
-
-    /**
-     * 复制目录
+     * 由 [ThemeLibraryLink] 在后台检查发现主题库不可读时调用；复制成功后删除指针，SCInnerManager.q 改用内部目录
+     * theme_info.json 已按当前用户改写过，不覆盖
      *
-     * 递归复制整个目录及其内容
+     * @param themeDir skin_center_dir/<uid>/theme/<id>
+     * @param library 指针指向的主题库目录
      */
-    private fun copyDirectory(source: File, destination: File) {
-        if (!source.exists()) return
-
-        if (source.isDirectory) {
-            // 创建目标目录
-            if (!destination.exists()) {
-                destination.mkdirs()
-            }
-
-            // 复制所有子文件和子目录
-            source.listFiles()?.forEach { file ->
-                val destFile = File(destination, file.name)
-                if (file.isDirectory) {
-                    copyDirectory(file, destFile)
-                } else {
-                    copyFile(file, destFile)
+    fun requestMaterialize(themeDir: File, library: File) {
+        OperationExecutor.submit(OperationExecutor.KEY_THEME_MATERIALIZE) {
+            PerfTrace.section("materialize theme") {
+                val files = IoTrace.trace("list", library) { library.listFiles() }
+                if (files == null) {
+                    XposedBridge.log("[$TAG] 主题库仍不可读，稍后重试: ${library.absolutePath}")
+                    return@section
                 }
-            }
-        } else {
-            // 复制单个文件
-            copyFile(source, destination)
-        }
-    }
-
-    /**
-     * 复制文件
-     *
-     * 将源文件复制到目标位置
-     * 使用缓冲区优化大文件复制性能
-     */
-    private fun copyFile(source: File, destination: File) {
-        source.inputStream().use { input ->
-            destination.outputStream().use { output ->
-                // 使用 32KB 缓冲区，提升大文件复制性能
-                input.copyTo(output, bufferSize = 32 * 1024)
+                var failures = 0
+                for (source in files) {
+                    if (source.name != "theme_info.json") {
+                        failures += CopyEngine.copy(source, File(themeDir, source.name)).failures.size
+                    }
+                }
+                if (failures > 0) {
+                    XposedBridge.log("[$TAG] 主题复制到内部目录时 $failures 个文件失败，稍后重试")
+                    return@section
+                }
+                ThemeLibraryLink.unlink(themeDir)
+                PerfTrace.section("clear memory cache") { clearMemoryCache() }
+                XposedBridge.log("[$TAG] 主题库不可读，已复制到内部目录: ${themeDir.absolutePath}")
             }
         }
     }
@@ -536,7 +514,7 @@ object ThemeManager {
             )
 
             // 序列化为 JSON
-            val json = JSON.toJSONString(cacheInfo)
+            val json = MiniJson.write(cacheInfo)
 
             // 使用 Android 标准 SharedPreferences API
             val prefs = context.getSharedPreferences("prefs_skincenter_file", android.content.Context.MODE_PRIVATE)
@@ -566,18 +544,17 @@ object ThemeManager {
                 return
             }
 
-            val scInnerManagerClass = classLoader.loadClass(
-                "com.alipay.mobile.skincenter.manage.SCInnerManager"
-            )
+            val scInnerManager = AlipayAccessors.of(classLoader).scInnerManager
+            if (scInnerManager == null) {
+                XposedBridge.log("[$TAG] 无法解析 SCInnerManager")
+                return
+            }
 
             // 获取单例实例（方法名是 m()，不是 getInstance()）
-            val getInstanceMethod = scInnerManagerClass.getDeclaredMethod("m")
-            val instance = getInstanceMethod.invoke(null)
+            val instance = scInnerManager.instance() ?: return
 
             // 获取内存缓存 Map (字段名: g)
-            val gField = scInnerManagerClass.getDeclaredField("g")
-            gField.isAccessible = true
-            val cacheMap = gField.get(instance) as? MutableMap<String, Any>
+            val cacheMap = scInnerManager.cacheMap(instance)
 
             if (cacheMap != null) {
                 // 清除 theme 缓存
@@ -605,17 +582,17 @@ object ThemeManager {
                 return
             }
 
-            val scInnerManagerClass = classLoader.loadClass(
-                "com.alipay.mobile.skincenter.manage.SCInnerManager"
-            )
+            val scInnerManager = AlipayAccessors.of(classLoader).scInnerManager
+            if (scInnerManager == null) {
+                XposedBridge.log("[$TAG] 无法解析 SCInnerManager")
+                return
+            }
 
             // 获取单例实例（方法名是 m()，不是 getInstance()）
-            val getInstanceMethod = scInnerManagerClass.getDeclaredMethod("m")
-            val instance = getInstanceMethod.invoke(null)
+            val instance = scInnerManager.instance() ?: return
 
             // 调用 K() 方法重新读取缓存
-            val kMethod = scInnerManagerClass.getDeclaredMethod("K")
-            kMethod.invoke(instance)
+            scInnerManager.readCache(instance)
 
             XposedBridge.log("[$TAG] 已重新读取缓存")
         } catch (e: Exception) {
@@ -637,9 +614,12 @@ object ThemeManager {
                 return
             }
 
-            val antSkinRenderManagerClass = classLoader.loadClass("com.alipay.mobile.skincenter.manage.AntSkinRenderManager")
-            val notifySkinChangedMethod = antSkinRenderManagerClass.getDeclaredMethod("notifySkinChanged")
-            notifySkinChangedMethod.invoke(null)
+            val antSkinRenderManager = AlipayAccessors.of(classLoader).antSkinRenderManager
+            if (antSkinRenderManager == null) {
+                XposedBridge.log("[$TAG] 无法解析 AntSkinRenderManager")
+                return
+            }
+            antSkinRenderManager.notifySkinChanged()
 
             XposedBridge.log("[$TAG] 已通知 UI 刷新")
         } catch (e: Exception) {
@@ -692,13 +672,13 @@ object ThemeManager {
                     val themeId = themeDir.name
                     val themeTargetDir = File(targetDir, themeId)
 
-                    // 复制主题资源
-                    copyDirectory(themeDir, themeTargetDir)
+                    // 复制主题资源（直读模式的主题从主题库复制）
+                    CopyEngine.copy(ThemeLibraryLink.target(themeDir) ?: themeDir, themeTargetDir).throwIfFailed()
 
                     // 将 ltp 复制到主题目录中
                     if (hasLtp) {
                         val ltpTargetDir = File(themeTargetDir, "ltp")
-                        copyDirectory(ltpSourceDir, ltpTargetDir)
+                        CopyEngine.copy(ltpSourceDir, ltpTargetDir).throwIfFailed()
                     }
 
                     XposedBridge.log("[$TAG] 已导出主题: $themeId")
@@ -3,8 +3,10 @@ package im.hoho.alipayInstallB.theme
 import android.content.Context
 import android.content.SharedPreferences
 import android.net.Uri
+import android.util.Log
 import com.alibaba.fastjson.JSON
-import de.robv.android.xposed.XposedBridge
+import im.hoho.alipayInstallB.diagnostics.PerfTrace
+import im.hoho.alipayInstallB.hook.CopyEngine
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.File
@@ -175,17 +177,17 @@ class ThemeRepository(private val context: Context) {
     fun readThemeMetadata(themeDir: File): ThemeMetadata {
         val metaFile = File(themeDir, "meta.json")
         if (!metaFile.exists()) {
-            XposedBridge.log("[ThemeRepository] meta.json 不存在: ${themeDir.absolutePath}")
+            Log.w(TAG, "meta.json 不存在: ${themeDir.absolutePath}")
             return ThemeMetadata()
         }
 
         return try {
             val jsonContent = metaFile.readText()
             val metadata = JSON.parseObject(jsonContent, ThemeMetadata::class.java)
-            XposedBridge.log("[ThemeRepository] 成功解析主题元数据: ${metadata.description} (${metadata.skinId})")
+            Log.i(TAG, "成功解析主题元数据: ${metadata.description} (${metadata.skinId})")
             metadata
         } catch (e: Exception) {
-            XposedBridge.log("[ThemeRepository] 解析 meta.json 失败: $e")
+            Log.w(TAG, "解析 meta.json 失败: $e")
             ThemeMetadata()
         }
     }
@@ -284,7 +286,13 @@ class ThemeRepository(private val context: Context) {
      * @return Pair<Boolean, String> 成功标志和消息
      */
     suspend fun importThemeFromZip(uri: Uri): Pair<Boolean, String> = withContext(Dispatchers.IO) {
-        try {
+        PerfTrace.section("importThemeFromZip") {
+            importThemeFromZipTraced(uri)
+        }
+    }
+
+    private fun importThemeFromZipTraced(uri: Uri): Pair<Boolean, String> {
+        return try {
             // 获取原始文件名作为主题ID
             val originalFileName = getFileNameFromUri(uri)
             val themeId = originalFileName?.removeSuffix(".zip") ?: "theme_${System.currentTimeMillis()}"
@@ -293,11 +301,13 @@ class ThemeRepository(private val context: Context) {
             val tempZipFile = File(context.cacheDir, "temp_theme_${System.currentTimeMillis()}.zip")
 
             // 从URI复制到临时文件
-            context.contentResolver.openInputStream(uri)?.use { input ->
-                FileOutputStream(tempZipFile).use { output ->
-                    input.copyTo(output)
+            PerfTrace.section("copy zip") {
+                context.contentResolver.openInputStream(uri)?.use { input ->
+                    FileOutputStream(tempZipFile).use { output ->
+                        input.copyTo(output)
+                    }
                 }
-            } ?: return@withContext Pair(false, "无法读取文件")
+            } ?: return Pair(false, "无法读取文件")
 
             // 创建临时解压目录
             val tempExtractDir = File(context.cacheDir, "temp_theme_extract_${System.currentTimeMillis()}")
@@ -305,20 +315,22 @@ class ThemeRepository(private val context: Context) {
 
             // 解压ZIP文件
             try {
-                val zipFile = net.lingala.zip4j.ZipFile(tempZipFile)
-                zipFile.extractAll(tempExtractDir.absolutePath)
+                PerfTrace.section("unzip") {
+                    val zipFile = net.lingala.zip4j.ZipFile(tempZipFile)
+                    zipFile.extractAll(tempExtractDir.absolutePath)
+                }
             } catch (e: Exception) {
                 tempZipFile.delete()
                 tempExtractDir.deleteRecursively()
-                return@withContext Pair(false, "ZIP文件解压失败: ${e.message}")
+                return Pair(false, "ZIP文件解压失败: ${e.message}")
             }
 
             // 验证主题结构并找到主题文件夹
-            val themeFolder = findThemeFolder(tempExtractDir)
+            val themeFolder = PerfTrace.section("scan") { findThemeFolder(tempExtractDir) }
             if (themeFolder == null) {
                 tempZipFile.delete()
                 tempExtractDir.deleteRecursively()
-                return@withContext Pair(false, "未找到有效的主题文件（需要包含meta.json）")
+                return Pair(false, "未找到有效的主题文件（需要包含meta.json）")
             }
 
             // 目标路径
@@ -326,18 +338,20 @@ class ThemeRepository(private val context: Context) {
 
             // 如果目标已存在，删除
             if (targetDir.exists()) {
-                targetDir.deleteRecursively()
+                PerfTrace.section("delete old") { targetDir.deleteRecursively() }
             }
 
             // 确保父目录存在
             targetDir.parentFile?.mkdirs()
 
             // 复制主题文件夹到目标位置
-            copyDirectory(themeFolder, targetDir)
+            PerfTrace.section("copy") { CopyEngine.copy(themeFolder, targetDir).throwIfFailed() }
 
             // 清理临时文件
-            tempZipFile.delete()
-            tempExtractDir.deleteRecursively()
+            PerfTrace.section("cleanup") {
+                tempZipFile.delete()
+                tempExtractDir.deleteRecursively()
+            }
 
             Pair(true, "主题导入成功: $themeId")
         } catch (e: Exception) {
@@ -389,58 +403,6 @@ class ThemeRepository(private val context: Context) {
         return File(folder, "meta.json").exists()
     }
 
-    /**
-     * 复制目录
-     *
-     * 递归复制整个目录及其内容
-     *
-     * @param source 源目录
-     * @param destination 目标目录
-     */
-    private fun copyDirectory(source: File, destination: File) {
-        if (!source.exists()) return
-
-        if (source.isDirectory) {
-            // 创建目标目录
-            if (!destination.exists()) {
-                destination.mkdirs()
-            }
-
-            // 复制所有子文件和子目录
-            source.listFiles()?.forEach { file ->
-                val destFile = File(destination, file.name)
-                if (file.isDirectory) {
-                    copyDirectory(file, destFile)
-                } else {
-                    copyFile(file, destFile)
-                }
-            }
-        } else {
-            // 复制单个文件
-            copyFile(source, destination)
-        }
-    }
-
-    /**
-     * 复制文件
-     *
-     * 将源文件复制到目标位置
-     *
-     * @param source 源文件
-     * @param destination 目标文件
-     */
-    private fun copyFile(source: File, destination: File) {
-        try {
-            source.inputStream().use { input ->
-                destination.outputStream().use { output ->
-                    input.copyTo(output)
-                }
-            }
-        } catch (e: Exception) {
-            // 忽略复制错误
-        }
-    }
-
     /**
      * 从URI导入主题目录
      *
@@ -484,7 +446,7 @@ class ThemeRepository(private val context: Context) {
             targetDir.parentFile?.mkdirs()
 
             // 复制主题文件夹到目标位置
-            copyDirectory(themeFolder, targetDir)
+            CopyEngine.copy(themeFolder, targetDir).throwIfFailed()
 
             // 清理临时文件
             tempDir.deleteRecursively()
@@ -589,7 +551,7 @@ class ThemeRepository(private val context: Context) {
             // 保存到theme_info.json
             themeInfoFile.writeText(JSON.toJSONString(themeInfo))
         } catch (e: Exception) {
-            XposedBridge.log("[ThemeRepository] 生成theme_info.json失败: $e")
+            Log.w(TAG, "生成theme_info.json失败: $e")
         }
     }
 
@@ -601,8 +563,8 @@ class ThemeRepository(private val context: Context) {
      * @param themeDir 主题目录
      * @return MD5字符串
      */
-    private fun calculateThemeMd5(themeDir: File): String {
-        return try {
+    private fun calculateThemeMd5(themeDir: File): String = PerfTrace.section("hash") {
+        try {
             val md = java.security.MessageDigest.getInstance("MD5")
 
             // 遍历所有文件，按路径排序后计算MD5
@@ -622,9 +584,14 @@ class ThemeRepository(private val context: Context) {
             // 转换为十六进制字符串
             md.digest().joinToString("") { "%02x".format(it) }
         } catch (e: Exception) {
-            XposedBridge.log("[ThemeRepository] 计算MD5失败: $e")
+            Log.w(TAG, "计算MD5失败: $e")
             // 返回一个基于主题目录名的固定哈希
             "THEME_${themeDir.name.hashCode().toString(16).padStart(32, '0')}"
         }
     }
+
+    companion object {
+        // 运行在模块 App 中，使用 android.util.Log 而不是 XposedBridge
+        private const val TAG = "ThemeRepository"
+    }
 }
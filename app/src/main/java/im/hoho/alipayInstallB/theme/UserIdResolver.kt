@@ -0,0 +1,198 @@
+package im.hoho.alipayInstallB.theme
+
+import android.os.FileObserver
+import android.os.SystemClock
+import im.hoho.alipayInstallB.diagnostics.HookMetrics
+import im.hoho.alipayInstallB.diagnostics.IoTrace
+import im.hoho.alipayInstallB.hook.ModuleLog
+import java.io.File
+import java.lang.reflect.Method
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 用户ID解析器（Hook层使用）
+ *
+ * 1. SCCommonUtil.getCurrentUserId 的 Method 句柄每个 ClassLoader 只解析一次（失败结果也会缓存）
+ * 2. 解析出的用户ID缓存在内存中，skin_center_dir 下的用户目录变化（账号切换）时失效
+ * 3. 缓存超过 [REVALIDATE_INTERVAL_MS] 后通过已缓存的句柄再确认一次，不访问文件系统
+ * 4. 解析不到用户ID的结果也会缓存 [MISS_RETRY_INTERVAL_MS]，期间不再反射调用和扫描目录，
+ *    [invalidate] 会立即清除
+ */
+object UserIdResolver {
+    private const val TAG = "UserIdResolver"
+
+    private const val SC_COMMON_UTIL_CLASS = "com.alipay.mobile.skincenter.util.SCCommonUtil"
+
+    // 通过 Method 句柄再确认用户ID的间隔
+    private const val REVALIDATE_INTERVAL_MS = 30_000L
+
+    // 解析失败后再次尝试的间隔（skin_center_dir 不存在时无法监听，只能按时间重试）
+    private const val MISS_RETRY_INTERVAL_MS = 5_000L
+
+    /**
+     * 已解析的 Method 句柄
+     *
+     * @param method 解析失败时为 null，避免每次都重新抛出 ClassNotFoundException
+     */
+    private class MethodHandle(val classLoader: ClassLoader, val method: Method?)
+
+    @Volatile
+    private var methodHandle: MethodHandle? = null
+
+    @Volatile
+    private var cachedUserId: String? = null
+
+    @Volatile
+    private var resolvedAt = 0L
+
+    // 最近一次解析不到用户ID的时间，0 表示没有缓存的失败结果
+    @Volatile
+    private var missedAt = 0L
+
+    // 用户ID变更版本号，每次 invalidate 递增
+    private val generation = AtomicInteger()
+
+    // 保持强引用，避免 FileObserver 被回收
+    private var observer: FileObserver? = null
+
+    /**
+     * 获取当前用户ID
+     *
+     * @param classLoader 支付宝的 ClassLoader，为 null 时只使用文件系统扫描
+     * @return 用户ID，无法获取时返回 null
+     */
+    @JvmStatic
+    fun resolve(classLoader: ClassLoader?): String? {
+        val userId = cachedUserId
+        val now = SystemClock.elapsedRealtime()
+        if (userId != null && now - resolvedAt < REVALIDATE_INTERVAL_MS) {
+            HookMetrics.increment(HookMetrics.Counter.USER_ID_HITS)
+            return userId
+        }
+        val missed = missedAt
+        if (userId == null && missed != 0L && now - missed < MISS_RETRY_INTERVAL_MS) {
+            HookMetrics.increment(HookMetrics.Counter.USER_ID_HITS)
+            return null
+        }
+        HookMetrics.increment(HookMetrics.Counter.USER_ID_MISSES)
+        return resolveSlow(classLoader)
+    }
+
+    /**
+     * 使缓存的用户ID失效
+     *
+     * 账号切换时调用，下次获取时重新解析
+     */
+    @JvmStatic
+    fun invalidate() {
+        cachedUserId = null
+        missedAt = 0L
+        generation.incrementAndGet()
+    }
+
+    /**
+     * 当前用户ID变更版本号，供熔断器判断账号是否已切换
+     */
+    @JvmStatic
+    fun changeToken(): Int = generation.get()
+
+    @Synchronized
+    private fun resolveSlow(classLoader: ClassLoader?): String? {
+        // 方案1：通过缓存的句柄从支付宝的类中获取
+        var userId = classLoader?.let { invokeGetCurrentUserId(it) }
+
+        // 方案2：从文件系统扫描（回退）
+        if (userId == null) {
+            userId = cachedUserId ?: scanSkinCenterDir()
+        }
+
+        if (userId != cachedUserId) {
+            ModuleLog.i(TAG, "当前用户ID: $userId")
+        }
+
+        cachedUserId = userId
+        resolvedAt = SystemClock.elapsedRealtime()
+        missedAt = if (userId == null) resolvedAt else 0L
+        watchSkinCenterDir()
+        return userId
+    }
+
+    private fun invokeGetCurrentUserId(classLoader: ClassLoader): String? {
+        var handle = methodHandle
+        if (handle == null || handle.classLoader !== classLoader) {
+            val method = try {
+                classLoader.loadClass(SC_COMMON_UTIL_CLASS)
+                    .getDeclaredMethod("getCurrentUserId")
+                    .apply { isAccessible = true }
+            } catch (e: Throwable) {
+                ModuleLog.w(TAG, "无法解析 SCCommonUtil.getCurrentUserId: ${e.message}")
+                null
+            }
+            handle = MethodHandle(classLoader, method)
+            methodHandle = handle
+        }
+
+        val method = handle.method ?: return null
+        return try {
+            HookMetrics.measure(HookMetrics.Phase.REFLECTION) {
+                (method.invoke(null) as? String)?.takeIf { it.isNotEmpty() }
+            }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /**
+     * 从 skin_center_dir 中查找纯数字的用户目录
+     */
+    private fun scanSkinCenterDir(): String? {
+        val userDirs = IoTrace.trace("list", ThemeConstants.INTERNAL_STORAGE_PATH) {
+            File(ThemeConstants.INTERNAL_STORAGE_PATH).listFiles { file ->
+                file.isDirectory && isUserIdName(file.name)
+            }
+        }
+        return userDirs?.firstOrNull()?.name
+    }
+
+    private fun isUserIdName(name: String): Boolean {
+        if (name.isEmpty()) {
+            return false
+        }
+        for (c in name) {
+            if (c !in '0'..'9') {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * 监听 skin_center_dir，用户目录增删时使缓存失效
+     */
+    private fun watchSkinCenterDir() {
+        if (observer != null) {
+            return
+        }
+
+        val dir = File(ThemeConstants.INTERNAL_STORAGE_PATH)
+        if (!dir.isDirectory) {
+            return
+        }
+
+        observer = object : FileObserver(
+            dir.absolutePath,
+            CREATE or DELETE or MOVED_FROM or MOVED_TO or DELETE_SELF
+        ) {
+            override fun onEvent(event: Int, path: String?) {
+                if (event and DELETE_SELF != 0) {
+                    synchronized(this@UserIdResolver) { observer = null }
+                    invalidate()
+                    return
+                }
+                if (path != null && isUserIdName(path)) {
+                    invalidate()
+                }
+            }
+        }.apply { startWatching() }
+    }
+}
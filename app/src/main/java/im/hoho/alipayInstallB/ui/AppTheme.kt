@@ -108,6 +108,14 @@ val AppGuideCardGradient = Brush.linearGradient(
     )
 )
 
+/** 运行诊断功能卡片渐变 */
+val AppDiagnosticsCardGradient = Brush.linearGradient(
+    colors = listOf(
+        Color(0xFF7E57C2),
+        Color(0xFF9575CD)
+    )
+)
+
 /** 占位图渐变 */
 val AppPlaceholderGradient = Brush.verticalGradient(
     colors = listOf(